@@ -0,0 +1,73 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Offline stand-ins for server-side HUD pieces used by the benchmarks.
+ */
+final class BenchmarkHuds {
+
+    static final String TEMPLATE = "Pages/HudEns_DemoStatusCard.ui";
+
+    private BenchmarkHuds() {}
+
+    /** Precomputed {@code #Row<i>.Text} selectors, so benchmarks don't measure their own string building. */
+    @Nonnull
+    static String[] selectors(int count) {
+        String[] selectors = new String[count];
+        for (int i = 0; i < count; i++) {
+            selectors[i] = "#Row" + i + ".Text";
+        }
+        return selectors;
+    }
+
+    @Nonnull
+    static String[] layerIds(int count) {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = "com.example:Bench:layer" + i;
+        }
+        return ids;
+    }
+
+    /**
+     * Stub packet sink: materializes each outgoing command array (as the real sender would) and counts it.
+     */
+    static final class CountingSink implements MultipleCustomUIHud.UpdateSink {
+        long updates;
+        long commands;
+
+        @Override
+        public void update(boolean clear, @Nonnull UICommandBuilder builder) {
+            CustomUICommand[] sent = builder.getCommands();
+            updates++;
+            commands += sent.length;
+        }
+    }
+
+    /**
+     * Stub child HUD: appends one template and sets {@code selectors.length} text properties.
+     */
+    static final class StubHud extends CustomUIHud {
+        private final String[] selectors;
+        private final String value;
+
+        StubHud(@Nonnull String[] selectors, @Nonnull String value) {
+            super(null);
+            this.selectors = selectors;
+            this.value = value;
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder uiCommandBuilder) {
+            uiCommandBuilder.append(TEMPLATE);
+            for (String selector : selectors) {
+                uiCommandBuilder.set(selector, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Composition hot path of {@link MultipleCustomUIHud}: full show, layer replacement and in-place updates.
+ *
+ * <p>Run with {@code -prof gc} to report allocation rate alongside throughput.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Thread)
+public class CompositionBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int layerCount;
+
+    @Param({"1", "8", "32"})
+    public int commandsPerLayer;
+
+    private final BenchmarkHuds.CountingSink sink = new BenchmarkHuds.CountingSink();
+    private MultipleCustomUIHud ensemble;
+    private String[] layerIds;
+    private BenchmarkHuds.StubHud[] evenHuds;
+    private BenchmarkHuds.StubHud[] oddHuds;
+    private Consumer<UICommandBuilder> evenUpdater;
+    private Consumer<UICommandBuilder> oddUpdater;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        ensemble = new MultipleCustomUIHud(null, sink);
+        layerIds = BenchmarkHuds.layerIds(layerCount);
+
+        String[] selectors = BenchmarkHuds.selectors(commandsPerLayer);
+        evenHuds = new BenchmarkHuds.StubHud[layerCount];
+        oddHuds = new BenchmarkHuds.StubHud[layerCount];
+        for (int i = 0; i < layerCount; i++) {
+            evenHuds[i] = new BenchmarkHuds.StubHud(selectors, "even");
+            oddHuds[i] = new BenchmarkHuds.StubHud(selectors, "odd");
+            ensemble.add(layerIds[i], evenHuds[i]);
+        }
+
+        evenUpdater = cmd -> {
+            for (String selector : selectors) cmd.set(selector, "even");
+        };
+        oddUpdater = cmd -> {
+            for (String selector : selectors) cmd.set(selector, "odd");
+        };
+    }
+
+    /** Full rebuild of every layer, as on join. */
+    @Benchmark
+    public void show() {
+        ensemble.show();
+    }
+
+    /** Re-sets one layer per call with alternating values, exercising the rebuild diff. */
+    @Benchmark
+    public void addReplace() {
+        int i = cursor++;
+        int layer = i % layerCount;
+        boolean odd = ((i / layerCount) & 1) == 0;
+        ensemble.add(layerIds[layer], odd ? oddHuds[layer] : evenHuds[layer]);
+    }
+
+    /** Removes and re-adds one layer per call: group creation plus a full layer build. */
+    @Benchmark
+    public void addFresh() {
+        int layer = cursor++ % layerCount;
+        ensemble.remove(layerIds[layer]);
+        ensemble.add(layerIds[layer], evenHuds[layer]);
+    }
+
+    /** In-place update of one layer per call. */
+    @Benchmark
+    public void updateLayer() {
+        int i = cursor++;
+        ensemble.updateLayer(layerIds[i % layerCount], (i & 1) == 0 ? oddUpdater : evenUpdater);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.hudensemble.hudens;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NormalizedIdRegistry#getOrCreate(String)} for already-known ids and for fresh registries
+ * (the per-player cost on join).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Thread)
+public class NormalizedIdRegistryBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    public int layerCount;
+
+    private String[] layerIds;
+    private NormalizedIdRegistry warmRegistry;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        layerIds = BenchmarkHuds.layerIds(layerCount);
+        warmRegistry = new NormalizedIdRegistry();
+        for (String id : layerIds) {
+            warmRegistry.getOrCreate(id);
+        }
+    }
+
+    @Benchmark
+    public String getOrCreateExisting() {
+        return warmRegistry.getOrCreate(layerIds[cursor++ % layerCount]);
+    }
+
+    @Benchmark
+    public void getOrCreateFresh(Blackhole blackhole) {
+        NormalizedIdRegistry registry = new NormalizedIdRegistry();
+        for (String id : layerIds) {
+            blackhole.consume(registry.getOrCreate(id));
+        }
+    }
+}
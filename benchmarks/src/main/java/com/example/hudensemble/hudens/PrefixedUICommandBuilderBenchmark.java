@@ -0,0 +1,49 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selector prefixing in {@link PrefixedUICommandBuilder#getCommands()} with a warm per-layer cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Thread)
+public class PrefixedUICommandBuilderBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int commandsPerLayer;
+
+    private SelectorPrefixCache cache;
+    private String[] selectors;
+
+    @Setup
+    public void setUp() {
+        cache = new SelectorPrefixCache(MultipleCustomUIHud.layerSelector("benchlayer0000"));
+        selectors = BenchmarkHuds.selectors(commandsPerLayer);
+    }
+
+    @Benchmark
+    public CustomUICommand[] getCommands() {
+        PrefixedUICommandBuilder builder = new PrefixedUICommandBuilder(cache);
+        for (String selector : selectors) {
+            builder.set(selector, "value");
+        }
+        return builder.getCommands();
+    }
+}
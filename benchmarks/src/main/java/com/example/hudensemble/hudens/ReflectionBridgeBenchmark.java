@@ -0,0 +1,86 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original {@code Method.invoke} / {@code Field.get} bridge with the
+ * {@code static final} MethodHandle bridge now used by {@link CustomHudBuildBridge} and
+ * {@link UiCommandListAccess}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Thread)
+public class ReflectionBridgeBenchmark {
+
+    private static final Method LEGACY_BUILD_METHOD;
+    private static final Field LEGACY_COMMANDS_FIELD;
+
+    static {
+        try {
+            LEGACY_BUILD_METHOD = CustomUIHud.class.getDeclaredMethod("build", UICommandBuilder.class);
+            LEGACY_BUILD_METHOD.setAccessible(true);
+            LEGACY_COMMANDS_FIELD = UICommandBuilder.class.getDeclaredField("commands");
+            LEGACY_COMMANDS_FIELD.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private CustomUIHud hud;
+    private UICommandBuilder builder;
+
+    @Setup
+    public void setUp() {
+        hud = new NoopHud();
+        builder = new UICommandBuilder();
+    }
+
+    @Benchmark
+    public void buildReflective() throws ReflectiveOperationException {
+        LEGACY_BUILD_METHOD.invoke(hud, builder);
+    }
+
+    @Benchmark
+    public void buildMethodHandle() {
+        CustomHudBuildBridge.invokeBuild(hud, builder);
+    }
+
+    @Benchmark
+    public Object commandsReflective() throws IllegalAccessException {
+        return LEGACY_COMMANDS_FIELD.get(builder);
+    }
+
+    @Benchmark
+    public Object commandsMethodHandle() {
+        return UiCommandListAccess.tryGet(builder);
+    }
+
+    /** Empty build so the benchmark measures dispatch cost only. */
+    private static final class NoopHud extends CustomUIHud {
+        private NoopHud() {
+            super(null);
+        }
+
+        @Override
+        protected void build(UICommandBuilder uiCommandBuilder) {
+        }
+    }
+}
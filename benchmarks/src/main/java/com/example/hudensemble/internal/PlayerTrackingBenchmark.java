@@ -0,0 +1,92 @@
+package com.example.hudensemble.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-player tracking as done on every {@code setLayer}, called from many world threads at once:
+ * the previous {@code synchronized WeakHashMap} against {@link ConcurrentWeakKeyMap}.
+ *
+ * <p>Each benchmark thread plays one world with its own players. Change the thread count with
+ * {@code -t}, e.g. {@code -t 1} for the uncontended baseline.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@Threads(8)
+public class PlayerTrackingBenchmark {
+
+    private static final int PLAYERS_PER_WORLD = 64;
+    private static final String[] LAYER_IDS = {"ns:scoreboard", "ns:minimap", "ns:compass", "ns:quests"};
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final Map<Object, Object> weakHashMap = Collections.synchronizedMap(new WeakHashMap<>());
+        final Map<Object, Set<String>> weakHashMapLayers = new WeakHashMap<>();
+        final ConcurrentWeakKeyMap<Object, Object> concurrentMap = new ConcurrentWeakKeyMap<>();
+        final ConcurrentWeakKeyMap<Object, Set<String>> concurrentLayers = new ConcurrentWeakKeyMap<>();
+    }
+
+    @State(Scope.Thread)
+    public static class World {
+        final Object[] players = new Object[PLAYERS_PER_WORLD];
+        final Object[] playerRefs = new Object[PLAYERS_PER_WORLD];
+        int cursor;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < PLAYERS_PER_WORLD; i++) {
+                players[i] = new Object();
+                playerRefs[i] = new Object();
+            }
+        }
+    }
+
+    @Benchmark
+    public void synchronizedWeakHashMap(Shared shared, World world) {
+        int i = world.cursor++ % PLAYERS_PER_WORLD;
+        Object player = world.players[i];
+        String layerId = LAYER_IDS[world.cursor & (LAYER_IDS.length - 1)];
+
+        shared.weakHashMap.put(player, world.playerRefs[i]);
+        synchronized (shared.weakHashMapLayers) {
+            shared.weakHashMapLayers.computeIfAbsent(player, p -> new HashSet<>()).add(layerId);
+        }
+    }
+
+    @Benchmark
+    public void concurrentWeakKeyMap(Shared shared, World world) {
+        int i = world.cursor++ % PLAYERS_PER_WORLD;
+        Object player = world.players[i];
+        String layerId = LAYER_IDS[world.cursor & (LAYER_IDS.length - 1)];
+
+        shared.concurrentMap.put(player, world.playerRefs[i]);
+        Set<String> recorded = shared.concurrentLayers.get(player);
+        if (recorded != null && recorded.contains(layerId)) return;
+
+        shared.concurrentLayers.compute(player, set -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(layerId);
+            return set;
+        });
+    }
+}
@@ -67,7 +67,7 @@ public class HudEnsemblePlugin extends JavaPlugin implements HudEnsembleApi {
         EventRegistry eventBus = getEventRegistry();
 
         try {
-            new PlayerListener().register(eventBus);
+            new PlayerListener(service).register(eventBus);
             LOGGER.at(Level.INFO).log("[HudEnsemble] Registered player event listeners");
         } catch (Exception e) {
             LOGGER.at(Level.WARNING).withCause(e).log("[HudEnsemble] Failed to register listeners");
@@ -0,0 +1,20 @@
+package com.example.hudensemble.api;
+
+/**
+ * Handle for a layer property bound to a value with {@link HudEnsembleService#bind}.
+ *
+ * <p>The binding ends when {@link #unbind()} is called or its layer is removed.</p>
+ */
+public interface HudBinding {
+
+    /**
+     * Stops updating the property. The last value sent stays on screen. Safe to call from any thread
+     * and more than once.
+     */
+    void unbind();
+
+    /**
+     * @return {@code false} once unbound (or if the binding never took effect).
+     */
+    boolean isBound();
+}
@@ -4,16 +4,12 @@ import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
-import com.hypixel.hytale.component.Ref;
-import com.hypixel.hytale.component.Store;
-import com.hypixel.hytale.server.core.universe.Universe;
-import com.hypixel.hytale.server.core.universe.world.World;
-import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
 
 import javax.annotation.Nonnull;
-import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Per-consumer handle for interacting with {@link HudEnsembleService}.
@@ -23,6 +19,10 @@ import java.util.function.Function;
  *   <li>Namespace layer identifiers to avoid collisions between plugins.</li>
  *   <li>Track all created layers so they can be cleaned up reliably via {@link #close()}.</li>
  * </ul>
+ *
+ * <p>Clients are created by {@link HudEnsembleService#createClient(String)} and follow the same compatibility
+ * rules as the service: new capabilities are abstract methods, and defaults only combine other methods of
+ * this interface.</p>
  */
 public interface HudEnsembleClient extends AutoCloseable {
 
@@ -33,6 +33,69 @@ public interface HudEnsembleClient extends AutoCloseable {
             @Nonnull CustomUIHud hud
     );
 
+    /**
+     * Like {@link #setLayer(Player, PlayerRef, String, CustomUIHud)}, but places the layer at {@code zIndex}.
+     *
+     * @see HudEnsembleService#setLayer(Player, PlayerRef, String, CustomUIHud, int)
+     */
+    void setLayer(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud hud,
+            int zIndex
+    );
+
+    /**
+     * Sets or replaces a layer owned by this client and refreshes it according to {@code refresh}.
+     *
+     * <p>The default sets the layer, then applies the policy with {@link #setLayerRefreshPolicy}.</p>
+     *
+     * @see HudEnsembleService#setLayer(Player, PlayerRef, String, CustomUIHud, HudRefreshPolicy)
+     */
+    default void setLayer(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud hud,
+            @Nonnull HudRefreshPolicy refresh
+    ) {
+        setLayer(player, playerRef, layerId, hud);
+        setLayerRefreshPolicy(player, layerId, refresh);
+    }
+
+    /**
+     * Sets how often a layer owned by this client is refreshed.
+     *
+     * @see HudEnsembleService#setLayerRefreshPolicy(Player, String, HudRefreshPolicy)
+     */
+    void setLayerRefreshPolicy(
+            @Nonnull Player player,
+            @Nonnull String layerId,
+            @Nonnull HudRefreshPolicy policy
+    );
+
+    /**
+     * Refreshes a layer owned by this client now.
+     *
+     * @see HudEnsembleService#refreshLayer(Player, String)
+     */
+    void refreshLayer(@Nonnull Player player, @Nonnull String layerId);
+
+    /**
+     * Moves an existing layer owned by this client to a new z-index.
+     *
+     * @see HudEnsembleService#setLayerZIndex(Player, String, int)
+     */
+    void setLayerZIndex(@Nonnull Player player, @Nonnull String layerId, int zIndex);
+
+    /**
+     * Hides or shows an existing layer owned by this client without removing it.
+     *
+     * @see HudEnsembleService#setLayerVisible(Player, String, boolean)
+     */
+    void setLayerVisible(@Nonnull Player player, @Nonnull String layerId, boolean visible);
+
     /**
      * Convenience helper: applies {@link #setLayer(Player, PlayerRef, String, CustomUIHud)} to all
      * connected players that are currently spawned in a world.
@@ -40,7 +103,8 @@ public interface HudEnsembleClient extends AutoCloseable {
      * <p>Because most HUD implementations need a per-player {@link PlayerRef}, this method uses a
      * factory to create a fresh {@link CustomUIHud} instance for each target player.
      *
-     * <p>The HUD installation is scheduled on each player's world thread.
+     * <p>Players are grouped by world and each world receives a single task that installs the layer
+     * for all of its players on the world thread.
      *
      * @return number of players for which the operation was scheduled (best-effort).
      */
@@ -53,145 +117,130 @@ public interface HudEnsembleClient extends AutoCloseable {
             throw new IllegalArgumentException("hudFactory must not be null");
         }
 
-        Universe universe = Universe.get();
-        List<PlayerRef> players = universe.getPlayers();
-        int scheduled = 0;
-
-        for (PlayerRef playerRef : players) {
-            if (playerRef == null) continue;
-
-            Ref<EntityStore> ref;
-            try {
-                ref = playerRef.getReference();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            if (ref == null || !ref.isValid()) {
-                // The player is not currently spawned in a world.
-                continue;
-            }
-
-            Store<EntityStore> store;
-            try {
-                store = ref.getStore();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            World world;
-            try {
-                world = store.getExternalData().getWorld();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            if (world == null || !world.isAlive()) {
-                continue;
-            }
-
-            Runnable work = () -> {
-                try {
-                    Player player = store.getComponent(ref, Player.getComponentType());
-                    if (player == null) return;
-
-                    CustomUIHud hud = hudFactory.apply(playerRef);
-                    if (hud == null) return;
-
-                    setLayer(player, playerRef, layerId, hud);
-                } catch (Throwable ignored) {
-                    // Best-effort only.
-                }
-            };
-
-            try {
-                if (world.isInThread()) {
-                    work.run();
-                } else {
-                    world.execute(work);
-                }
-                scheduled++;
-            } catch (Throwable ignored) {
-                // Best-effort only.
-            }
+        return WorldFanout.forEachPlayer((player, playerRef) -> {
+            CustomUIHud hud = hudFactory.apply(playerRef);
+            if (hud == null) return;
+
+            setLayer(player, playerRef, layerId, hud);
+        });
+    }
+
+    /**
+     * Like {@link #setLayerForAllOnline(String, Function)}, but constructs the HUDs on
+     * {@code buildExecutor} instead of the world threads.
+     *
+     * <p>Only use this when {@code hudFactory} is safe to call off the world thread (it must not touch
+     * world or entity state). Once all HUDs for a world are built, a single task per world installs them.
+     * A virtual-thread executor ({@code Executors.newVirtualThreadPerTaskExecutor()}) works well here.
+     * Players for whom {@code hudFactory} throws are skipped and logged; if {@code buildExecutor} rejects
+     * work, the HUDs already submitted for that world are cancelled and the world is skipped.
+     *
+     * @return number of players whose HUD construction was submitted (best-effort).
+     */
+    default int setLayerForAllOnline(
+            @Nonnull String layerId,
+            @Nonnull Function<PlayerRef, CustomUIHud> hudFactory,
+            @Nonnull Executor buildExecutor
+    ) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (hudFactory == null) {
+            throw new IllegalArgumentException("hudFactory must not be null");
+        }
+        if (buildExecutor == null) {
+            throw new IllegalArgumentException("buildExecutor must not be null");
         }
 
-        return scheduled;
+        return WorldFanout.forEachPlayerPrepared(
+                hudFactory,
+                buildExecutor,
+                (player, playerRef, hud) -> setLayer(player, playerRef, layerId, hud)
+        );
     }
 
     /**
      * Convenience helper: removes {@link #removeLayer(Player, String)} for all
      * connected players that are currently spawned in a world.
      *
-     * <p>The removal is scheduled on each player's world thread.
+     * <p>The removal is scheduled as one task per world, on that world's thread.
      *
      * @return number of players for which the operation was scheduled (best-effort).
      */
     default int removeLayerForAllOnline(@Nonnull String layerId) {
         HudEnsembleValidation.requireValidLayerId(layerId);
 
-        Universe universe = Universe.get();
-        List<PlayerRef> players = universe.getPlayers();
-        int scheduled = 0;
-
-        for (PlayerRef playerRef : players) {
-            if (playerRef == null) continue;
-
-            Ref<EntityStore> ref;
-            try {
-                ref = playerRef.getReference();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            if (ref == null || !ref.isValid()) {
-                continue;
-            }
-
-            Store<EntityStore> store;
-            try {
-                store = ref.getStore();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            World world;
-            try {
-                world = store.getExternalData().getWorld();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            if (world == null || !world.isAlive()) {
-                continue;
-            }
-
-            Runnable work = () -> {
-                try {
-                    Player player = store.getComponent(ref, Player.getComponentType());
-                    if (player == null) return;
-                    removeLayer(player, layerId);
-                } catch (Throwable ignored) {
-                    // Best-effort only.
-                }
-            };
-
-            try {
-                if (world.isInThread()) {
-                    work.run();
-                } else {
-                    world.execute(work);
-                }
-                scheduled++;
-            } catch (Throwable ignored) {
-                // Best-effort only.
-            }
+        return WorldFanout.forEachPlayer((player, playerRef) -> removeLayer(player, layerId));
+    }
+
+    void removeLayer(@Nonnull Player player, @Nonnull String layerId);
+
+    /**
+     * Sends the same update to this client's layer for all connected players that are currently spawned
+     * in a world, e.g. a countdown every player sees.
+     *
+     * <p>The commands are built and scoped once and the same array is sent to every player, with one task
+     * per world.</p>
+     *
+     * <p>The default calls {@link #updateLayer} for each player instead, so {@code updater} runs once per
+     * player.</p>
+     *
+     * @return number of players for which the update was scheduled (best-effort).
+     * @see HudEnsembleService#updateLayerForAllOnline(String, Consumer)
+     */
+    default int updateLayerForAllOnline(@Nonnull String layerId, @Nonnull Consumer<UICommandBuilder> updater) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (updater == null) {
+            throw new IllegalArgumentException("updater must not be null");
         }
 
-        return scheduled;
+        return WorldFanout.forEachPlayer((player, playerRef) -> updateLayer(player, layerId, updater));
     }
 
-    void removeLayer(@Nonnull Player player, @Nonnull String layerId);
+    /**
+     * Binds a property of a layer owned by this client to a value that HudEnsemble polls every tick.
+     *
+     * @see HudEnsembleService#bind(Player, String, String, Supplier)
+     */
+    @Nonnull
+    HudBinding bind(
+            @Nonnull Player player,
+            @Nonnull String layerId,
+            @Nonnull String selector,
+            @Nonnull Supplier<String> value
+    );
+
+    /**
+     * Sets the {@link HudUpdatePolicy} applied to every layer this client sets from now on.
+     *
+     * <p>This caps each layer on its own; to cap all of the client's layers together, use
+     * {@link #setUpdateBudget}. Defaults to {@link HudUpdatePolicy#UNLIMITED}.</p>
+     */
+    void setUpdatePolicy(@Nonnull HudUpdatePolicy policy);
+
+    /** @return the policy applied to layers set by this client. */
+    @Nonnull
+    HudUpdatePolicy getUpdatePolicy();
+
+    /**
+     * Sets this client's share of HUD bandwidth: at most {@code maxCommandsPerSecond} update commands per
+     * second per player, summed over all layers the client owns, with bursts of up to one second's worth.
+     *
+     * <p>Updates beyond the budget are deferred and merged like rate-limited ones (a newer {@code Set} to
+     * the same selector replaces the older one), so a plugin with many layers, or one updating every frame,
+     * can't crowd out the others. Layer rebuilds are not counted. {@code 0} (the default) removes the cap.</p>
+     *
+     * @throws IllegalArgumentException if {@code maxCommandsPerSecond} is negative
+     */
+    void setUpdateBudget(int maxCommandsPerSecond);
+
+    /** @return this client's update budget in commands per second per player, or {@code 0} if uncapped. */
+    int getUpdateBudget();
+
+    /**
+     * Overrides the update policy of one existing layer owned by this client.
+     *
+     * @see HudEnsembleService#setLayerUpdatePolicy(Player, String, HudUpdatePolicy)
+     */
+    void setLayerUpdatePolicy(@Nonnull Player player, @Nonnull String layerId, @Nonnull HudUpdatePolicy policy);
 
     /**
      * Applies incremental UI commands to an existing layer owned by this client.
@@ -207,79 +256,51 @@ public interface HudEnsembleClient extends AutoCloseable {
             @Nonnull Consumer<UICommandBuilder> updater
     );
 
+    /**
+     * Applies several layer operations for one player as a single unit, sending one merged update.
+     *
+     * <p>Layer ids used on the transaction are namespaced like every other client call.</p>
+     *
+     * <p>The default records the operations and then applies them one by one through {@link #setLayer},
+     * {@link #removeLayer} and {@link #updateLayer}: nothing is applied if {@code operations} throws, but
+     * each operation sends its own update.</p>
+     *
+     * @see HudEnsembleService#batch(Player, PlayerRef, Consumer)
+     */
+    default void batch(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull Consumer<HudEnsembleTransaction> operations
+    ) {
+        new ReplayedTransaction(
+                (layerId, hud) -> setLayer(player, playerRef, layerId, hud),
+                layerId -> removeLayer(player, layerId),
+                (layerId, updater) -> updateLayer(player, layerId, updater)
+        ).run(operations);
+    }
+
     /**
      * Convenience helper: removes all layers created by this client for all
      * connected players that are currently spawned in a world.
      *
-     * <p>The cleanup is scheduled on each player's world thread.
+     * <p>The cleanup is scheduled as one task per world, on that world's thread.
      *
      * @return number of players for which the operation was scheduled (best-effort).
      */
     default int clearForAllOnline() {
-        Universe universe = Universe.get();
-        List<PlayerRef> players = universe.getPlayers();
-        int scheduled = 0;
-
-        for (PlayerRef playerRef : players) {
-            if (playerRef == null) continue;
-
-            Ref<EntityStore> ref;
-            try {
-                ref = playerRef.getReference();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            if (ref == null || !ref.isValid()) {
-                continue;
-            }
-
-            Store<EntityStore> store;
-            try {
-                store = ref.getStore();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            World world;
-            try {
-                world = store.getExternalData().getWorld();
-            } catch (Throwable ignored) {
-                continue;
-            }
-
-            if (world == null || !world.isAlive()) {
-                continue;
-            }
-
-            Runnable work = () -> {
-                try {
-                    Player player = store.getComponent(ref, Player.getComponentType());
-                    if (player == null) return;
-                    clear(player);
-                } catch (Throwable ignored) {
-                    // Best-effort only.
-                }
-            };
-
-            try {
-                if (world.isInThread()) {
-                    work.run();
-                } else {
-                    world.execute(work);
-                }
-                scheduled++;
-            } catch (Throwable ignored) {
-                // Best-effort only.
-            }
-        }
-
-        return scheduled;
+        return WorldFanout.forEachPlayer((player, playerRef) -> clear(player));
     }
 
     /** Removes all layers created by this client for the given player. */
     void clear(@Nonnull Player player);
 
+    /**
+     * Immediately sends HUD commands buffered for the player by update coalescing.
+     *
+     * @see HudEnsembleService#flush(Player)
+     */
+    void flush(@Nonnull Player player);
+
     /**
      * Removes all layers created by this client across all players it touched.
      *
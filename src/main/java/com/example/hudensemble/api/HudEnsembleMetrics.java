@@ -0,0 +1,62 @@
+package com.example.hudensemble.api;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Point-in-time snapshot of HudEnsemble's composition metrics, accumulated since startup
+ * (or the last {@link HudEnsembleService#resetMetrics()}).
+ *
+ * <p>Build latencies are in nanoseconds. Per-layer keys are full (namespaced) layer ids; per-owner
+ * keys are client namespaces, with {@link #UNATTRIBUTED_OWNER} for layers set without a client.</p>
+ *
+ * @param updatesSent        HUD update packets sent to players
+ * @param commandsSent       UI commands contained in those packets
+ * @param estimatedBytesSent rough payload size of those commands (selector/data/text lengths plus framing)
+ * @param redundantSets      {@code Set} commands from {@code updateLayer} dropped because the layer already showed that value
+ * @param commandsPerUpdate  distribution of commands per packet
+ * @param buildNanos         distribution of child {@code build()} latency across all layers
+ * @param buildNanosByLayer  {@code build()} latency per layer id (bounded; rarely used ids may be missing)
+ * @param buildNanosByOwner  {@code build()} latency per owner namespace
+ * @param buildFailures      child {@code build()} calls that threw
+ * @param reflectionFailures failures resolving or using the reflection bridges
+ * @param slowBuilds         child {@code build()} calls that exceeded the build time budget
+ * @param skippedBuilds      builds skipped because the layer was quarantined (last good content was kept)
+ * @param bindingFailures    polls of a bound value supplier that threw (the property kept its last value)
+ * @param refreshFailures    periodic layer refreshes that threw (the layer was kept as it was)
+ * @param quarantinedLayers  layer ids currently quarantined or disabled for being too slow to build
+ */
+public record HudEnsembleMetrics(
+        long updatesSent,
+        long commandsSent,
+        long estimatedBytesSent,
+        long redundantSets,
+        @Nonnull Distribution commandsPerUpdate,
+        @Nonnull Distribution buildNanos,
+        @Nonnull Map<String, Distribution> buildNanosByLayer,
+        @Nonnull Map<String, Distribution> buildNanosByOwner,
+        long buildFailures,
+        long reflectionFailures,
+        long slowBuilds,
+        long skippedBuilds,
+        long bindingFailures,
+        long refreshFailures,
+        @Nonnull Set<String> quarantinedLayers
+) {
+
+    /** Owner key used for layers whose id doesn't start with a known client namespace. */
+    public static final String UNATTRIBUTED_OWNER = "(direct)";
+
+    /**
+     * Summary of a recorded distribution. Percentiles are approximate (power-of-two buckets).
+     */
+    public record Distribution(long count, long sum, long max, long p50, long p99) {
+
+        public static final Distribution EMPTY = new Distribution(0, 0, 0, 0, 0);
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+    }
+}
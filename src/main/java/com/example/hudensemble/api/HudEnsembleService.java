@@ -7,7 +7,9 @@ import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Public API for managing multiple {@link CustomUIHud} layers per player.
@@ -15,6 +17,12 @@ import java.util.function.Consumer;
  * <p>This abstraction intentionally hides implementation details (reflection bridge,
  * UI selector prefixing, root group layout) so that future versions can evolve
  * without forcing API consumers to rewrite their code.</p>
+ *
+ * <p>HudEnsemble provides the only implementation of this interface and of {@link HudEnsembleClient};
+ * consumers call them but are not expected to implement them. New capabilities are added as abstract methods
+ * together with an {@link HudEnsembleVersion#API_VERSION} bump, so check {@link #getApiVersion()} before
+ * relying on them. Default methods are only used for conveniences written entirely in terms of the
+ * interface's other methods.</p>
  */
 public interface HudEnsembleService {
 
@@ -41,6 +49,69 @@ public interface HudEnsembleService {
             @Nonnull CustomUIHud hud
     );
 
+    /**
+     * Adds (or replaces) a named HUD layer at the given z-index.
+     *
+     * <p>Layers are drawn back to front in ascending z-index; layers sharing a z-index keep the order
+     * they were added in. {@link #setLayer(Player, PlayerRef, String, CustomUIHud)} keeps a replaced
+     * layer's z-index and puts new layers at {@code 0}.</p>
+     */
+    void setLayer(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud hud,
+            int zIndex
+    );
+
+    /**
+     * Like {@link #setLayer(Player, PlayerRef, String, CustomUIHud)}, then applies {@code refresh} as with
+     * {@link #setLayerRefreshPolicy}.
+     */
+    default void setLayer(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud hud,
+            @Nonnull HudRefreshPolicy refresh
+    ) {
+        setLayer(player, playerRef, layerId, hud);
+        setLayerRefreshPolicy(player, layerId, refresh);
+    }
+
+    /**
+     * Sets how often an existing layer is refreshed without any call from its plugin.
+     *
+     * <p>Periodic refreshes are driven by one timing wheel for all players and run on each player's world
+     * thread, batched per player. Use {@link HudRefreshPolicy#ON_DEMAND} to stop them. The policy is dropped
+     * when the layer is removed; replacing the layer keeps it. No-op if the layer doesn't exist.</p>
+     */
+    void setLayerRefreshPolicy(@Nonnull Player player, @Nonnull String layerId, @Nonnull HudRefreshPolicy policy);
+
+    /**
+     * Refreshes an existing layer now, the same way a periodic refresh would: through its
+     * {@link com.example.hudensemble.hudens.RefreshableHud} hook, or by rebuilding it and sending what changed.
+     * No-op if the layer doesn't exist.
+     */
+    void refreshLayer(@Nonnull Player player, @Nonnull String layerId);
+
+    /**
+     * Moves an existing layer to a new z-index.
+     *
+     * <p>Only the layer groups that have to move are re-sent, refilled from their last emitted commands;
+     * no layer is rebuilt. No-op if the layer doesn't exist.</p>
+     */
+    void setLayerZIndex(@Nonnull Player player, @Nonnull String layerId, int zIndex);
+
+    /**
+     * Hides or shows an existing layer without removing it.
+     *
+     * <p>The layer stays on the client and keeps receiving updates; toggling costs a single command,
+     * where {@link #removeLayer} followed by {@link #setLayer} rebuilds the layer. No-op if the layer
+     * doesn't exist.</p>
+     */
+    void setLayerVisible(@Nonnull Player player, @Nonnull String layerId, boolean visible);
+
     /**
      * Removes a previously added HUD layer by its identifier.
      */
@@ -61,6 +132,151 @@ public interface HudEnsembleService {
             @Nonnull Consumer<UICommandBuilder> updater
     );
 
+    /**
+     * Runs {@code updater} once and returns its commands as an update that can be sent to any number of
+     * players with {@link #updateLayer(Player, String, HudLayerUpdate)}.
+     *
+     * <p>The updater is called on the calling thread with an unscoped {@link UICommandBuilder}; selectors
+     * are scoped to the target layer when the update is applied, exactly like {@link #updateLayer}.</p>
+     */
+    @Nonnull
+    HudLayerUpdate prepareLayerUpdate(@Nonnull Consumer<UICommandBuilder> updater);
+
+    /**
+     * Applies a prepared update to an existing layer. Every player sharing the layer id receives the same
+     * commands; nothing is built or prefixed per player.
+     *
+     * <p>If the layer doesn't exist (or composition is unsupported), this is a no-op.</p>
+     *
+     * @throws IllegalArgumentException if {@code update} wasn't prepared by this service
+     */
+    void updateLayer(@Nonnull Player player, @Nonnull String layerId, @Nonnull HudLayerUpdate update);
+
+    /**
+     * Sends the same update to a layer of every connected player that is currently spawned in a world.
+     *
+     * <p>{@code updater} runs once; players are grouped by world and each world receives a single task
+     * that applies the shared commands to all of its players. Players without the layer are skipped.</p>
+     *
+     * @return number of players for which the update was scheduled (best-effort).
+     */
+    default int updateLayerForAllOnline(@Nonnull String layerId, @Nonnull Consumer<UICommandBuilder> updater) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+
+        HudLayerUpdate update = prepareLayerUpdate(updater);
+        if (update.commandCount() == 0) return 0;
+
+        return WorldFanout.forEachPlayer((player, playerRef) -> updateLayer(player, layerId, update));
+    }
+
+    /**
+     * Binds a property of an existing layer to a value, replacing a plugin-side task that polls game state
+     * and calls {@link #updateLayer}. {@code selector} is layer-relative, e.g. {@code "#Health.Text"}.
+     *
+     * <p>HudEnsemble polls {@code value} once per tick on the player's world thread, together with every
+     * other binding of the players in that world, and sends only the values that changed (compared with
+     * {@code equals}) in one update per player. A {@code null} value leaves the property as it is. Suppliers
+     * should be cheap and must not change the player's HUD.</p>
+     *
+     * <p>The binding ends when it is unbound or the layer is removed; replacing the layer keeps it and
+     * re-sends the value. If the layer doesn't exist (or composition is unsupported), the returned binding
+     * is already unbound.</p>
+     *
+     * @throws IllegalArgumentException if {@code selector} is empty
+     */
+    @Nonnull
+    HudBinding bind(
+            @Nonnull Player player,
+            @Nonnull String layerId,
+            @Nonnull String selector,
+            @Nonnull Supplier<String> value
+    );
+
+    /**
+     * Sets the rate limit and priority for an existing layer's incremental updates.
+     *
+     * <p>Use {@link HudUpdatePolicy#UNLIMITED} to remove a limit. The policy is dropped when the
+     * layer is removed. No-op if the layer doesn't exist.</p>
+     */
+    void setLayerUpdatePolicy(@Nonnull Player player, @Nonnull String layerId, @Nonnull HudUpdatePolicy policy);
+
+    /**
+     * Applies several layer operations for one player as a single unit.
+     *
+     * <p>The {@code operations} callback records operations on the supplied transaction; they are
+     * applied in order after it returns, and all resulting UI commands are sent as one merged update.
+     * If the callback throws, no operation is applied.</p>
+     *
+     * <pre>{@code
+     * service.batch(player, playerRef, tx -> tx
+     *         .removeLayer("round:lobby")
+     *         .setLayer("round:scoreboard", new ScoreboardHud(playerRef))
+     *         .setLayer("round:timer", new TimerHud(playerRef)));
+     * }</pre>
+     *
+     * <p>The default records the operations and then applies them one by one through {@link #setLayer},
+     * {@link #removeLayer} and {@link #updateLayer}, each sending its own update.</p>
+     *
+     * @param player the target player
+     * @param playerRef the player's ref (required if the batch installs the composite HUD)
+     * @param operations records the operations to apply
+     */
+    default void batch(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull Consumer<HudEnsembleTransaction> operations
+    ) {
+        new ReplayedTransaction(
+                (layerId, hud) -> setLayer(player, playerRef, layerId, hud),
+                layerId -> removeLayer(player, layerId),
+                (layerId, updater) -> updateLayer(player, layerId, updater)
+        ).run(operations);
+    }
+
+    /**
+     * Enables or disables per-tick update coalescing for all players.
+     *
+     * <p>When enabled, {@link #setLayer}, {@link #removeLayer} and {@link #updateLayer} no longer send a
+     * packet each; their commands are buffered per player and sent as a single update when the player's
+     * world thread next runs its queued tasks (or on an explicit {@link #flush(Player)}).</p>
+     *
+     * <p>Disabled by default.</p>
+     */
+    void setUpdateCoalescing(boolean enabled);
+
+    /**
+     * @return {@code true} if per-tick update coalescing is enabled.
+     */
+    boolean isUpdateCoalescing();
+
+    /**
+     * Builds layers whose HUD implements {@link com.example.hudensemble.hudens.ThreadSafeHud} on
+     * {@code buildExecutor} (e.g. a virtual-thread executor) instead of the world thread. The finished
+     * commands are diffed and sent on the player's world thread. Other layers are unaffected.
+     *
+     * <p>Off ({@code null}) by default. Applies to each player on their next layer operation.</p>
+     */
+    void setAsyncBuildExecutor(@Nullable java.util.concurrent.Executor buildExecutor);
+
+    /**
+     * Caps the estimated size of the packet that shows a player's whole HUD (e.g. on join or after a
+     * reconnect restore). Layers that don't fit appear empty at first and their content is streamed in over
+     * the next world ticks: the preserved base HUD first, then layers by update priority.
+     *
+     * <p>{@code 0} (the default) sends everything in one packet. Applies to each player on their next
+     * layer operation.</p>
+     *
+     * @throws IllegalArgumentException if {@code maxBytes} is negative
+     */
+    void setShowPacketBudget(int maxBytes);
+
+    /**
+     * Immediately sends any HUD commands buffered for the player by update coalescing.
+     *
+     * <p>No-op if coalescing is disabled or nothing is pending. Must be called on the player's world thread.</p>
+     */
+    void flush(@Nonnull Player player);
+
     /**
      * Creates a client handle for a specific consumer plugin (or subsystem).
      *
@@ -91,4 +307,78 @@ public interface HudEnsembleService {
      * @return {@code true} if the runtime supports composing multiple CustomUIHuds.
      */
     boolean isCompositionSupported();
+
+    /**
+     * Returns server-wide composition metrics: update packets and commands sent, an estimate of the
+     * payload bytes, child {@code build()} latency per layer and per client namespace, and failure counts.
+     *
+     * <p>Cheap enough to poll (e.g. from a stats command or an exporter); each call builds a new snapshot.</p>
+     */
+    @Nonnull
+    HudEnsembleMetrics getMetrics();
+
+    /**
+     * Resets all composition metrics to zero.
+     */
+    void resetMetrics();
+
+    /**
+     * Captures the player's layer set (ids, order, update policies and the commands each layer last sent),
+     * e.g. before a world transfer.
+     *
+     * @return the snapshot, or {@code null} if the player has no HudEnsemble layers
+     */
+    @Nullable
+    HudLayerSnapshot captureLayers(@Nonnull Player player);
+
+    /**
+     * Restores a captured layer set and re-shows the whole HUD in a single full update, reusing each layer's
+     * captured commands instead of calling its {@code build()}. Layers the player currently has are kept
+     * (and win over captured ones with the same id); a non-HudEnsemble HUD is preserved as the base layer.
+     *
+     * <p>The restored layers keep their original HUD instances, so later rebuilds behave as before the capture.
+     * Bindings and refresh policies are restored too, but only into the player session they were captured
+     * in; see {@link #restoreLayers(Player, PlayerRef)}. Must be called on the player's world thread.</p>
+     *
+     * @return {@code true} if layers were restored
+     * @throws IllegalArgumentException if {@code snapshot} wasn't obtained from HudEnsemble
+     */
+    boolean restoreLayers(@Nonnull Player player, @Nonnull PlayerRef playerRef, @Nonnull HudLayerSnapshot snapshot);
+
+    /**
+     * Restores the layers the player had when they last disconnected, if reconnect snapshots are retained
+     * (see {@link #setReconnectSnapshotRetention(long)}). Call it when the player is ready, before setting
+     * layers from scratch.
+     *
+     * <p>The layers come back with the HUD instances of the previous session, which still hold the old
+     * {@link PlayerRef}; that is fine for HUDs that only use it to build, but re-set layers whose HUD
+     * keeps using it. Bindings and refresh policies are not restored, as their suppliers and HUDs may hold
+     * the old {@link Player}: their handles report unbound, and they have to be set again.</p>
+     *
+     * @return {@code true} if a retained snapshot was restored; if {@code false}, build the HUD as usual
+     */
+    boolean restoreLayers(@Nonnull Player player, @Nonnull PlayerRef playerRef);
+
+    /**
+     * Keeps a snapshot of each disconnecting player's layers for {@code retentionMillis}, so
+     * {@link #restoreLayers(Player, PlayerRef)} can bring them back on reconnect. Off ({@code 0}) by default,
+     * since retained snapshots hold the player's HUD instances.
+     */
+    void setReconnectSnapshotRetention(long retentionMillis);
+
+    /**
+     * Sets the time budget for a single child {@code build()} (default 5 ms).
+     *
+     * <p>Layers that exceed it several times in a row are quarantined: players keep the layer's last good
+     * content and it is rebuilt less and less often while it stays slow, eventually not at all. A player
+     * with no content of the layer yet (e.g. who just joined) still gets it built. Quarantined layers are
+     * listed in {@link HudEnsembleMetrics#quarantinedLayers()}. A non-positive budget turns the watchdog
+     * off.</p>
+     */
+    void setBuildTimeBudget(long budgetMillis);
+
+    /**
+     * Lifts the quarantine of all slow layers so they rebuild normally again.
+     */
+    void clearBuildQuarantine();
 }
@@ -0,0 +1,34 @@
+package com.example.hudensemble.api;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.function.Consumer;
+
+/**
+ * A set of layer operations for a single player, applied together by
+ * {@link HudEnsembleService#batch(com.hypixel.hytale.server.core.entity.entities.Player,
+ * com.hypixel.hytale.server.core.universe.PlayerRef, Consumer)}.
+ *
+ * <p>Operations are recorded in call order and only applied once the batch callback returns.
+ * If the callback throws, nothing is applied. All resulting UI commands reach the client as a
+ * single update, so the player never sees a half-applied state.</p>
+ */
+public interface HudEnsembleTransaction {
+
+    /** Adds (or replaces) a named HUD layer. */
+    @Nonnull
+    HudEnsembleTransaction setLayer(@Nonnull String layerId, @Nonnull CustomUIHud hud);
+
+    /** Removes a HUD layer by its identifier. */
+    @Nonnull
+    HudEnsembleTransaction removeLayer(@Nonnull String layerId);
+
+    /**
+     * Applies incremental UI commands to a layer. Selectors are scoped to the layer root.
+     * No-op if the layer doesn't exist when the operation is applied.
+     */
+    @Nonnull
+    HudEnsembleTransaction updateLayer(@Nonnull String layerId, @Nonnull Consumer<UICommandBuilder> updater);
+}
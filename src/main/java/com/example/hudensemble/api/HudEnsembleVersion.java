@@ -11,7 +11,7 @@ public final class HudEnsembleVersion {
      * <p>This value is incremented whenever the public API gains new capabilities or
      * changes in a way that API consumers may depend on.
      */
-    public static final int API_VERSION = 4;
+    public static final int API_VERSION = 18;
 
     private HudEnsembleVersion() {
     }
@@ -0,0 +1,22 @@
+package com.example.hudensemble.api;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Opaque, immutable capture of a player's HUD layer set: layer ids, their order and the commands each
+ * layer last sent. Obtained from {@link HudEnsembleService#captureLayers} and restored with
+ * {@link HudEnsembleService#restoreLayers}.
+ */
+public interface HudLayerSnapshot {
+
+    /**
+     * @return captured layer ids (namespaced, as stored by the service) in display order.
+     */
+    @Nonnull
+    List<String> layerIds();
+
+    default int layerCount() {
+        return layerIds().size();
+    }
+}
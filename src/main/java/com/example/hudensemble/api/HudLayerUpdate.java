@@ -0,0 +1,16 @@
+package com.example.hudensemble.api;
+
+/**
+ * Opaque, immutable layer update built once and applied to any number of players. Obtained from
+ * {@link HudEnsembleService#prepareLayerUpdate} and applied with
+ * {@link HudEnsembleService#updateLayer(com.hypixel.hytale.server.core.entity.entities.Player, String, HudLayerUpdate)}.
+ *
+ * <p>The updater ran exactly once; every player receives the same command instances.</p>
+ */
+public interface HudLayerUpdate {
+
+    /**
+     * @return number of UI commands in this update.
+     */
+    int commandCount();
+}
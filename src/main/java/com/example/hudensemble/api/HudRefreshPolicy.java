@@ -0,0 +1,53 @@
+package com.example.hudensemble.api;
+
+/**
+ * How often HudEnsemble refreshes a layer on its own.
+ *
+ * <p>A periodic layer is refreshed every {@code intervalTicks} HudEnsemble ticks of {@link #TICK_MILLIS}
+ * each: through its {@link com.example.hudensemble.hudens.RefreshableHud#refresh} hook if it has one,
+ * otherwise by rebuilding it and sending what changed. Each layer starts at a random phase within its
+ * interval, so many players refreshing at the same rate are spread over the ticks of that interval.
+ * {@link #ON_DEMAND} layers are only refreshed by {@link HudEnsembleService#refreshLayer}.</p>
+ *
+ * @param intervalTicks ticks between two refreshes; {@code 0} means on demand only
+ */
+public record HudRefreshPolicy(int intervalTicks) {
+
+    /** Length of one HudEnsemble tick, about one server tick. */
+    public static final long TICK_MILLIS = 33;
+
+    /** No periodic refresh. */
+    public static final HudRefreshPolicy ON_DEMAND = new HudRefreshPolicy(0);
+
+    public HudRefreshPolicy {
+        if (intervalTicks < 0) {
+            throw new IllegalArgumentException("intervalTicks must be >= 0 (was " + intervalTicks + ")");
+        }
+    }
+
+    /**
+     * Convenience factory: refresh every {@code ticks} ticks.
+     */
+    public static HudRefreshPolicy everyTicks(int ticks) {
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("ticks must be > 0 (was " + ticks + ")");
+        }
+        return new HudRefreshPolicy(ticks);
+    }
+
+    /**
+     * Convenience factory: refresh about every {@code millis} milliseconds, rounded up to whole ticks.
+     */
+    public static HudRefreshPolicy everyMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("millis must be > 0 (was " + millis + ")");
+        }
+        long ticks = (millis + TICK_MILLIS - 1) / TICK_MILLIS;
+        return new HudRefreshPolicy((int) Math.min(Integer.MAX_VALUE, ticks));
+    }
+
+    /** @return {@code true} unless this is {@link #ON_DEMAND}. */
+    public boolean isPeriodic() {
+        return intervalTicks > 0;
+    }
+}
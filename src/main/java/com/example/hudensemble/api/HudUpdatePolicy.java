@@ -0,0 +1,33 @@
+package com.example.hudensemble.api;
+
+/**
+ * Rate limit and priority for a layer's incremental updates ({@code updateLayer}).
+ *
+ * <p>Updates arriving less than {@code minIntervalMillis} after the previous one are held back and
+ * merged: a newer {@code Set} to the same selector replaces the older one, so only the latest value is
+ * sent. When several held-back layers become due at once, higher {@code priority} layers go first.</p>
+ *
+ * @param priority          relative priority among a player's layers; higher is sent first
+ * @param minIntervalMillis minimum time between two updates of the layer; {@code 0} means unlimited
+ */
+public record HudUpdatePolicy(int priority, long minIntervalMillis) {
+
+    /** No rate limit, default priority. */
+    public static final HudUpdatePolicy UNLIMITED = new HudUpdatePolicy(0, 0);
+
+    public HudUpdatePolicy {
+        if (minIntervalMillis < 0) {
+            throw new IllegalArgumentException("minIntervalMillis must be >= 0 (was " + minIntervalMillis + ")");
+        }
+    }
+
+    /**
+     * Convenience factory: at most {@code maxUpdatesPerSecond} updates per second for the layer.
+     */
+    public static HudUpdatePolicy perSecond(int priority, int maxUpdatesPerSecond) {
+        if (maxUpdatesPerSecond <= 0) {
+            throw new IllegalArgumentException("maxUpdatesPerSecond must be > 0 (was " + maxUpdatesPerSecond + ")");
+        }
+        return new HudUpdatePolicy(priority, Math.max(1, 1000L / maxUpdatesPerSecond));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.hudensemble.api;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * {@link HudEnsembleTransaction} behind the default {@code batch} methods: records the operations, then
+ * replays them one by one through the interface's own {@code setLayer}, {@code removeLayer} and
+ * {@code updateLayer}. Nothing is applied if recording throws, but each operation is sent on its own.
+ */
+final class ReplayedTransaction implements HudEnsembleTransaction {
+
+    private final BiConsumer<String, CustomUIHud> set;
+    private final Consumer<String> remove;
+    private final BiConsumer<String, Consumer<UICommandBuilder>> update;
+    private final List<Runnable> ops = new ArrayList<>();
+
+    ReplayedTransaction(
+            @Nonnull BiConsumer<String, CustomUIHud> set,
+            @Nonnull Consumer<String> remove,
+            @Nonnull BiConsumer<String, Consumer<UICommandBuilder>> update
+    ) {
+        this.set = set;
+        this.remove = remove;
+        this.update = update;
+    }
+
+    @Nonnull
+    @Override
+    public HudEnsembleTransaction setLayer(@Nonnull String layerId, @Nonnull CustomUIHud hud) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (hud == null) {
+            throw new IllegalArgumentException("hud must not be null");
+        }
+        ops.add(() -> set.accept(layerId, hud));
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public HudEnsembleTransaction removeLayer(@Nonnull String layerId) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        ops.add(() -> remove.accept(layerId));
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public HudEnsembleTransaction updateLayer(@Nonnull String layerId, @Nonnull Consumer<UICommandBuilder> updater) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (updater == null) {
+            throw new IllegalArgumentException("updater must not be null");
+        }
+        ops.add(() -> update.accept(layerId, updater));
+        return this;
+    }
+
+    /** Records {@code operations}, then applies them in order; applies nothing if {@code operations} throws. */
+    void run(@Nonnull Consumer<HudEnsembleTransaction> operations) {
+        if (operations == null) {
+            throw new IllegalArgumentException("operations must not be null");
+        }
+        operations.accept(this);
+        for (Runnable op : ops) {
+            op.run();
+        }
+    }
+}
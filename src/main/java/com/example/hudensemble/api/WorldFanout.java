@@ -0,0 +1,219 @@
+package com.example.hudensemble.api;
+
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fans broadcast operations out to all online players, grouped by world.
+ *
+ * <p>Each world receives exactly one task, which applies the operation to all of its players,
+ * instead of one task per player.</p>
+ */
+final class WorldFanout {
+
+    private static final Logger LOG = Logger.getLogger(WorldFanout.class.getName());
+
+    /** A spawned player and the store it lives in. */
+    record Target(@Nonnull PlayerRef playerRef, @Nonnull Ref<EntityStore> ref, @Nonnull Store<EntityStore> store) {}
+
+    @FunctionalInterface
+    interface TriConsumer<A, B, C> {
+        void accept(A a, B b, C c);
+    }
+
+    private WorldFanout() {
+    }
+
+    /**
+     * Applies {@code action} to every spawned player, running one task per world on that world's thread.
+     *
+     * @return number of players for which the action was scheduled (best-effort)
+     */
+    static int forEachPlayer(@Nonnull BiConsumer<Player, PlayerRef> action) {
+        int scheduled = 0;
+        for (Map.Entry<World, List<Target>> entry : groupByWorld().entrySet()) {
+            List<Target> targets = entry.getValue();
+            if (runOnWorld(entry.getKey(), () -> applyAll(targets, action))) {
+                scheduled += targets.size();
+            }
+        }
+        return scheduled;
+    }
+
+    /**
+     * Like {@link #forEachPlayer}, but first computes a per-player value with {@code prepare} on
+     * {@code prepareExecutor}. Once all values for a world are ready, a single world task applies them.
+     * Players whose value is {@code null} are skipped. Players whose preparation threw are skipped too,
+     * with one warning per world task.
+     *
+     * <p>If {@code prepareExecutor} rejects a preparation, the ones already submitted for that world are
+     * cancelled and the world is skipped.</p>
+     *
+     * @return number of players whose preparation was submitted (best-effort)
+     */
+    static <T> int forEachPlayerPrepared(
+            @Nonnull Function<PlayerRef, T> prepare,
+            @Nonnull Executor prepareExecutor,
+            @Nonnull TriConsumer<Player, PlayerRef, T> action
+    ) {
+        int scheduled = 0;
+        for (Map.Entry<World, List<Target>> entry : groupByWorld().entrySet()) {
+            World world = entry.getKey();
+            List<Target> targets = entry.getValue();
+
+            List<CompletableFuture<T>> prepared = new ArrayList<>(targets.size());
+            try {
+                for (Target target : targets) {
+                    prepared.add(CompletableFuture.supplyAsync(() -> prepare.apply(target.playerRef()), prepareExecutor));
+                }
+            } catch (Throwable t) {
+                // A cancelled future's task returns without calling prepare if it hasn't started yet.
+                for (CompletableFuture<T> future : prepared) {
+                    future.cancel(false);
+                }
+                LOG.log(Level.WARNING, "Executor rejected HUD preparation for " + targets.size()
+                        + " players in world " + world.getName() + "; skipping that world", t);
+                continue;
+            }
+
+            CompletableFuture.allOf(prepared.toArray(new CompletableFuture<?>[0]))
+                    .handle((ignored, error) -> {
+                        if (!runOnWorld(world, () -> applyPrepared(targets, prepared, action))) {
+                            LOG.fine(() -> "World " + world.getName() + " stopped before " + targets.size()
+                                    + " prepared HUD updates could be applied");
+                        }
+                        return null;
+                    });
+            scheduled += targets.size();
+        }
+        return scheduled;
+    }
+
+    private static <T> void applyPrepared(
+            @Nonnull List<Target> targets,
+            @Nonnull List<CompletableFuture<T>> prepared,
+            @Nonnull TriConsumer<Player, PlayerRef, T> action
+    ) {
+        int failures = 0;
+        Throwable firstFailure = null;
+        for (int i = 0; i < targets.size(); i++) {
+            T value;
+            try {
+                value = prepared.get(i).join();
+            } catch (Throwable t) {
+                if (failures++ == 0) {
+                    firstFailure = t.getCause() != null ? t.getCause() : t;
+                }
+                continue;
+            }
+            if (value == null) continue;
+
+            apply(targets.get(i), (player, playerRef) -> action.accept(player, playerRef, value));
+        }
+
+        if (failures > 0) {
+            LOG.log(Level.WARNING, failures + " of " + targets.size()
+                    + " HUD preparations threw; those players were skipped", firstFailure);
+        }
+    }
+
+    /**
+     * Groups all currently spawned players by world, preserving the universe's player order.
+     */
+    @Nonnull
+    private static Map<World, List<Target>> groupByWorld() {
+        Map<World, List<Target>> byWorld = new LinkedHashMap<>();
+
+        for (PlayerRef playerRef : Universe.get().getPlayers()) {
+            if (playerRef == null) continue;
+
+            Ref<EntityStore> ref;
+            try {
+                ref = playerRef.getReference();
+            } catch (Throwable ignored) {
+                continue;
+            }
+
+            if (ref == null || !ref.isValid()) {
+                // The player is not currently spawned in a world.
+                continue;
+            }
+
+            Store<EntityStore> store;
+            try {
+                store = ref.getStore();
+            } catch (Throwable ignored) {
+                continue;
+            }
+
+            World world;
+            try {
+                world = store.getExternalData().getWorld();
+            } catch (Throwable ignored) {
+                continue;
+            }
+
+            if (world == null || !world.isAlive()) {
+                continue;
+            }
+
+            byWorld.computeIfAbsent(world, w -> new ArrayList<>()).add(new Target(playerRef, ref, store));
+        }
+
+        return byWorld;
+    }
+
+    private static void applyAll(@Nonnull List<Target> targets, @Nonnull BiConsumer<Player, PlayerRef> action) {
+        for (Target target : targets) {
+            apply(target, action);
+        }
+    }
+
+    private static void apply(@Nonnull Target target, @Nonnull BiConsumer<Player, PlayerRef> action) {
+        try {
+            // The player may have left or changed worlds since the task was scheduled.
+            if (!target.ref().isValid()) return;
+
+            Player player = target.store().getComponent(target.ref(), Player.getComponentType());
+            if (player == null) return;
+
+            action.accept(player, target.playerRef());
+        } catch (Throwable ignored) {
+            // Best-effort only.
+        }
+    }
+
+    private static boolean runOnWorld(@Nullable World world, @Nonnull Runnable work) {
+        if (world == null || !world.isAlive()) return false;
+
+        try {
+            if (world.isInThread()) {
+                work.run();
+            } else {
+                world.execute(work);
+            }
+            return true;
+        } catch (Throwable ignored) {
+            // Best-effort only.
+            return false;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.hypixel.hytale.server.core.command.system.basecommands.AbstractComman
  * Usage:
  * - /hudens demo  - Show demo layered HUDs
  * - /hudens clean - Remove demo layered HUDs
+ * - /hudens stats - Show HUD composition metrics
  */
 public class HudEnsembleCommand extends AbstractCommandCollection {
 
@@ -16,6 +17,7 @@ public class HudEnsembleCommand extends AbstractCommandCollection {
 
         this.addSubCommand(new DemoSubCommand());
         this.addSubCommand(new CleanSubCommand());
+        this.addSubCommand(new StatsSubCommand());
     }
 
     @Override
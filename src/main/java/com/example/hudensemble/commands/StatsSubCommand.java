@@ -0,0 +1,91 @@
+package com.example.hudensemble.commands;
+
+import com.example.hudensemble.HudEnsemblePlugin;
+import com.example.hudensemble.api.HudEnsembleMetrics;
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.AbstractPlayerCommand;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * /hudens stats - Show HUD composition metrics.
+ */
+public class StatsSubCommand extends AbstractPlayerCommand {
+
+    /** Slowest layers listed, by total build time. */
+    private static final int TOP_LAYERS = 5;
+
+    public StatsSubCommand() {
+        super("stats", "Show HUD composition metrics");
+        this.setPermissionGroup(null);
+    }
+
+    @Override
+    protected boolean canGeneratePermission() {
+        return false;
+    }
+
+    @Override
+    protected void execute(
+            @Nonnull CommandContext context,
+            @Nonnull Store<EntityStore> store,
+            @Nonnull Ref<EntityStore> ref,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull World world
+    ) {
+        HudEnsemblePlugin plugin = CommandUtil.getPluginOrReply(context);
+        if (plugin == null) return;
+
+        HudEnsembleMetrics metrics = plugin.getHudEnsembleService().getMetrics();
+        HudEnsembleMetrics.Distribution perUpdate = metrics.commandsPerUpdate();
+
+        reply(context, "HudEnsemble: %d updates, %d commands (avg %.1f, max %d per update), ~%d KiB sent",
+                metrics.updatesSent(), metrics.commandsSent(), perUpdate.mean(), perUpdate.max(),
+                metrics.estimatedBytesSent() / 1024);
+        reply(context, "Unchanged values not sent: %d", metrics.redundantSets());
+        reply(context, "build(): %s; %d failed, %d reflection failures",
+                formatLatency(metrics.buildNanos()), metrics.buildFailures(), metrics.reflectionFailures());
+
+        if (metrics.bindingFailures() > 0 || metrics.refreshFailures() > 0) {
+            reply(context, "Failed: %d bound value polls, %d periodic refreshes",
+                    metrics.bindingFailures(), metrics.refreshFailures());
+        }
+
+        if (metrics.slowBuilds() > 0 || !metrics.quarantinedLayers().isEmpty()) {
+            reply(context, "Over budget: %d builds, %d skipped; quarantined: %s",
+                    metrics.slowBuilds(), metrics.skippedBuilds(), metrics.quarantinedLayers());
+        }
+
+        for (Map.Entry<String, HudEnsembleMetrics.Distribution> entry : metrics.buildNanosByOwner().entrySet()) {
+            reply(context, "  owner %s: %s", entry.getKey(), formatLatency(entry.getValue()));
+        }
+
+        List<Map.Entry<String, HudEnsembleMetrics.Distribution>> layers =
+                new ArrayList<>(metrics.buildNanosByLayer().entrySet());
+        layers.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+        for (int i = 0; i < Math.min(TOP_LAYERS, layers.size()); i++) {
+            var entry = layers.get(i);
+            reply(context, "  layer %s: %s", entry.getKey(), formatLatency(entry.getValue()));
+        }
+    }
+
+    private static void reply(@Nonnull CommandContext context, @Nonnull String format, Object... args) {
+        context.sendMessage(Message.raw(String.format(Locale.ROOT, format, args)));
+    }
+
+    @Nonnull
+    private static String formatLatency(@Nonnull HudEnsembleMetrics.Distribution d) {
+        return String.format(Locale.ROOT, "%d builds, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                d.count(), d.p50() / 1e6, d.p99() / 1e6, d.max() / 1e6);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.hudensemble.demo.huds;
 
+import com.example.hudensemble.hudens.TemplatedHud;
 import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
@@ -8,8 +9,10 @@ import javax.annotation.Nonnull;
 
 /**
  * Minimal HUD that only appends a UI layout under {@code Common/UI/Custom/Pages/}.
+ *
+ * <p>Its output depends only on the page file, so it is built once and replayed for every player.</p>
  */
-public final class LayoutHud extends CustomUIHud {
+public final class LayoutHud extends CustomUIHud implements TemplatedHud {
 
     private final String pageFile;
 
@@ -18,6 +21,11 @@ public final class LayoutHud extends CustomUIHud {
         this.pageFile = pageFile;
     }
 
+    @Override
+    public Object getTemplateKey() {
+        return pageFile;
+    }
+
     @Override
     protected void build(@Nonnull UICommandBuilder uiCommandBuilder) {
         uiCommandBuilder.append("Pages/" + pageFile);
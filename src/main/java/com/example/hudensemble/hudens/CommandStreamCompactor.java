@@ -0,0 +1,250 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+
+/**
+ * Rewrites an incremental update into a shorter command sequence with the same effect on the client.
+ *
+ * <p>Coalesced and batched updates collect every change made during a tick, so they often contain
+ * work a later command undoes; a single update sent directly can too (an updater setting a property twice,
+ * a build overwriting its own values). Every update of two or more commands goes through here. Three rules
+ * are applied, all in one forward pass:</p>
+ * <ul>
+ *   <li>A {@code Set} is dropped if the same selector is set again later in the update, with no
+ *       structural command in between that touches the same layer.</li>
+ *   <li>A {@code Clear} drops every earlier command inside the cleared element, plus earlier appends
+ *       to and clears of it. A {@code Remove} also drops earlier {@code Set}s of the removed element's
+ *       own properties.</li>
+ *   <li>A layer group created in this update and removed again before it ends is never created:
+ *       the creation, its content and the {@code Remove} are all dropped, unless another group was
+ *       inserted relative to it in the meantime.</li>
+ * </ul>
+ *
+ * <p>Selectors are compared as the prefixed strings the ensemble produces ({@code #HudEnsemble #<layer> ...});
+ * anything the rules can't reason about acts as a barrier, so an update is never made longer or reordered.
+ * The rules rely on what the ensemble guarantees: structural commands target elements that exist, and
+ * element ids are unique within their layer, as are layer group ids under the root. Commands are never
+ * modified; if nothing can be dropped, the input array is returned as is.</p>
+ */
+final class CommandStreamCompactor {
+
+    private static final CustomUICommand[] NO_COMMANDS = new CustomUICommand[0];
+
+    private static final String ROOT_CHILD_PREFIX = HudEnsembleUi.ROOT_SELECTOR + " #";
+    private static final String GROUP_TEXT_PREFIX = "Group #";
+    private static final String GROUP_TEXT_SUFFIX = " {}";
+
+    /** Last {@code Set} of a selector and the structural epoch it was issued in. */
+    private record LastSet(int index, long epoch) {}
+
+    private final CustomUICommand[] commands;
+    private final boolean[] dropped;
+    private int droppedCount;
+
+    /** Bumped by structural commands that may affect any element. */
+    private int globalEpoch;
+    /** Bumped by every structural command. */
+    private int structuralCount;
+    /** Layer group selector -> epoch, bumped by structural commands within that layer. */
+    private final HashMap<String, Integer> layerEpochs = new HashMap<>();
+    private final HashMap<String, LastSet> lastSets = new HashMap<>();
+    /** Layer group selector -> index of the command that created it in this update. */
+    private final HashMap<String, Integer> createdGroups = new HashMap<>();
+
+    private CommandStreamCompactor(@Nonnull CustomUICommand[] commands) {
+        this.commands = commands;
+        this.dropped = new boolean[commands.length];
+    }
+
+    /**
+     * @return the compacted update; {@code commands} itself if nothing could be dropped
+     */
+    @Nonnull
+    static CustomUICommand[] compact(@Nonnull CustomUICommand[] commands) {
+        if (commands.length < 2) return commands;
+        return new CommandStreamCompactor(commands).run();
+    }
+
+    @Nonnull
+    private CustomUICommand[] run() {
+        for (int i = 0; i < commands.length; i++) {
+            CustomUICommand cmd = commands[i];
+            String selector = cmd.selector;
+
+            switch (cmd.type) {
+                case Set -> observeSet(i, selector);
+                case Clear -> {
+                    if (selector != null) dropEarlierContent(i, selector, false);
+                    structural(selector);
+                }
+                case Remove -> {
+                    if (selector != null) {
+                        dropEarlierContent(i, selector, true);
+                        Integer created = createdGroups.remove(selector);
+                        if (created != null) {
+                            drop(created);
+                            drop(i);
+                        }
+                    }
+                    structural(selector);
+                }
+                case Append, AppendInline -> {
+                    if (HudEnsembleUi.ROOT_SELECTOR.equals(selector)) {
+                        rootInsert(i, cmd);
+                    } else {
+                        structural(selector);
+                    }
+                }
+                case InsertBefore, InsertBeforeInline -> {
+                    // Inserting relative to a group pins it: it must exist when this command runs.
+                    if (selector != null) createdGroups.remove(selector);
+
+                    String parent = parentOf(selector);
+                    if (HudEnsembleUi.ROOT_SELECTOR.equals(parent)) {
+                        rootInsert(i, cmd);
+                    } else {
+                        structural(parent);
+                    }
+                }
+                default -> structural(null);
+            }
+        }
+
+        if (droppedCount == 0) return commands;
+
+        CustomUICommand[] out = droppedCount == commands.length
+                ? NO_COMMANDS
+                : new CustomUICommand[commands.length - droppedCount];
+        int n = 0;
+        for (int i = 0; i < commands.length; i++) {
+            if (!dropped[i]) out[n++] = commands[i];
+        }
+        return out;
+    }
+
+    private void observeSet(int index, @Nullable String selector) {
+        if (selector == null) return;
+
+        long epoch = epochOf(layerOf(selector));
+        LastSet previous = lastSets.put(selector, new LastSet(index, epoch));
+        if (previous != null && previous.epoch() == epoch) {
+            drop(previous.index());
+        }
+    }
+
+    /**
+     * Drops earlier commands whose effect {@code Clear}/{@code Remove} of {@code selector} erases: anything
+     * inside the element, appends to and clears of it, and for a removal also its own properties.
+     */
+    private void dropEarlierContent(int index, @Nonnull String selector, boolean removal) {
+        for (int j = 0; j < index; j++) {
+            if (dropped[j]) continue;
+
+            CustomUICommand earlier = commands[j];
+            String target = earlier.selector;
+            if (target == null || !target.startsWith(selector)) continue;
+
+            if (target.length() == selector.length()) {
+                CustomUICommandType type = earlier.type;
+                if (type == CustomUICommandType.Append
+                        || type == CustomUICommandType.AppendInline
+                        || type == CustomUICommandType.Clear) {
+                    drop(j);
+                }
+                continue;
+            }
+
+            char next = target.charAt(selector.length());
+            if (next == ' ' || (removal && next == '.' && earlier.type == CustomUICommandType.Set)) {
+                drop(j);
+            }
+        }
+    }
+
+    /** A command adding a child of the root: a layer group if its text is one, otherwise unknown content. */
+    private void rootInsert(int index, @Nonnull CustomUICommand cmd) {
+        String group = createdGroupOf(cmd);
+        if (group == null) {
+            structural(null);
+            return;
+        }
+        createdGroups.put(group, index);
+        bumpLayer(group);
+    }
+
+    /** Records a structural command whose effect is confined to {@code scope}'s layer, or global. */
+    private void structural(@Nullable String scope) {
+        String layer = scope == null ? null : layerOf(scope);
+        if (layer == null) {
+            globalEpoch++;
+            structuralCount++;
+        } else {
+            bumpLayer(layer);
+        }
+    }
+
+    private void bumpLayer(@Nonnull String layer) {
+        layerEpochs.merge(layer, 1, Integer::sum);
+        structuralCount++;
+    }
+
+    /** Sets of one selector may only be merged if this value didn't change between them. */
+    private long epochOf(@Nullable String layer) {
+        // Sets outside any layer are invalidated by every structural command.
+        if (layer == null) return structuralCount;
+        return ((long) globalEpoch << 32) | layerEpochs.getOrDefault(layer, 0);
+    }
+
+    private void drop(int index) {
+        if (!dropped[index]) {
+            dropped[index] = true;
+            droppedCount++;
+        }
+    }
+
+    /**
+     * @return the layer group selector ({@code #HudEnsemble #<id>}) containing {@code selector}, or
+     *         {@code null} if it isn't inside a layer group
+     */
+    @Nullable
+    private static String layerOf(@Nonnull String selector) {
+        if (!selector.startsWith(ROOT_CHILD_PREFIX)) return null;
+
+        int end = ROOT_CHILD_PREFIX.length();
+        while (end < selector.length()) {
+            char c = selector.charAt(end);
+            if (c == ' ' || c == '.') break;
+            end++;
+        }
+        if (end == ROOT_CHILD_PREFIX.length()) return null;
+        return end == selector.length() ? selector : selector.substring(0, end);
+    }
+
+    @Nullable
+    private static String parentOf(@Nullable String selector) {
+        if (selector == null) return null;
+        int space = selector.lastIndexOf(' ');
+        return space < 0 ? null : selector.substring(0, space);
+    }
+
+    /** @return the group selector if {@code cmd} inlines an empty {@code Group #<id> {}}, else {@code null} */
+    @Nullable
+    private static String createdGroupOf(@Nonnull CustomUICommand cmd) {
+        if (cmd.type != CustomUICommandType.AppendInline && cmd.type != CustomUICommandType.InsertBeforeInline) {
+            return null;
+        }
+        String text = cmd.text;
+        if (text == null || !text.startsWith(GROUP_TEXT_PREFIX) || !text.endsWith(GROUP_TEXT_SUFFIX)) return null;
+
+        String id = text.substring(GROUP_TEXT_PREFIX.length(), text.length() - GROUP_TEXT_SUFFIX.length());
+        for (int i = 0; i < id.length(); i++) {
+            if (!Character.isLetterOrDigit(id.charAt(i))) return null;
+        }
+        return id.isEmpty() ? null : ROOT_CHILD_PREFIX + id;
+    }
+}
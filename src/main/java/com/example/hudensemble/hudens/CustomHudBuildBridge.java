@@ -4,48 +4,56 @@ import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 
 import javax.annotation.Nonnull;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Reflection bridge to invoke {@code CustomUIHud#build(UICommandBuilder)}.
+ * Bridge to invoke {@code CustomUIHud#build(UICommandBuilder)}.
  *
  * <p>This is required because child HUDs may have protected visibility for {@code build}.
+ * The method is resolved once via reflection and turned into a {@code static final}
+ * {@link MethodHandle}, which the JIT can inline like a regular virtual call.
  * If the method cannot be resolved (API change), HudEnsemble will skip composing child HUDs.
  */
 final class CustomHudBuildBridge {
 
     private static final Logger LOG = Logger.getLogger(CustomHudBuildBridge.class.getName());
 
-    private static final Method BUILD_METHOD = resolveBuildMethod();
+    /** {@code (CustomUIHud, UICommandBuilder)void}, dispatching virtually to the child's override. */
+    private static final MethodHandle BUILD_HANDLE = resolveBuildHandle();
 
-    private static Method resolveBuildMethod() {
+    private static MethodHandle resolveBuildHandle() {
         try {
             Method m = CustomUIHud.class.getDeclaredMethod("build", UICommandBuilder.class);
             m.setAccessible(true);
-            return m;
+            return MethodHandles.lookup().unreflect(m);
         } catch (NoSuchMethodException e) {
             LOG.log(Level.SEVERE, "Could not find method 'build(UICommandBuilder)' in CustomUIHud", e);
+            HudMetrics.recordReflectionFailure();
+            return null;
+        } catch (IllegalAccessException | RuntimeException e) {
+            LOG.log(Level.SEVERE, "Unable to access CustomUIHud#build", e);
+            HudMetrics.recordReflectionFailure();
             return null;
         }
     }
 
     static boolean isAvailable() {
-        return BUILD_METHOD != null;
+        return BUILD_HANDLE != null;
     }
 
     static void invokeBuild(@Nonnull CustomUIHud hud, @Nonnull UICommandBuilder builder) {
-        if (BUILD_METHOD == null) return;
+        if (BUILD_HANDLE == null) return;
 
         try {
-            BUILD_METHOD.invoke(hud, builder);
-        } catch (IllegalAccessException e) {
-            LOG.log(Level.SEVERE, "Unable to invoke CustomUIHud#build via reflection", e);
-        } catch (InvocationTargetException e) {
+            BUILD_HANDLE.invokeExact(hud, builder);
+        } catch (Throwable t) {
             // Child HUD threw an exception in build(). Log and ignore so we don't hard-crash.
-            LOG.log(Level.SEVERE, "Child HUD threw inside build()", e.getTargetException());
+            LOG.log(Level.SEVERE, "Child HUD threw inside build()", t);
+            HudMetrics.recordBuildFailure();
         }
     }
 }
@@ -0,0 +1,190 @@
+package com.example.hudensemble.hudens;
+
+import com.example.hudensemble.api.HudEnsembleMetrics;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide counters and histograms for HUD composition.
+ *
+ * <p>Recording is lock-free and allocation-free on the hot path (per-layer and per-owner histograms
+ * are created once per key). Per-layer tracking is capped at {@link #MAX_TRACKED_LAYERS} distinct
+ * ids; further layers still count towards the totals and their owner.</p>
+ */
+final class HudMetrics {
+
+    static final int MAX_TRACKED_LAYERS = 1024;
+
+    /** Rough per-command framing cost (type, presence flags, length prefixes) for byte estimates. */
+    private static final int COMMAND_OVERHEAD_BYTES = 4;
+
+    private static final LongAdder UPDATES = new LongAdder();
+    private static final LongAdder COMMANDS = new LongAdder();
+    private static final LongAdder BYTES = new LongAdder();
+    private static final LongAdder REDUNDANT_SETS = new LongAdder();
+    private static final LongAdder BUILD_FAILURES = new LongAdder();
+    private static final LongAdder REFLECTION_FAILURES = new LongAdder();
+    private static final LongAdder SLOW_BUILDS = new LongAdder();
+    private static final LongAdder SKIPPED_BUILDS = new LongAdder();
+    private static final LongAdder BINDING_FAILURES = new LongAdder();
+    private static final LongAdder REFRESH_FAILURES = new LongAdder();
+
+    private static final MetricHistogram COMMANDS_PER_UPDATE = new MetricHistogram();
+    private static final MetricHistogram BUILD_NANOS = new MetricHistogram();
+
+    private static final ConcurrentHashMap<String, MetricHistogram> BUILD_NANOS_BY_LAYER = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, MetricHistogram> BUILD_NANOS_BY_OWNER = new ConcurrentHashMap<>();
+
+    /** Known client namespaces, used to attribute layer ids to their owner. */
+    private static final Map<String, Boolean> OWNERS = new ConcurrentHashMap<>();
+
+    /** Layer id -> resolved owner; cleared whenever a namespace is registered. */
+    private static final ConcurrentHashMap<String, String> OWNER_BY_LAYER = new ConcurrentHashMap<>();
+
+    private HudMetrics() {}
+
+    static void registerOwner(@Nonnull String namespace) {
+        if (OWNERS.putIfAbsent(namespace, Boolean.TRUE) == null) {
+            OWNER_BY_LAYER.clear();
+        }
+    }
+
+    static void recordUpdate(@Nonnull CustomUICommand[] commands) {
+        UPDATES.increment();
+        COMMANDS.add(commands.length);
+        BYTES.add(estimateBytes(commands));
+        COMMANDS_PER_UPDATE.record(commands.length);
+    }
+
+    /** @return rough payload size of {@code commands}: selector/data/text lengths plus per-command framing. */
+    static long estimateBytes(@Nonnull CustomUICommand[] commands) {
+        long bytes = 0;
+        for (CustomUICommand cmd : commands) {
+            bytes += COMMAND_OVERHEAD_BYTES + length(cmd.selector) + length(cmd.data) + length(cmd.text);
+        }
+        return bytes;
+    }
+
+    static void recordRedundantSets(int count) {
+        REDUNDANT_SETS.add(count);
+    }
+
+    static void recordBuild(@Nonnull String identifier, long nanos) {
+        BUILD_NANOS.record(nanos);
+
+        MetricHistogram perLayer = BUILD_NANOS_BY_LAYER.get(identifier);
+        if (perLayer == null && BUILD_NANOS_BY_LAYER.size() < MAX_TRACKED_LAYERS) {
+            perLayer = BUILD_NANOS_BY_LAYER.computeIfAbsent(identifier, k -> new MetricHistogram());
+        }
+        if (perLayer != null) {
+            perLayer.record(nanos);
+        }
+
+        BUILD_NANOS_BY_OWNER.computeIfAbsent(ownerOf(identifier), k -> new MetricHistogram()).record(nanos);
+    }
+
+    static void recordBuildFailure() {
+        BUILD_FAILURES.increment();
+    }
+
+    static void recordReflectionFailure() {
+        REFLECTION_FAILURES.increment();
+    }
+
+    static void recordSlowBuild() {
+        SLOW_BUILDS.increment();
+    }
+
+    static void recordSkippedBuild() {
+        SKIPPED_BUILDS.increment();
+    }
+
+    static void recordBindingFailure() {
+        BINDING_FAILURES.increment();
+    }
+
+    static void recordRefreshFailure() {
+        REFRESH_FAILURES.increment();
+    }
+
+    @Nonnull
+    static HudEnsembleMetrics snapshot() {
+        return new HudEnsembleMetrics(
+                UPDATES.sum(),
+                COMMANDS.sum(),
+                BYTES.sum(),
+                REDUNDANT_SETS.sum(),
+                COMMANDS_PER_UPDATE.snapshot(),
+                BUILD_NANOS.snapshot(),
+                snapshot(BUILD_NANOS_BY_LAYER),
+                snapshot(BUILD_NANOS_BY_OWNER),
+                BUILD_FAILURES.sum(),
+                REFLECTION_FAILURES.sum(),
+                SLOW_BUILDS.sum(),
+                SKIPPED_BUILDS.sum(),
+                BINDING_FAILURES.sum(),
+                REFRESH_FAILURES.sum(),
+                LayerBuildGuard.quarantined()
+        );
+    }
+
+    static void reset() {
+        UPDATES.reset();
+        COMMANDS.reset();
+        BYTES.reset();
+        REDUNDANT_SETS.reset();
+        BUILD_FAILURES.reset();
+        REFLECTION_FAILURES.reset();
+        SLOW_BUILDS.reset();
+        SKIPPED_BUILDS.reset();
+        BINDING_FAILURES.reset();
+        REFRESH_FAILURES.reset();
+        COMMANDS_PER_UPDATE.reset();
+        BUILD_NANOS.reset();
+        BUILD_NANOS_BY_LAYER.clear();
+        BUILD_NANOS_BY_OWNER.clear();
+    }
+
+    @Nonnull
+    private static String ownerOf(@Nonnull String identifier) {
+        String owner = OWNER_BY_LAYER.get(identifier);
+        if (owner != null) return owner;
+
+        owner = HudEnsembleMetrics.UNATTRIBUTED_OWNER;
+        int bestLength = -1;
+        for (String namespace : OWNERS.keySet()) {
+            int n = namespace.length();
+            if (n > bestLength
+                    && identifier.length() > n
+                    && identifier.charAt(n) == ':'
+                    && identifier.startsWith(namespace)) {
+                owner = namespace;
+                bestLength = n;
+            }
+        }
+
+        if (OWNER_BY_LAYER.size() < MAX_TRACKED_LAYERS) {
+            OWNER_BY_LAYER.put(identifier, owner);
+        }
+        return owner;
+    }
+
+    @Nonnull
+    private static Map<String, HudEnsembleMetrics.Distribution> snapshot(
+            @Nonnull Map<String, MetricHistogram> histograms
+    ) {
+        TreeMap<String, HudEnsembleMetrics.Distribution> out = new TreeMap<>();
+        histograms.forEach((key, histogram) -> out.put(key, histogram.snapshot()));
+        return Collections.unmodifiableMap(out);
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
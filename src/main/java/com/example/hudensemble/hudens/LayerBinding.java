@@ -0,0 +1,99 @@
+package com.example.hudensemble.hudens;
+
+import com.example.hudensemble.api.HudBinding;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A layer-relative property kept in sync with a value supplier by {@link MultipleCustomUIHud#evaluateBindings()}.
+ *
+ * <p>The supplier is polled on the player's world thread; only a value different from the last one sent
+ * turns into a {@code Set}. {@link #unbind()} may be called from any thread.</p>
+ *
+ * <p>A supplier that throws keeps showing its last value. Each failure is counted in the metrics; only
+ * the first one of a binding is logged, so a supplier failing every tick doesn't flood the log.</p>
+ */
+public final class LayerBinding implements HudBinding {
+
+    private static final Logger LOG = Logger.getLogger(LayerBinding.class.getName());
+
+    /** Handle returned when there was nothing to bind to. */
+    public static final LayerBinding UNBOUND = new LayerBinding("", "", () -> null, false);
+
+    private final String identifier;
+    private final String selector;
+    private final Supplier<String> value;
+    private volatile boolean bound;
+
+    /** Last value sent; {@code null} until the first poll or after the layer was rebuilt. World-thread only. */
+    @Nullable
+    private String lastValue;
+
+    /** Whether a supplier failure was logged already. World-thread only. */
+    private boolean failureLogged;
+
+    LayerBinding(@Nonnull String identifier, @Nonnull String selector, @Nonnull Supplier<String> value) {
+        this(identifier, selector, value, true);
+    }
+
+    private LayerBinding(@Nonnull String identifier, @Nonnull String selector, @Nonnull Supplier<String> value,
+                         boolean bound) {
+        this.identifier = identifier;
+        this.selector = selector;
+        this.value = value;
+        this.bound = bound;
+    }
+
+    @Nonnull
+    String selector() {
+        return selector;
+    }
+
+    /**
+     * @return the supplier's value if it changed since the last poll, otherwise {@code null}
+     */
+    @Nullable
+    String poll() {
+        String current;
+        try {
+            current = value.get();
+        } catch (Throwable t) {
+            HudMetrics.recordBindingFailure();
+            if (!failureLogged) {
+                failureLogged = true;
+                LOG.log(Level.WARNING, "Binding of " + selector + " on HUD layer " + identifier
+                        + " threw; keeping its last value (further failures are only counted)", t);
+            }
+            return null;
+        }
+        if (current == null || current.equals(lastValue)) return null;
+
+        lastValue = current;
+        return current;
+    }
+
+    /** @return the last value sent, or {@code null} if none was sent since the binding was created or invalidated */
+    @Nullable
+    String lastValue() {
+        return lastValue;
+    }
+
+    /** Forces the next poll to send the value again, e.g. because the layer was rebuilt from scratch. */
+    void invalidate() {
+        lastValue = null;
+    }
+
+    @Override
+    public void unbind() {
+        bound = false;
+    }
+
+    @Override
+    public boolean isBound() {
+        return bound;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.hudensemble.hudens;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server-wide watchdog for child {@code build()} cost, keyed by layer identifier.
+ *
+ * <p>A child's {@code build()} runs synchronously on the world thread and can't be interrupted, so the
+ * guard works after the fact: a layer whose builds exceed the budget {@link #strikes} times in a row is
+ * quarantined. While quarantined, at most one build per back-off interval is allowed across all players;
+ * everyone else keeps the layer's last good content. The interval doubles on each further slow build,
+ * and a layer still over budget at the longest interval is disabled until {@link #clear()}.
+ * A single build within budget lifts the quarantine. Wrappers with no content of the layer to keep
+ * (e.g. of a player who just joined) don't ask the guard and build anyway.</p>
+ *
+ * <p>Layers that never overrun have no state and cost one map lookup per build.</p>
+ */
+final class LayerBuildGuard {
+
+    private static final Logger LOG = Logger.getLogger(LayerBuildGuard.class.getName());
+
+    static final long DEFAULT_BUDGET_MILLIS = 5;
+    static final int DEFAULT_STRIKES = 3;
+
+    /** First quarantine interval; doubled per further slow build up to {@link #MAX_BACKOFF_SHIFT}. */
+    private static final long BASE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    /** Cap on tracked layers; beyond it, new offenders are not tracked (fail open). */
+    private static final int MAX_TRACKED_LAYERS = 1024;
+
+    private static volatile long budgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MILLIS);
+    private static volatile int strikes = DEFAULT_STRIKES;
+
+    private static final ConcurrentHashMap<String, State> STATES = new ConcurrentHashMap<>();
+
+    private static final class State {
+        int consecutiveOverruns;
+        /** {@code 0} = not quarantined; otherwise the current interval is {@code BASE << (shift - 1)}. */
+        int backoffShift;
+        long nextBuildNanos;
+        boolean disabled;
+
+        boolean isQuarantined() {
+            return disabled || backoffShift > 0;
+        }
+
+        long backoffNanos() {
+            return BASE_BACKOFF_NANOS << (backoffShift - 1);
+        }
+    }
+
+    private LayerBuildGuard() {}
+
+    /**
+     * Sets the per-build budget and how many consecutive overruns trigger quarantine.
+     * A non-positive budget turns the watchdog off and lifts all quarantines.
+     */
+    static void configure(long budgetMillis, int strikesToQuarantine) {
+        if (strikesToQuarantine < 1) {
+            throw new IllegalArgumentException("strikesToQuarantine must be >= 1");
+        }
+        budgetNanos = budgetMillis <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        strikes = strikesToQuarantine;
+        if (budgetNanos == 0) {
+            STATES.clear();
+        }
+    }
+
+    static int strikes() {
+        return strikes;
+    }
+
+    static long budgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    /**
+     * Decides whether {@code identifier} may be built now. For a quarantined layer this claims the
+     * interval's single build slot, so concurrent callers on other worlds are turned away.
+     */
+    static boolean tryAcquire(@Nonnull String identifier, long now) {
+        State state = STATES.get(identifier);
+        if (state == null) return true;
+
+        synchronized (state) {
+            if (state.disabled) return false;
+            if (state.backoffShift == 0) return true;
+            if (now - state.nextBuildNanos < 0) return false;
+
+            state.nextBuildNanos = now + state.backoffNanos();
+            return true;
+        }
+    }
+
+    /**
+     * @return nanoseconds until a quarantined layer may be built again, {@code 0} if it may be built now,
+     *         or {@code -1} if it is disabled
+     */
+    static long nanosUntilBuild(@Nonnull String identifier, long now) {
+        State state = STATES.get(identifier);
+        if (state == null) return 0;
+
+        synchronized (state) {
+            if (state.disabled) return -1;
+            return state.backoffShift == 0 ? 0 : Math.max(0, state.nextBuildNanos - now);
+        }
+    }
+
+    /** Records a finished build and updates the layer's quarantine state. */
+    static void recordBuild(@Nonnull String identifier, long buildNanos, long now) {
+        long budget = budgetNanos;
+        if (budget == 0) return;
+
+        if (buildNanos <= budget) {
+            State state = STATES.remove(identifier);
+            if (state != null && state.isQuarantined()) {
+                LOG.log(Level.INFO, "HUD layer ''{0}'' is back within its build budget; quarantine lifted", identifier);
+            }
+            return;
+        }
+
+        HudMetrics.recordSlowBuild();
+
+        State state = STATES.get(identifier);
+        if (state == null) {
+            if (STATES.size() >= MAX_TRACKED_LAYERS) return;
+            state = STATES.computeIfAbsent(identifier, k -> new State());
+        }
+
+        synchronized (state) {
+            if (state.disabled || ++state.consecutiveOverruns < strikes) return;
+
+            if (state.backoffShift >= MAX_BACKOFF_SHIFT) {
+                state.disabled = true;
+                LOG.log(Level.SEVERE, "HUD layer ''{0}'' is still over its build budget ({1} ms, last build {2} ms); "
+                                + "disabling its rebuilds until the quarantine is cleared",
+                        new Object[]{identifier, budgetMillis(), TimeUnit.NANOSECONDS.toMillis(buildNanos)});
+                return;
+            }
+
+            if (state.backoffShift == 0) {
+                LOG.log(Level.WARNING, "HUD layer ''{0}'' exceeded its build budget ({1} ms) {2} times in a row "
+                                + "(last build {3} ms); serving its last content and rebuilding less often",
+                        new Object[]{identifier, budgetMillis(), state.consecutiveOverruns,
+                                TimeUnit.NANOSECONDS.toMillis(buildNanos)});
+            }
+            state.backoffShift++;
+            state.nextBuildNanos = now + state.backoffNanos();
+        }
+    }
+
+    /** @return identifiers of layers currently quarantined or disabled. */
+    @Nonnull
+    static Set<String> quarantined() {
+        TreeSet<String> out = new TreeSet<>();
+        for (Map.Entry<String, State> entry : STATES.entrySet()) {
+            State state = entry.getValue();
+            synchronized (state) {
+                if (state.isQuarantined()) out.add(entry.getKey());
+            }
+        }
+        return Collections.unmodifiableSet(out);
+    }
+
+    /** Lifts all quarantines, including disabled layers. */
+    static void clear() {
+        STATES.clear();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.hudensemble.hudens;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A layer's periodic refresh, as scheduled by {@link MultipleCustomUIHud#setLayerRefreshInterval}.
+ *
+ * <p>The wrapper keeps one per refreshed layer; whatever drives the refreshes holds on to it and passes
+ * it back to {@link MultipleCustomUIHud#refreshLayers}. It is cancelled when the layer's interval changes
+ * or the layer goes away, so a stale schedule never refreshes twice. {@link #isCancelled()} may be read
+ * from any thread.</p>
+ *
+ * <p>A refresh that throws keeps the layer as it is and the schedule running; only its first failure is
+ * logged.</p>
+ */
+public final class LayerRefresh {
+
+    private final String identifier;
+    private final int intervalTicks;
+    private volatile boolean cancelled;
+
+    /** Whether a failed refresh was logged already. World-thread only. */
+    private boolean failureLogged;
+
+    LayerRefresh(@Nonnull String identifier, int intervalTicks) {
+        this.identifier = identifier;
+        this.intervalTicks = intervalTicks;
+    }
+
+    @Nonnull
+    public String identifier() {
+        return identifier;
+    }
+
+    /** @return ticks between two refreshes; always positive. */
+    public int intervalTicks() {
+        return intervalTicks;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @return {@code true} the first time it is called, i.e. if this failure should be logged. */
+    boolean shouldLogFailure() {
+        if (failureLogged) return false;
+
+        failureLogged = true;
+        return true;
+    }
+
+    /** Stops the schedule for good; refreshes already queued are skipped. */
+    public void cancel() {
+        cancelled = true;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.hudensemble.hudens;
+
+import com.example.hudensemble.api.HudLayerSnapshot;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Layer set of a {@link MultipleCustomUIHud} captured for a later {@link MultipleCustomUIHud#restore}.
+ *
+ * <p>Holds, per layer, the HUD instance and its last emitted commands, so a restore can re-show the
+ * layer without calling its {@code build()}. The command arrays are private copies and never sent
+ * directly, so one snapshot may be restored any number of times; the commands in them are shared.</p>
+ */
+public final class LayerSetSnapshot implements HudLayerSnapshot {
+
+    /**
+     * One captured layer. {@code commands} is {@code null} if the layer's content wasn't known at capture
+     * time; such layers are rebuilt on restore.
+     */
+    record Layer(
+            String identifier,
+            String normalizedId,
+            CustomUIHud hud,
+            @Nullable CustomUICommand[] commands,
+            int priority,
+            long minIntervalMillis,
+            int zIndex,
+            boolean visible,
+            List<LayerBinding> bindings,
+            int refreshIntervalTicks
+    ) {}
+
+    @Nullable
+    private final PlayerRef playerRef;
+    private final List<Layer> layers;
+    private final List<String> layerIds;
+
+    LayerSetSnapshot(@Nullable PlayerRef playerRef, @Nonnull List<Layer> layers) {
+        this.playerRef = playerRef;
+        this.layers = Collections.unmodifiableList(layers);
+
+        ArrayList<String> ids = new ArrayList<>(layers.size());
+        for (Layer layer : layers) {
+            ids.add(layer.identifier());
+        }
+        this.layerIds = Collections.unmodifiableList(ids);
+    }
+
+    /** @return the player session the layers were captured from. */
+    @Nullable
+    PlayerRef playerRef() {
+        return playerRef;
+    }
+
+    @Nonnull
+    List<Layer> layers() {
+        return layers;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> layerIds() {
+        return layerIds;
+    }
+}
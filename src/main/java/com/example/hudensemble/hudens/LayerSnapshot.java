@@ -0,0 +1,188 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Last command list emitted for a layer, used to turn layer rebuilds into minimal updates.
+ *
+ * <p>A rebuild can be diffed only if its structure is identical to the snapshot: the same commands
+ * in the same order, where {@code Set} commands may differ in their value but not their selector.
+ * Anything else (new elements, different templates, a property no longer set) falls back to a
+ * full {@code Clear} + rebuild of the layer.</p>
+ *
+ * <p>Values written later via {@code updateLayer} are folded into the snapshot so the diff is taken
+ * against what the client actually displays, not against the previous build. The same state lets
+ * {@link #observeUpdate} drop {@code Set}s of values the client already shows. Properties the build
+ * never sets are tracked per selector: a rebuild that sets them again (e.g. a binding re-applied with it)
+ * is diffed like any other value, but one that doesn't would have to reset them to their value in the
+ * {@code .ui} template, which the server never sees, so only that case makes the rebuild a full one.</p>
+ *
+ * <p>The snapshot keeps the emitted command instances themselves (commands are never modified once
+ * emitted), so replaying it copies only the array, not the commands.</p>
+ */
+final class LayerSnapshot {
+
+    private static final CustomUICommand[] NO_COMMANDS = new CustomUICommand[0];
+
+    /** Cap on tracked properties outside the build, so a layer setting ever-new selectors can't grow forever. */
+    static final int MAX_UPDATED_SETS = 256;
+
+    /** Commands as the client last saw them; a private array whose entries are replaced on updates. */
+    private final CustomUICommand[] commands;
+
+    /** Selector -> index of the last {@code Set} targeting it, i.e. the value the client ends up with. */
+    private final HashMap<String, Integer> lastSetIndex = new HashMap<>();
+
+    /** Latest {@code Set} per selector the build never sets, written by updates; replayed after the build. */
+    private final LinkedHashMap<String, CustomUICommand> updatedSets = new LinkedHashMap<>();
+
+    LayerSnapshot(@Nonnull CustomUICommand[] commands) {
+        // The array may be shared (e.g. by the template cache); entries are replaced in our own copy.
+        this.commands = commands.clone();
+
+        for (int i = 0; i < commands.length; i++) {
+            CustomUICommand cmd = commands[i];
+            if (cmd.type == CustomUICommandType.Set && cmd.selector != null) {
+                lastSetIndex.put(cmd.selector, i);
+            }
+        }
+    }
+
+    /**
+     * Computes the commands needed to turn the snapshot into {@code next}, the snapshot of a rebuild
+     * (with any values the caller re-applies right after the build already observed).
+     *
+     * <p>A property set only by updates ({@link #observeUpdate}) is sent with its value in {@code next};
+     * if {@code next} doesn't set it, a real rebuild would reset it to a template value that isn't known
+     * here, so the layer has to be rebuilt.</p>
+     *
+     * @param unsent selectors whose snapshotted value was observed but never sent (a throttled update that
+     *               was dropped); their value in {@code next} is sent even if it matches the snapshot
+     * @return the changed {@code Set} commands (possibly empty), or {@code null} if the structure
+     *         differs or a property outside the build can't be reset, and the layer must be rebuilt
+     */
+    @Nullable
+    CustomUICommand[] diff(@Nonnull LayerSnapshot next, @Nonnull Set<String> unsent) {
+        CustomUICommand[] target = next.commands;
+        int n = commands.length;
+        if (target.length != n) return null;
+        for (String selector : updatedSets.keySet()) {
+            if (!next.updatedSets.containsKey(selector)) return null;
+        }
+
+        for (int i = 0; i < n; i++) {
+            CustomUICommand cmd = target[i];
+            CustomUICommand last = commands[i];
+            if (cmd == last) continue;
+            if (cmd.type != last.type || !Objects.equals(cmd.selector, last.selector)) return null;
+            if (cmd.type != CustomUICommandType.Set
+                    && (!Objects.equals(cmd.data, last.data) || !Objects.equals(cmd.text, last.text))) {
+                return null;
+            }
+        }
+
+        ArrayList<CustomUICommand> changed = null;
+        for (int i = 0; i < n; i++) {
+            CustomUICommand last = commands[i];
+            if (last.type != CustomUICommandType.Set || !isLastSet(i)) continue;
+
+            CustomUICommand cmd = target[i];
+            if (isSameValue(cmd, last) && !unsent.contains(last.selector)) continue;
+
+            if (changed == null) changed = new ArrayList<>();
+            changed.add(cmd);
+        }
+        for (CustomUICommand cmd : next.updatedSets.values()) {
+            CustomUICommand last = updatedSets.get(cmd.selector);
+            if (last != null && isSameValue(cmd, last) && !unsent.contains(cmd.selector)) continue;
+
+            if (changed == null) changed = new ArrayList<>();
+            changed.add(cmd);
+        }
+
+        return changed == null ? NO_COMMANDS : changed.toArray(NO_COMMANDS);
+    }
+
+    /**
+     * Folds an incremental update into the snapshot, dropping every {@code Set} whose selector already
+     * holds that value. Commands are checked in order, so a selector set twice in one update is compared
+     * against its first value.
+     *
+     * @return the commands that change something ({@code update} itself if none were dropped; possibly
+     *         empty), or {@code null} if the update can't be tracked (structural commands, or too many
+     *         properties outside the build); the caller should then send it as is and drop the snapshot
+     */
+    @Nullable
+    CustomUICommand[] observeUpdate(@Nonnull CustomUICommand[] update) {
+        for (CustomUICommand cmd : update) {
+            if (cmd.type != CustomUICommandType.Set || cmd.selector == null) return null;
+        }
+
+        ArrayList<CustomUICommand> changed = null;
+        for (int i = 0; i < update.length; i++) {
+            CustomUICommand cmd = update[i];
+            Integer index = lastSetIndex.get(cmd.selector);
+            CustomUICommand current = index != null ? commands[index] : updatedSets.get(cmd.selector);
+
+            if (current != null && Objects.equals(current.data, cmd.data) && Objects.equals(current.text, cmd.text)) {
+                if (changed == null) {
+                    changed = new ArrayList<>(update.length);
+                    for (int j = 0; j < i; j++) {
+                        changed.add(update[j]);
+                    }
+                }
+                continue;
+            }
+
+            if (index != null) {
+                commands[index] = cmd;
+            } else if (current != null || updatedSets.size() < MAX_UPDATED_SETS) {
+                updatedSets.put(cmd.selector, cmd);
+            } else {
+                return null;
+            }
+            if (changed != null) changed.add(cmd);
+        }
+        return changed == null ? update : changed.toArray(NO_COMMANDS);
+    }
+
+    /** @return number of snapshotted commands. */
+    int size() {
+        return commands.length + updatedSets.size();
+    }
+
+    /**
+     * Returns the snapshotted commands, e.g. to re-show a layer without running its {@code build()}.
+     * The array is a fresh copy; the commands are shared.
+     */
+    @Nonnull
+    CustomUICommand[] toCommands() {
+        if (updatedSets.isEmpty()) return commands.clone();
+
+        CustomUICommand[] out = Arrays.copyOf(commands, commands.length + updatedSets.size());
+        int n = commands.length;
+        for (CustomUICommand cmd : updatedSets.values()) {
+            out[n++] = cmd;
+        }
+        return out;
+    }
+
+    private static boolean isSameValue(@Nonnull CustomUICommand cmd, @Nonnull CustomUICommand last) {
+        return cmd == last || (Objects.equals(cmd.data, last.data) && Objects.equals(cmd.text, last.text));
+    }
+
+    private boolean isLastSet(int index) {
+        Integer last = lastSetIndex.get(commands[index].selector);
+        return last != null && last == index;
+    }
+}
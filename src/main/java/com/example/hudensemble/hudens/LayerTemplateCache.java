@@ -0,0 +1,69 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Server-wide cache of built, prefixed layer commands for {@link TemplatedHud}s.
+ *
+ * <p>Entries are keyed by HUD class, template key and normalized layer id (the prefix is baked into
+ * the selectors). Normalized ids are deterministic, so all players showing the same layer share an
+ * entry. Cached arrays are shared between players and must never be modified.</p>
+ */
+final class LayerTemplateCache {
+
+    /** Upper bound on entries; the cache is reset when reached. */
+    static final int MAX_ENTRIES = 4096;
+
+    private record Key(Class<?> hudClass, Object templateKey, String normalizedId) {}
+
+    private static final ConcurrentHashMap<Key, CustomUICommand[]> ENTRIES = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private LayerTemplateCache() {}
+
+    /**
+     * Returns the cached commands for the layer, building and recording them on first use.
+     */
+    @Nonnull
+    static CustomUICommand[] getOrBuild(
+            @Nonnull CustomUIHud hud,
+            @Nonnull Object templateKey,
+            @Nonnull String normalizedId,
+            @Nonnull Supplier<CustomUICommand[]> build
+    ) {
+        Key key = new Key(hud.getClass(), templateKey, normalizedId);
+        CustomUICommand[] cached = ENTRIES.get(key);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        // Build outside the map so third-party build() code never runs under a bin lock.
+        MISSES.increment();
+        CustomUICommand[] built = build.get();
+        if (ENTRIES.size() >= MAX_ENTRIES) {
+            ENTRIES.clear();
+        }
+        CustomUICommand[] raced = ENTRIES.putIfAbsent(key, built);
+        return raced != null ? raced : built;
+    }
+
+    static void clear() {
+        ENTRIES.clear();
+    }
+
+    static long hits() {
+        return HITS.sum();
+    }
+
+    static long misses() {
+        return MISSES.sum();
+    }
+}
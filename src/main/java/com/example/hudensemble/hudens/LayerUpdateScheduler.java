@@ -0,0 +1,336 @@
+package com.example.hudensemble.hudens;
+
+import com.example.hudensemble.api.HudRefreshPolicy;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-player throttle for {@code updateLayer} traffic.
+ *
+ * <p>Each layer may have a priority and a minimum interval between updates. Updates arriving
+ * faster than that are deferred; while deferred, a newer {@code Set} to the same selector replaces
+ * the older one, so only the latest value is ever sent. When deferred updates become due they are
+ * drained in priority order, up to a per-drain command budget; whatever doesn't fit waits for the next
+ * tick.</p>
+ *
+ * <p>Layers may also share a {@link Budget}: an aggregate rate over all layers of one owner, so a
+ * plugin with many layers gets the same share as a plugin with one. A layer whose owner has overdrawn
+ * its budget is deferred until the budget has refilled.</p>
+ *
+ * <p>Layers without a policy or budget are never throttled and cost nothing. Not thread-safe; owned by a
+ * {@link MultipleCustomUIHud} and used on the player's world thread.</p>
+ */
+final class LayerUpdateScheduler {
+
+    /** Max commands released per drain across all layers of a player. */
+    static final int DRAIN_COMMAND_BUDGET = 512;
+
+    /** How long layers left over by a budget-limited drain wait: one tick. */
+    static final long CARRY_OVER_NANOS = TimeUnit.MILLISECONDS.toNanos(HudRefreshPolicy.TICK_MILLIS);
+
+    /**
+     * Token bucket shared by the layers of one owner: refills at {@code commandsPerSecond} up to one
+     * second's worth. An update may go out while a whole token is left and may overdraw the bucket, so a
+     * single update larger than the whole budget is delayed, never stuck.
+     */
+    static final class Budget {
+        private final double commandsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledNanos;
+
+        Budget(int commandsPerSecond, long now) {
+            this.commandsPerNano = commandsPerSecond / 1e9;
+            this.capacity = commandsPerSecond;
+            this.tokens = capacity;
+            this.refilledNanos = now;
+        }
+
+        boolean isAvailable(long now) {
+            refill(now);
+            return tokens >= 1;
+        }
+
+        long nanosUntilAvailable(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / commandsPerNano);
+        }
+
+        void spend(int commands) {
+            tokens -= commands;
+        }
+
+        private void refill(long now) {
+            if (now <= refilledNanos) return;
+            tokens = Math.min(capacity, tokens + (now - refilledNanos) * commandsPerNano);
+            refilledNanos = now;
+        }
+    }
+
+    private static final class LayerState {
+        final String normalizedId;
+        int priority;
+        long minIntervalNanos;
+        long lastSentNanos = Long.MIN_VALUE / 2;
+        /** Budget of the layer's owner as of its last update, or {@code null}. */
+        @Nullable
+        Budget budget;
+
+        /** Deferred commands in arrival order; superseded {@code Set}s are nulled out. */
+        final ArrayList<CustomUICommand> deferred = new ArrayList<>();
+        /** Prefixed selector -> index in {@link #deferred} of the pending {@code Set}. */
+        final HashMap<String, Integer> pendingSets = new HashMap<>();
+        int deferredCount;
+
+        LayerState(String normalizedId) {
+            this.normalizedId = normalizedId;
+        }
+
+        boolean isDue(long now) {
+            return now - lastSentNanos >= minIntervalNanos && (budget == null || budget.isAvailable(now));
+        }
+
+        boolean hasPolicy() {
+            return priority != 0 || minIntervalNanos > 0;
+        }
+
+        void defer(@Nonnull CustomUICommand[] commands) {
+            for (CustomUICommand cmd : commands) {
+                if (cmd.type == CustomUICommandType.Set && cmd.selector != null) {
+                    Integer previous = pendingSets.put(cmd.selector, deferred.size());
+                    if (previous != null) {
+                        deferred.set(previous, null);
+                        deferredCount--;
+                    }
+                }
+                deferred.add(cmd);
+                deferredCount++;
+            }
+        }
+
+        @Nonnull
+        CustomUICommand[] takeDeferred() {
+            CustomUICommand[] out = new CustomUICommand[deferredCount];
+            int n = 0;
+            for (CustomUICommand cmd : deferred) {
+                if (cmd != null) out[n++] = cmd;
+            }
+            deferred.clear();
+            pendingSets.clear();
+            deferredCount = 0;
+            return out;
+        }
+    }
+
+    /** Deferred commands released for one layer by {@link #drainDue}. */
+    record Release(String normalizedId, CustomUICommand[] commands) {}
+
+    private final Map<String, LayerState> states = new HashMap<>();
+
+    /** Set when a drain ran out of budget: no further drain before this time. */
+    private long carryOverUntilNanos = Long.MIN_VALUE / 2;
+
+    /**
+     * Sets the throttle for a layer. A non-positive interval removes throttling but keeps a non-zero
+     * priority; anything already deferred stays queued until the next drain.
+     */
+    void setPolicy(@Nonnull String normalizedId, int priority, long minIntervalMillis) {
+        long minIntervalNanos = minIntervalMillis <= 0 ? 0 : minIntervalMillis * 1_000_000L;
+        LayerState state = states.get(normalizedId);
+        if (minIntervalNanos == 0 && priority == 0) {
+            if (state != null && state.deferredCount == 0 && state.budget == null) {
+                states.remove(normalizedId);
+            } else if (state != null) {
+                state.minIntervalNanos = 0;
+                state.priority = 0;
+            }
+            return;
+        }
+
+        if (state == null) {
+            state = new LayerState(normalizedId);
+            states.put(normalizedId, state);
+        }
+        state.priority = priority;
+        state.minIntervalNanos = minIntervalNanos;
+    }
+
+    /** @return the layer's priority, or {@code 0} if it has no policy. */
+    int priorityOf(@Nonnull String normalizedId) {
+        LayerState state = states.get(normalizedId);
+        return state == null ? 0 : state.priority;
+    }
+
+    /** @return the layer's minimum update interval, or {@code 0} if it isn't throttled. */
+    long minIntervalMillisOf(@Nonnull String normalizedId) {
+        LayerState state = states.get(normalizedId);
+        return state == null ? 0 : state.minIntervalNanos / 1_000_000L;
+    }
+
+    /**
+     * Decides whether an update can go out now.
+     *
+     * @param budget the budget of the layer's owner, or {@code null} if it has none
+     * @return {@code commands} if they may be sent immediately, or {@code null} if they were deferred
+     */
+    @Nullable
+    CustomUICommand[] admit(
+            @Nonnull String normalizedId,
+            @Nullable Budget budget,
+            @Nonnull CustomUICommand[] commands,
+            long now
+    ) {
+        LayerState state = states.get(normalizedId);
+        if (state == null) {
+            if (budget == null) return commands;
+            if (budget.isAvailable(now)) {
+                budget.spend(commands.length);
+                return commands;
+            }
+            state = new LayerState(normalizedId);
+            states.put(normalizedId, state);
+        }
+        state.budget = budget;
+
+        if (state.deferredCount == 0 && state.isDue(now)) {
+            state.lastSentNanos = now;
+            if (budget != null) {
+                budget.spend(commands.length);
+            }
+            return commands;
+        }
+
+        state.defer(commands);
+        return null;
+    }
+
+    /** Detaches every layer from its budget, e.g. because the budgets were replaced. */
+    void clearBudgets() {
+        states.values().removeIf(state -> {
+            state.budget = null;
+            return state.deferredCount == 0 && !state.hasPolicy();
+        });
+    }
+
+    /**
+     * Releases deferred updates that are due, highest priority first, until the command budget is spent.
+     * At least one layer is always released so a single large update can't starve forever. Layers that
+     * didn't fit are carried over: {@link #nanosUntilNextDue} holds them back for one tick.
+     */
+    @Nonnull
+    ArrayList<Release> drainDue(long now) {
+        ArrayList<LayerState> due = new ArrayList<>();
+        for (LayerState state : states.values()) {
+            if (state.deferredCount > 0 && state.isDue(now)) {
+                due.add(state);
+            }
+        }
+        due.sort((a, b) -> Integer.compare(b.priority, a.priority));
+
+        ArrayList<Release> released = new ArrayList<>(due.size());
+        int budget = DRAIN_COMMAND_BUDGET;
+        for (LayerState state : due) {
+            if (!released.isEmpty() && state.deferredCount > budget) {
+                carryOverUntilNanos = now + CARRY_OVER_NANOS;
+                break;
+            }
+            // An earlier layer of the same owner may have used up the owner's budget in this drain.
+            if (state.budget != null && !state.budget.isAvailable(now)) continue;
+
+            budget -= state.deferredCount;
+            state.lastSentNanos = now;
+            if (state.budget != null) {
+                state.budget.spend(state.deferredCount);
+            }
+            released.add(new Release(state.normalizedId, state.takeDeferred()));
+            if (!state.hasPolicy()) {
+                // Only here because its owner's budget held it back.
+                states.remove(state.normalizedId);
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Releases every deferred update regardless of interval or budget (used when throttling is turned off).
+     */
+    @Nonnull
+    ArrayList<Release> drainAll() {
+        ArrayList<Release> released = new ArrayList<>();
+        for (LayerState state : states.values()) {
+            if (state.deferredCount > 0) {
+                released.add(new Release(state.normalizedId, state.takeDeferred()));
+            }
+        }
+        return released;
+    }
+
+    /**
+     * @return nanoseconds until the next deferred update becomes due ({@code 0} if one is due now),
+     *         or {@code -1} if nothing is deferred
+     */
+    long nanosUntilNextDue(long now) {
+        long next = -1;
+        for (LayerState state : states.values()) {
+            if (state.deferredCount == 0) continue;
+
+            long wait = Math.max(0, state.lastSentNanos + state.minIntervalNanos - now);
+            if (state.budget != null) {
+                wait = Math.max(wait, state.budget.nanosUntilAvailable(now));
+            }
+            if (next < 0 || wait < next) next = wait;
+        }
+        if (next >= 0) {
+            next = Math.max(next, carryOverUntilNanos - now);
+        }
+        return next;
+    }
+
+    /**
+     * Drops deferred updates for a layer that is being rebuilt; they are stale.
+     *
+     * @return the selectors of the dropped {@code Set}s, i.e. values the client was never sent
+     */
+    @Nonnull
+    Set<String> discard(@Nonnull String normalizedId) {
+        LayerState state = states.get(normalizedId);
+        if (state == null || state.deferredCount == 0) return Set.of();
+
+        HashSet<String> selectors = new HashSet<>(state.pendingSets.keySet());
+        state.takeDeferred();
+        return selectors;
+    }
+
+    /** Forgets a removed layer entirely, including its policy. */
+    void forget(@Nonnull String normalizedId) {
+        states.remove(normalizedId);
+    }
+
+    /** Forgets all layers, deferred updates and policies. */
+    void clear() {
+        states.clear();
+    }
+
+    /** @return {@code true} if no layer has a policy, a budget or deferred updates. */
+    boolean isEmpty() {
+        return states.isEmpty();
+    }
+
+    /** Drops all deferred updates (e.g. on a full re-show) but keeps layer policies. */
+    void discardAll() {
+        for (LayerState state : states.values()) {
+            if (state.deferredCount > 0) {
+                state.takeDeferred();
+            }
+        }
+    }
+}
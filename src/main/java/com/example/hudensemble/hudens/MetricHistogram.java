@@ -0,0 +1,79 @@
+package com.example.hudensemble.hudens;
+
+import com.example.hudensemble.api.HudEnsembleMetrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with power-of-two buckets, for non-negative values such as latencies and sizes.
+ *
+ * <p>Recording is a handful of atomic increments and never allocates. Percentiles are reported as the
+ * upper bound of the bucket they fall into, i.e. within a factor of two.</p>
+ */
+final class MetricHistogram {
+
+    private static final int BUCKETS = 64;
+
+    /** Bucket {@code i} holds values in {@code [2^(i-1), 2^i)}; bucket 0 holds zero. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) value = 0;
+
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Nonnull
+    HudEnsembleMetrics.Distribution snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return HudEnsembleMetrics.Distribution.EMPTY;
+
+        long observedMax = max.get();
+        return new HudEnsembleMetrics.Distribution(
+                total,
+                sum.sum(),
+                observedMax,
+                Math.min(percentile(counts, total, 0.50), observedMax),
+                Math.min(percentile(counts, total, 0.99), observedMax)
+        );
+    }
+
+    private static long percentile(long[] counts, long total, double quantile) {
+        long rank = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
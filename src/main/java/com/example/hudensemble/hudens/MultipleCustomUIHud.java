@@ -1,5 +1,7 @@
 package com.example.hudensemble.hudens;
 
+import com.example.hudensemble.api.HudEnsembleMetrics;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
 import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
 import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
@@ -7,9 +9,22 @@ import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A {@link CustomUIHud} wrapper that can host multiple HUDs at once.
@@ -19,6 +34,15 @@ import java.util.function.Consumer;
  *   <li>Uses reflection to call protected {@code CustomUIHud#build(UICommandBuilder)} on child HUDs.</li>
  *   <li>Prefixes selectors so each child HUD renders in an isolated subtree: {@code #HudEnsemble #<layerId> ...}</li>
  *   <li>If upstream API internals change, the wrapper degrades gracefully and simply won't compose children.</li>
+ *   <li>Remembers each layer's last emitted commands so re-setting a layer only sends what changed.</li>
+ *   <li>Optionally rate-limits {@code updateLayer} per layer, merging superseded {@code Set}s and
+ *       releasing deferred updates in priority order.</li>
+ *   <li>Times each child {@code build()}; layers that keep exceeding the build budget are quarantined
+ *       and keep their last good content instead of rebuilding on every change.</li>
+ *   <li>Optionally builds {@link ThreadSafeHud} layers on a worker pool, committing only the finished
+ *       commands on the world thread.</li>
+ *   <li>Optionally coalesces incremental updates: commands from all layers are buffered and sent as a
+ *       single {@code update} when the flush scheduler runs (typically once per world tick).</li>
  * </ul>
  */
 public final class MultipleCustomUIHud extends CustomUIHud {
@@ -30,6 +54,13 @@ public final class MultipleCustomUIHud extends CustomUIHud {
      */
     public static final String PRESERVED_BASE_HUD_LAYER_ID = "Unknown";
 
+    private static final Logger LOG = Logger.getLogger(MultipleCustomUIHud.class.getName());
+
+    private static final CustomUICommand[] NO_COMMANDS = new CustomUICommand[0];
+
+    /** Reorder weight of a layer without a snapshot: moving it means calling its {@code build()}. */
+    private static final long UNKNOWN_CONTENT_MOVE_COST = 1L << 20;
+
     private static final boolean CAN_COMPOSE_LAYERS =
             CustomHudBuildBridge.isAvailable() && UiCommandListAccess.isAvailable();
 
@@ -40,13 +71,205 @@ public final class MultipleCustomUIHud extends CustomUIHud {
         return CAN_COMPOSE_LAYERS;
     }
 
+    /**
+     * Drops all cached {@link TemplatedHud} layer builds, e.g. after a UI asset reload.
+     */
+    public static void clearTemplateCache() {
+        LayerTemplateCache.clear();
+    }
+
+    /**
+     * @return number of layer builds served from the template cache since startup.
+     */
+    public static long getTemplateCacheHits() {
+        return LayerTemplateCache.hits();
+    }
+
+    /**
+     * @return number of templated layer builds that had to run {@code build()} since startup.
+     */
+    public static long getTemplateCacheMisses() {
+        return LayerTemplateCache.misses();
+    }
+
+    /**
+     * Enables or disables sharing of layer identifier/normalized id instances across all players
+     * (enabled by default). Ids are identical either way; sharing only avoids per-player copies.
+     */
+    public static void setSharedIdInterning(boolean enabled) {
+        NormalizedIdRegistry.setSharedInterning(enabled);
+    }
+
+    public static boolean isSharedIdInterning() {
+        return NormalizedIdRegistry.isSharedInterning();
+    }
+
+    /**
+     * @return a snapshot of server-wide composition metrics (packets, commands, payload estimate,
+     *         {@code build()} latency per layer and owner, failures).
+     */
+    @Nonnull
+    public static HudEnsembleMetrics getMetrics() {
+        return HudMetrics.snapshot();
+    }
+
+    /**
+     * Resets all composition metrics to zero.
+     */
+    public static void resetMetrics() {
+        HudMetrics.reset();
+    }
+
+    /**
+     * Registers a layer id namespace so {@code build()} latency of layers named
+     * {@code <namespace>:<layerId>} is attributed to it in {@link #getMetrics()}.
+     */
+    public static void registerMetricsOwner(@Nonnull String namespace) {
+        HudMetrics.registerOwner(namespace);
+    }
+
+    /**
+     * Sets the time budget for a single child {@code build()} call.
+     *
+     * <p>A layer whose builds exceed the budget {@code strikesToQuarantine} times in a row is quarantined
+     * server-wide: players keep its last good content, and it is rebuilt at most once per back-off interval
+     * (starting at one second and doubling while it stays slow). A layer still over budget at the longest
+     * interval is disabled until {@link #clearBuildQuarantine()}. Players with no content for the layer yet
+     * (e.g. who just joined) still get it built once. A non-positive budget turns the watchdog off.</p>
+     */
+    public static void setBuildTimeBudget(long budgetMillis, int strikesToQuarantine) {
+        LayerBuildGuard.configure(budgetMillis, strikesToQuarantine);
+    }
+
+    /**
+     * Same as {@link #setBuildTimeBudget(long, int)}, keeping the current strike count.
+     */
+    public static void setBuildTimeBudget(long budgetMillis) {
+        LayerBuildGuard.configure(budgetMillis, LayerBuildGuard.strikes());
+    }
+
+    /**
+     * @return the current build budget in milliseconds, or {@code 0} if the watchdog is off.
+     */
+    public static long getBuildTimeBudgetMillis() {
+        return LayerBuildGuard.budgetMillis();
+    }
+
+    /**
+     * Lifts the quarantine of all slow layers, including disabled ones. They are rebuilt on their next change.
+     */
+    public static void clearBuildQuarantine() {
+        LayerBuildGuard.clear();
+    }
+
+    /**
+     * @return number of prefixed selector strings allocated since startup (selector cache misses).
+     *         Flat under steady load means the prefixing hot path has stopped allocating.
+     */
+    public static long getSelectorPrefixAllocations() {
+        return SelectorPrefixCache.allocations();
+    }
+
+    /**
+     * @return number of selector prefix lookups served from a layer's cache since startup.
+     */
+    public static long getSelectorPrefixCacheHits() {
+        return SelectorPrefixCache.hits();
+    }
+
     private final NormalizedIdRegistry normalizedIds = new NormalizedIdRegistry();
 
-    /** Maintains insertion order so demo layers are stable. */
-    private final Map<String, CustomUIHud> layers = new LinkedHashMap<>();
+    /** Layers in display order, back to front: sorted by z-index, ties in insertion order. */
+    private final LinkedHashMap<String, CustomUIHud> layers = new LinkedHashMap<>();
+
+    /** Non-zero z-indices by identifier; layers without an entry sit at {@code 0}. */
+    private final HashMap<String, Integer> zIndices = new HashMap<>();
+
+    /** Layers hidden with {@link #setLayerVisible}; their groups stay on the client. */
+    private final HashSet<String> hiddenLayers = new HashSet<>();
+
+    /** Bound properties per layer identifier, polled by {@link #evaluateBindings()}. */
+    private final HashMap<String, ArrayList<LayerBinding>> bindings = new HashMap<>();
+
+    /** Periodic refresh of each layer that has one; see {@link #setLayerRefreshInterval}. */
+    private final HashMap<String, LayerRefresh> refreshes = new HashMap<>();
+
+    /** Prefixed-selector caches per layer, keyed by normalized id. */
+    private final Map<String, SelectorPrefixCache> selectorCaches = new HashMap<>();
+
+    /** Last emitted commands per layer, keyed by normalized id; used to diff layer rebuilds. */
+    private final Map<String, LayerSnapshot> snapshots = new HashMap<>();
+
+    /** Commands buffered while coalescing is enabled, in emission order. */
+    private final ArrayList<CustomUICommand> pendingCommands = new ArrayList<>();
+
+    /** Non-null while coalescing is enabled; used to schedule a deferred {@link #flush()}. */
+    @Nullable
+    private Executor flushScheduler;
+    private boolean flushScheduled;
+
+    /** Throttles {@link #updateLayer} per layer; inactive until an update timer is installed. */
+    private final LayerUpdateScheduler updateScheduler = new LayerUpdateScheduler();
+
+    /** Owner -> max commands per second, as last passed to {@link #setUpdateBudgets}. */
+    private Map<String, Integer> updateBudgetLimits = Map.of();
+    /** This player's token bucket per owner with a budget. */
+    private final HashMap<String, LayerUpdateScheduler.Budget> updateBudgets = new HashMap<>();
+
+    /** Runs deferred-update drains on the world thread after a delay; {@code null} disables throttling. */
+    @Nullable
+    private DelayedExecutor updateTimer;
+    private boolean drainScheduled;
+
+    /** Layers whose current HUD wasn't built because of quarantine; rebuilt once the guard allows it. */
+    private final LinkedHashSet<String> staleLayers = new LinkedHashSet<>();
+    private boolean staleRebuildScheduled;
+
+    /** Runs {@link ThreadSafeHud} builds; {@code null} builds every layer inline on the world thread. */
+    @Nullable
+    private Executor buildExecutor;
+    /** Runs off-thread build results on the world thread. */
+    @Nullable
+    private Executor commitExecutor;
+    /** Identifier -> ticket of the layer's latest off-thread build; older results are dropped. */
+    private final HashMap<String, Long> asyncBuilds = new HashMap<>();
+    private long asyncBuildTickets;
+
+    /** Layer held back by a chunked {@link #show()}, with what it showed before (if known). */
+    private record PendingShow(@Nullable LayerSnapshot last, boolean reuseSnapshot) {}
+
+    /** Estimated byte cap for the {@link #show()} packet; {@code 0} sends everything at once. */
+    private int showPacketBudget;
+    /** Layers whose content a chunked {@link #show()} hasn't sent yet, in show order. */
+    private final LinkedHashMap<String, PendingShow> pendingShow = new LinkedHashMap<>();
+    private boolean showStreamScheduled;
+
+    /** Set by {@link #restore}: the next {@link #show()} reuses snapshots, and nothing is sent until then. */
+    private boolean restorePending;
+
+    /** Nesting depth of {@link #beginBatch()}; while positive, all commands are held back. */
+    private int batchDepth;
+
+    /** Replaces {@link #update(boolean, UICommandBuilder)} as the packet sink; {@code null} in production. */
+    @Nullable
+    private final UpdateSink updateSink;
+
+    /** Player session the wrapper was created for; tells {@link #restore} whether a snapshot is from another. */
+    @Nullable
+    private final PlayerRef playerRef;
 
     public MultipleCustomUIHud(@Nonnull PlayerRef playerRef) {
+        this(playerRef, null);
+    }
+
+    /**
+     * Creates a wrapper whose outgoing updates go to {@code updateSink} instead of the player's connection.
+     * Used by benchmarks to run the composition path without a live server.
+     */
+    MultipleCustomUIHud(PlayerRef playerRef, @Nullable UpdateSink updateSink) {
         super(playerRef);
+        this.updateSink = updateSink;
+        this.playerRef = playerRef;
     }
 
     @Override
@@ -57,98 +280,1479 @@ public final class MultipleCustomUIHud extends CustomUIHud {
 
     @Override
     public void show() {
+        boolean reuseSnapshots = restorePending;
+        restorePending = false;
+
         UICommandBuilder commandBuilder = new UICommandBuilder();
         this.build(commandBuilder);
 
-        for (Map.Entry<String, CustomUIHud> entry : layers.entrySet()) {
+        Map<String, LayerSnapshot> previousSnapshots = snapshots.isEmpty() ? Map.of() : new HashMap<>(snapshots);
+        snapshots.clear();
+        pendingShow.clear();
+        // Rebuilt content shows template values again; bound values are re-sent on the next evaluation.
+        for (ArrayList<LayerBinding> layerBindings : bindings.values()) {
+            invalidate(layerBindings);
+        }
+        List<CustomUICommand> target = UiCommandListAccess.tryGet(commandBuilder);
+        if (CAN_COMPOSE_LAYERS && target != null) {
+            // Fill layers in show order; once the packet budget is spent, the rest is streamed in later.
+            boolean chunked = showPacketBudget > 0 && updateTimer != null;
+            HashMap<String, CustomUICommand[]> contents = new HashMap<>();
+            long bytes = 0;
+            for (String identifier : showOrder(chunked)) {
+                String normalizedId = normalizedIds.getOrCreate(identifier);
+                LayerSnapshot last = previousSnapshots.get(normalizedId);
+                if (chunked && bytes >= showPacketBudget) {
+                    pendingShow.put(identifier, new PendingShow(last, reuseSnapshots));
+                    continue;
+                }
+
+                CustomUICommand[] content = showLayerContent(identifier, normalizedId, last, reuseSnapshots);
+                contents.put(identifier, content);
+                bytes += HudMetrics.estimateBytes(content);
+            }
+
+            // Every group goes out now, in display order, so streamed content lands in the right place.
+            for (String identifier : layers.keySet()) {
+                String normalizedId = normalizedIds.getOrCreate(identifier);
+                target.add(createLayerGroup(normalizedId));
+                if (hiddenLayers.contains(identifier)) {
+                    target.add(layerVisibility(normalizedId, false));
+                }
+                CustomUICommand[] content = contents.get(identifier);
+                if (content != null) {
+                    Collections.addAll(target, content);
+                }
+            }
+        }
+
+        // A full show supersedes anything still buffered: the rebuild reflects the current layer set.
+        pendingCommands.clear();
+        updateScheduler.discardAll();
+        emit(true, commandBuilder);
+        scheduleShowStream();
+    }
+
+    /**
+     * Returns a layer's content for a show, recording it as the layer's snapshot. Reuses {@code last}
+     * when restoring, and while the layer is quarantined or building off-thread.
+     */
+    @Nonnull
+    private CustomUICommand[] showLayerContent(
+            @Nonnull String identifier,
+            @Nonnull String normalizedId,
+            @Nullable LayerSnapshot last,
+            boolean reuseSnapshots
+    ) {
+        CustomUIHud hud = layers.get(identifier);
+        CustomUICommand[] content;
+        if (reuseSnapshots && last != null) {
+            content = null;
+        } else if (isBuiltOffThread(hud)) {
+            // Show what the layer had (if anything); the fresh build commits as an update.
+            buildOffThread(identifier, normalizedId, hud, last != null);
+            content = null;
+        } else {
+            asyncBuilds.remove(identifier);
+            content = tryBuildLayerContent(identifier, normalizedId, hud, last != null);
+        }
+
+        if (content != null) {
+            snapshots.put(normalizedId, new LayerSnapshot(content));
+            return content;
+        }
+        if (last != null) {
+            // Restored, quarantined or building off-thread: re-show the last emitted content.
+            snapshots.put(normalizedId, last);
+            return last.toCommands();
+        }
+        return NO_COMMANDS;
+    }
+
+    /**
+     * Order in which {@link #show()} fills layers: display order, or when chunked, the preserved base HUD
+     * first, then by update priority (highest first), ties in display order.
+     */
+    @Nonnull
+    private List<String> showOrder(boolean chunked) {
+        ArrayList<String> order = new ArrayList<>(layers.keySet());
+        if (chunked) {
+            order.sort((a, b) -> Integer.compare(showRank(b), showRank(a)));
+        }
+        return order;
+    }
+
+    private int showRank(@Nonnull String identifier) {
+        if (PRESERVED_BASE_HUD_LAYER_ID.equals(identifier)) return Integer.MAX_VALUE;
+        return updateScheduler.priorityOf(normalizedIds.getOrCreate(identifier));
+    }
+
+    /**
+     * Caps the estimated size of the packet {@link #show()} sends. Layers that don't fit are shown as
+     * empty groups and their content follows in further updates, one budget's worth per world tick, so
+     * a player with many rich layers doesn't receive them all in one burst on join.
+     *
+     * <p>The root and the preserved base HUD go first, then layers by update priority. A layer touched
+     * by {@link #updateLayer} before its turn is sent right away. Needs an update timer; a non-positive
+     * budget (the default) sends everything at once.</p>
+     */
+    public void setShowPacketBudget(int maxBytes) {
+        this.showPacketBudget = Math.max(0, maxBytes);
+        if (showPacketBudget == 0) {
+            flushPendingShow();
+        }
+    }
+
+    public int getShowPacketBudget() {
+        return showPacketBudget;
+    }
+
+    /**
+     * @return {@code true} while layers held back by a chunked {@link #show()} are still being streamed in.
+     */
+    public boolean hasPendingShow() {
+        return !pendingShow.isEmpty();
+    }
+
+    private void scheduleShowStream() {
+        DelayedExecutor timer = this.updateTimer;
+        if (timer == null || showStreamScheduled || pendingShow.isEmpty()) return;
+
+        showStreamScheduled = true;
+        try {
+            timer.schedule(this::streamPendingShow, 0);
+        } catch (RuntimeException e) {
+            // Timer unavailable; send the rest now rather than leaving layers empty.
+            showStreamScheduled = false;
+            flushPendingShow();
+        }
+    }
+
+    /** Sends the next budget's worth of held-back layer content and schedules the rest. */
+    private void streamPendingShow() {
+        showStreamScheduled = false;
+        sendPendingShow(showPacketBudget);
+        scheduleShowStream();
+    }
+
+    private void flushPendingShow() {
+        sendPendingShow(0);
+    }
+
+    /**
+     * Sends held-back layer content, in show order, until {@code maxBytes} is reached (at least one layer;
+     * everything if {@code maxBytes} is non-positive).
+     */
+    private void sendPendingShow(int maxBytes) {
+        if (pendingShow.isEmpty()) return;
+
+        ArrayList<CustomUICommand> chunk = new ArrayList<>();
+        long bytes = 0;
+        int taken = 0;
+        Iterator<Map.Entry<String, PendingShow>> it = pendingShow.entrySet().iterator();
+        while (it.hasNext() && (taken == 0 || maxBytes <= 0 || bytes < maxBytes)) {
+            Map.Entry<String, PendingShow> entry = it.next();
+            it.remove();
+            taken++;
+
             String identifier = entry.getKey();
-            CustomUIHud hud = entry.getValue();
-            String normalizedId = normalizedIds.getOrCreate(identifier);
-            buildLayer(commandBuilder, normalizedId, hud, false);
+            PendingShow pending = entry.getValue();
+            CustomUICommand[] content = showLayerContent(
+                    identifier, normalizedIds.getOrCreate(identifier), pending.last(), pending.reuseSnapshot());
+            Collections.addAll(chunk, content);
+            bytes += HudMetrics.estimateBytes(content);
         }
+        send(chunk.toArray(NO_COMMANDS));
+    }
 
-        this.update(true, commandBuilder);
+    /** Sends a held-back layer's content now, e.g. because it is about to be updated or moved. */
+    private void showPendingLayer(@Nonnull String identifier, @Nonnull String normalizedId) {
+        PendingShow pending = pendingShow.remove(identifier);
+        if (pending == null) return;
+
+        send(showLayerContent(identifier, normalizedId, pending.last(), pending.reuseSnapshot()));
     }
 
     /**
-     * Adds or replaces a named HUD layer.
+     * Enables or disables update coalescing.
+     *
+     * <p>While enabled, {@link #add}, {@link #remove} and {@link #updateLayer} buffer their commands
+     * instead of sending them. The first buffered command asks {@code flushScheduler} to run
+     * {@link #flush()}, so every change made before the scheduler fires goes out as one update.
+     * Passing {@code null} disables coalescing and flushes anything still pending.</p>
      */
-    public void add(@Nonnull String identifier, @Nonnull CustomUIHud hud) {
-        UICommandBuilder commandBuilder = new UICommandBuilder();
+    public void setCoalescing(@Nullable Executor flushScheduler) {
+        this.flushScheduler = flushScheduler;
+        if (flushScheduler == null) {
+            flush();
+        }
+    }
 
-        String normalizedId = normalizedIds.getOrCreate(identifier);
-        boolean existed = layers.put(identifier, hud) != null;
+    public boolean isCoalescing() {
+        return flushScheduler != null;
+    }
 
-        buildLayer(commandBuilder, normalizedId, hud, existed);
-        update(false, commandBuilder);
+    /**
+     * Starts a batch: until the matching {@link #endBatch()}, commands from all layer operations are
+     * buffered so the whole batch reaches the client as a single update. Batches may nest.
+     */
+    public void beginBatch() {
+        batchDepth++;
     }
 
     /**
-     * Removes a previously added HUD layer by its identifier.
+     * Ends a batch started by {@link #beginBatch()}. Closing the outermost batch sends the buffered
+     * commands right away, or hands them to the coalescing flush if coalescing is enabled.
      */
-    public void remove(@Nonnull String identifier) {
-        String normalizedId = normalizedIds.getIfPresent(identifier);
-        if (normalizedId == null) return;
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("endBatch() without matching beginBatch()");
+        }
+        if (--batchDepth > 0) return;
 
-        if (layers.remove(identifier) == null) return;
-        normalizedIds.release(identifier);
+        if (flushScheduler == null) {
+            flush();
+        } else if (!pendingCommands.isEmpty()) {
+            scheduleFlush();
+        }
+    }
 
-        UICommandBuilder commandBuilder = new UICommandBuilder();
-        commandBuilder.remove(HudEnsembleUi.ROOT_SELECTOR + " #" + normalizedId);
-        update(false, commandBuilder);
+    /**
+     * Sends all buffered commands as a single incremental update. No-op if nothing is pending,
+     * or while a batch is open (the batch is sent when it ends).
+     */
+    public void flush() {
+        flushScheduled = false;
+        if (batchDepth > 0 || pendingCommands.isEmpty()) return;
+
+        CustomUICommand[] commands = CommandStreamCompactor.compact(pendingCommands.toArray(NO_COMMANDS));
+        pendingCommands.clear();
+        if (commands.length == 0) return;
+
+        emit(false, new BufferedCommandBuilder(commands));
     }
 
     /**
-     * Applies incremental UI commands to an existing layer.
+     * Enables or disables off-thread builds for {@link ThreadSafeHud} layers.
      *
-     * <p>The provided {@code updater} receives a {@link UICommandBuilder} whose selectors are
-     * scoped to this layer.</p>
+     * <p>With executors set, such layers are built and prefixed on {@code buildExecutor}; the result is
+     * handed to {@code commitExecutor}, which must run it on this player's world thread, and only then
+     * diffed and sent. Other layers keep building inline. Passing {@code null}s builds everything inline
+     * again; results of builds still in flight are still committed.</p>
      */
-    public void updateLayer(@Nonnull String identifier, @Nonnull Consumer<UICommandBuilder> updater) {
-        if (!CAN_COMPOSE_LAYERS) return;
+    public void setAsyncBuild(@Nullable Executor buildExecutor, @Nullable Executor commitExecutor) {
+        if ((buildExecutor == null) != (commitExecutor == null)) {
+            throw new IllegalArgumentException("buildExecutor and commitExecutor must both be set or both be null");
+        }
+        this.buildExecutor = buildExecutor;
+        this.commitExecutor = commitExecutor;
+    }
+
+    @Nullable
+    public Executor getBuildExecutor() {
+        return buildExecutor;
+    }
+
+    /**
+     * Installs the timer used to release throttled updates, enabling per-layer update policies.
+     * It also retries builds of quarantined layers once they are allowed to rebuild.
+     *
+     * <p>The timer must run tasks on this player's world thread. Passing {@code null} disables
+     * throttling and immediately sends everything still deferred.</p>
+     */
+    public void setUpdateTimer(@Nullable DelayedExecutor updateTimer) {
+        this.updateTimer = updateTimer;
+        if (updateTimer == null) {
+            drainScheduled = false;
+            sendReleased(updateScheduler.drainAll());
+            showStreamScheduled = false;
+            flushPendingShow();
+        }
+    }
+
+    public boolean hasUpdateTimer() {
+        return updateTimer != null;
+    }
 
+    /**
+     * Throttles {@link #updateLayer} for an existing layer.
+     *
+     * <p>Updates arriving less than {@code minIntervalMillis} after the previous one are deferred and
+     * merged (a newer {@code Set} to the same selector replaces the older one). Due layers are released
+     * highest {@code priority} first. A non-positive interval removes the throttle; the priority still
+     * orders drains and chunked shows. Has no effect until an update timer is installed.</p>
+     */
+    public void setLayerUpdatePolicy(@Nonnull String identifier, int priority, long minIntervalMillis) {
         String normalizedId = normalizedIds.getIfPresent(identifier);
         if (normalizedId == null) return;
 
-        PrefixedUICommandBuilder layerBuilder = new PrefixedUICommandBuilder(normalizedId);
-        updater.accept(layerBuilder);
-        update(false, layerBuilder);
+        updateScheduler.setPolicy(normalizedId, priority, minIntervalMillis);
     }
 
     /**
-     * Returns the HUD stored under the given identifier, or null if not present.
+     * Caps the combined {@link #updateLayer} rate of all layers of an owner, e.g. one plugin, whose
+     * identifiers look like {@code <owner>:<layer>}. Each owner gets its own token bucket holding one
+     * second's worth of commands; once an owner has overdrawn it, that owner's updates are deferred
+     * and merged like throttled ones until it has refilled. Other owners are unaffected.
      *
-     * <p>Intended primarily for shutdown cleanup, so HudEnsemble can restore the base HUD
-     * and detach this wrapper from the player's HudManager.
+     * <p>Replaces the previous budgets; owners missing from the map are unlimited. The map is kept as
+     * given and must not be modified afterwards. Has no effect until an update timer is installed.</p>
      */
-    @Nullable
-    public CustomUIHud getLayerOrNull(@Nonnull String identifier) {
-        return layers.get(identifier);
+    public void setUpdateBudgets(@Nonnull Map<String, Integer> maxCommandsPerSecondByOwner) {
+        updateBudgetLimits = maxCommandsPerSecondByOwner;
+        updateBudgets.clear();
+        updateScheduler.clearBudgets();
+
+        long now = System.nanoTime();
+        for (Map.Entry<String, Integer> entry : maxCommandsPerSecondByOwner.entrySet()) {
+            if (entry.getValue() > 0) {
+                updateBudgets.put(entry.getKey(), new LayerUpdateScheduler.Budget(entry.getValue(), now));
+            }
+        }
+        // Updates held back by a budget that is gone now are released by the next drain.
+        scheduleDrain();
     }
 
-    private static void buildLayer(
-            @Nonnull UICommandBuilder target,
-            @Nonnull String normalizedId,
-            @Nonnull CustomUIHud hud,
-            boolean layerAlreadyExists
-    ) {
+    /** @return the map last passed to {@link #setUpdateBudgets}; empty by default. */
+    @Nonnull
+    public Map<String, Integer> getUpdateBudgets() {
+        return updateBudgetLimits;
+    }
+
+    /**
+     * Adds or replaces a named HUD layer.
+     *
+     * <p>When replacing, the new build is diffed against the layer's last emitted commands; if only
+     * {@code Set} values changed, just those are sent instead of clearing and rebuilding the layer.</p>
+     */
+    public void add(@Nonnull String identifier, @Nonnull CustomUIHud hud) {
+        String normalizedId = normalizedIds.getOrCreate(identifier);
+        boolean existed = layers.containsKey(identifier);
+        if (existed) {
+            layers.put(identifier, hud);
+        } else {
+            insertLayer(identifier, hud);
+        }
+        if (!CAN_COMPOSE_LAYERS) return;
+
+        boolean hasLastContent = existed && snapshots.containsKey(normalizedId);
+        if (isBuiltOffThread(hud)) {
+            // The group goes out now so the layer keeps its place; content follows when the build commits.
+            if (!existed) {
+                send(new CustomUICommand[]{createLayerGroupInPlace(identifier, normalizedId)});
+            }
+            buildOffThread(identifier, normalizedId, hud, hasLastContent);
+            return;
+        }
+
+        asyncBuilds.remove(identifier);
+        CustomUICommand[] content = tryBuildLayerContent(identifier, normalizedId, hud, hasLastContent);
+        if (content == null) {
+            // Quarantined: the layer keeps what it shows.
+            return;
+        }
+
+        commitLayerContent(identifier, normalizedId, existed, content);
+    }
+
+    /**
+     * Adds or replaces a named HUD layer at the given z-index. Layers are stacked back to front by
+     * z-index; layers sharing one keep the order they were added in.
+     */
+    public void add(@Nonnull String identifier, @Nonnull CustomUIHud hud, int zIndex) {
+        beginBatch();
+        try {
+            if (layers.containsKey(identifier)) {
+                setLayerZIndex(identifier, zIndex);
+            } else {
+                setZIndexValue(identifier, zIndex);
+            }
+            add(identifier, hud);
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * @return the layer's z-index, or {@code 0} if it has none or isn't present.
+     */
+    public int getLayerZIndex(@Nonnull String identifier) {
+        Integer zIndex = zIndices.get(identifier);
+        return zIndex == null ? 0 : zIndex;
+    }
+
+    /**
+     * Shows or hides an existing layer with a single {@code Set} on its group's {@code Visible} property.
+     *
+     * <p>Unlike {@link #remove}, the layer's client subtree, id, snapshot and policies stay in place, so
+     * showing it again costs one command instead of a {@code build()}. Updates to a hidden layer are still
+     * applied, so it comes back current. No-op if the layer doesn't exist or is already in that state.</p>
+     */
+    public void setLayerVisible(@Nonnull String identifier, boolean visible) {
+        if (!layers.containsKey(identifier)) return;
+        if (!(visible ? hiddenLayers.remove(identifier) : hiddenLayers.add(identifier))) return;
         if (!CAN_COMPOSE_LAYERS) return;
 
-        PrefixedUICommandBuilder layerBuilder = new PrefixedUICommandBuilder(normalizedId);
+        send(new CustomUICommand[]{layerVisibility(normalizedIds.getOrCreate(identifier), visible)});
+    }
+
+    /**
+     * @return {@code false} if the layer was hidden with {@link #setLayerVisible}, {@code true} otherwise.
+     */
+    public boolean isLayerVisible(@Nonnull String identifier) {
+        return !hiddenLayers.contains(identifier);
+    }
+
+    /**
+     * Moves an existing layer to a new z-index.
+     *
+     * <p>Layers are moved as whole groups: the fewest groups needed to reach the new order are removed,
+     * re-inserted at their new place and refilled from their last emitted commands, so no layer is built
+     * again unless its content isn't known.</p>
+     */
+    public void setLayerZIndex(@Nonnull String identifier, int zIndex) {
+        if (!layers.containsKey(identifier) || getLayerZIndex(identifier) == zIndex) return;
+
+        setZIndexValue(identifier, zIndex);
+        ArrayList<String> target = new ArrayList<>(layers.keySet());
+        target.remove(identifier);
+        target.add(insertionIndex(target, zIndex), identifier);
 
-        if (layerAlreadyExists) {
-            // Clear previous contents under this layer group.
-            layerBuilder.addSynthetic(CustomUICommandType.Clear, layerBuilder.getPrefixSelector(), null);
+        if (CAN_COMPOSE_LAYERS) {
+            applyLayerOrder(target);
         } else {
-            // Create the group under the root container.
-            layerBuilder.addSynthetic(
-                    CustomUICommandType.AppendInline,
-                    HudEnsembleUi.ROOT_SELECTOR,
-                    "Group #" + normalizedId + " {}"
-            );
+            reorderLayers(target);
         }
+    }
 
-        CustomHudBuildBridge.invokeBuild(hud, layerBuilder);
-        layerBuilder.appendTo(target);
+    /**
+     * Sends a layer's new content: only the changed values if the structure matches the last snapshot,
+     * otherwise a clear (or, for a new layer, the group) followed by the full content. The values of the
+     * layer's bindings follow in the same update, so the client never shows the template values in between.
+     */
+    private void commitLayerContent(@Nonnull String identifier, @Nonnull String normalizedId, boolean existed,
+                                    @Nonnull CustomUICommand[] content) {
+        // Throttled updates queued for the old content are superseded by the rebuild. The snapshot already
+        // holds their values, so the diff has to send those selectors even where it sees no change.
+        Set<String> unsent = updateScheduler.discard(normalizedId);
+        pendingShow.remove(identifier);
+
+        LayerSnapshot snapshot = new LayerSnapshot(content);
+        LayerSnapshot previous = snapshots.put(normalizedId, snapshot);
+        CustomUICommand[] bound = boundValues(identifier, normalizedId);
+        if (bound.length > 0) {
+            CustomUICommand[] changed = snapshot.observeUpdate(bound);
+            if (changed == null) {
+                snapshots.remove(normalizedId);
+                previous = null;
+            } else {
+                bound = changed;
+            }
+        }
+
+        if (existed && previous != null) {
+            // The new snapshot already holds the bound values, so the delta ends with them too.
+            CustomUICommand[] delta = previous.diff(snapshot, unsent);
+            if (delta != null) {
+                send(delta);
+                return;
+            }
+        }
+
+        CustomUICommand[] commands = new CustomUICommand[content.length + 1 + bound.length];
+        commands[0] = existed
+                // Clear previous contents under this layer group.
+                ? new CustomUICommand(CustomUICommandType.Clear, layerSelector(normalizedId), null, null)
+                : createLayerGroupInPlace(identifier, normalizedId);
+        System.arraycopy(content, 0, commands, 1, content.length);
+        System.arraycopy(bound, 0, commands, 1 + content.length, bound.length);
+        send(commands);
+    }
+
+    /**
+     * @return {@code Set}s of the values the layer's bindings last sent, or none if it has no polled bindings
+     */
+    @Nonnull
+    private CustomUICommand[] boundValues(@Nonnull String identifier, @Nonnull String normalizedId) {
+        ArrayList<LayerBinding> layerBindings = bindings.get(identifier);
+        if (layerBindings == null) return NO_COMMANDS;
+
+        PrefixedUICommandBuilder layerBuilder = null;
+        for (LayerBinding binding : layerBindings) {
+            String value = binding.lastValue();
+            if (value == null || !binding.isBound()) continue;
+
+            if (layerBuilder == null) {
+                layerBuilder = new PrefixedUICommandBuilder(selectorCache(normalizedId));
+            }
+            layerBuilder.set(binding.selector(), value);
+        }
+        return layerBuilder == null ? NO_COMMANDS : layerBuilder.getCommands();
+    }
+
+    /**
+     * Removes a previously added HUD layer by its identifier.
+     */
+    public void remove(@Nonnull String identifier) {
+        String normalizedId = normalizedIds.getIfPresent(identifier);
+        if (normalizedId == null) return;
+
+        if (layers.remove(identifier) == null) return;
+        zIndices.remove(identifier);
+        hiddenLayers.remove(identifier);
+        pendingShow.remove(identifier);
+        ArrayList<LayerBinding> layerBindings = bindings.remove(identifier);
+        if (layerBindings != null) {
+            for (LayerBinding binding : layerBindings) {
+                binding.unbind();
+            }
+        }
+        LayerRefresh refresh = refreshes.remove(identifier);
+        if (refresh != null) {
+            refresh.cancel();
+        }
+        normalizedIds.release(identifier);
+        staleLayers.remove(identifier);
+        asyncBuilds.remove(identifier);
+        snapshots.remove(normalizedId);
+        selectorCaches.remove(normalizedId);
+        updateScheduler.forget(normalizedId);
+
+        UICommandBuilder commandBuilder = new UICommandBuilder();
+        commandBuilder.remove(layerSelector(normalizedId));
+        send(commandBuilder.getCommands());
+    }
+
+    /**
+     * Applies incremental UI commands to an existing layer.
+     *
+     * <p>The provided {@code updater} receives a {@link UICommandBuilder} whose selectors are
+     * scoped to this layer.</p>
+     */
+    public void updateLayer(@Nonnull String identifier, @Nonnull Consumer<UICommandBuilder> updater) {
+        if (!CAN_COMPOSE_LAYERS) return;
+
+        String normalizedId = normalizedIds.getIfPresent(identifier);
+        if (normalizedId == null) return;
+        showPendingLayer(identifier, normalizedId);
+
+        PrefixedUICommandBuilder layerBuilder = new PrefixedUICommandBuilder(selectorCache(normalizedId));
+        updater.accept(layerBuilder);
+        CustomUICommand[] commands = layerBuilder.getCommands();
+        if (commands.length == 0) return;
+
+        admitLayerUpdate(identifier, normalizedId, commands);
+    }
+
+    /**
+     * Runs {@code updater} once and keeps its commands for {@link #updateLayer(String, SharedLayerUpdate)}
+     * on any number of players, so a value every player sees is built and prefixed only once.
+     */
+    @Nonnull
+    public static SharedLayerUpdate prepareLayerUpdate(@Nonnull Consumer<UICommandBuilder> updater) {
+        UICommandBuilder builder = new UICommandBuilder();
+        updater.accept(builder);
+        return new SharedLayerUpdate(builder.getCommands());
+    }
+
+    /**
+     * Like {@link #updateLayer(String, Consumer)}, but sends a prepared update. Players sharing the layer
+     * receive the same command array, so nothing is built or prefixed per player.
+     */
+    public void updateLayer(@Nonnull String identifier, @Nonnull SharedLayerUpdate update) {
+        if (!CAN_COMPOSE_LAYERS || update.commandCount() == 0) return;
+
+        String normalizedId = normalizedIds.getIfPresent(identifier);
+        if (normalizedId == null) return;
+        showPendingLayer(identifier, normalizedId);
+
+        admitLayerUpdate(identifier, normalizedId, update.commandsFor(normalizedId));
+    }
+
+    /**
+     * Binds a property of a layer to {@code value}, e.g. {@code bind("stats", "#Health.Text", ...)}:
+     * {@link #evaluateBindings()} polls the supplier and sends the value whenever it changed. A
+     * {@code null} value leaves the property as it is. The binding ends when it is unbound or the layer
+     * is removed; rebuilding the layer keeps it.
+     *
+     * @return the binding; already unbound if the layer doesn't exist
+     */
+    @Nonnull
+    public LayerBinding bind(@Nonnull String identifier, @Nonnull String selector, @Nonnull Supplier<String> value) {
+        if (selector.isEmpty()) {
+            throw new IllegalArgumentException("selector must not be empty");
+        }
+        if (!CAN_COMPOSE_LAYERS || !layers.containsKey(identifier)) return LayerBinding.UNBOUND;
+
+        LayerBinding binding = new LayerBinding(identifier, selector, value);
+        bindings.computeIfAbsent(identifier, k -> new ArrayList<>()).add(binding);
+        return binding;
+    }
+
+    /**
+     * @return {@code true} if any layer has a binding that {@link #evaluateBindings()} still has to poll.
+     */
+    public boolean hasBindings() {
+        return !bindings.isEmpty();
+    }
+
+    /**
+     * Polls every binding and sends the values that changed since the last evaluation, all layers in one
+     * update. Unbound bindings are dropped. Suppliers must not add or remove layers.
+     *
+     * @return {@code true} if any bindings remain
+     */
+    public boolean evaluateBindings() {
+        if (bindings.isEmpty()) return false;
+
+        beginBatch();
+        try {
+            Iterator<Map.Entry<String, ArrayList<LayerBinding>>> it = bindings.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, ArrayList<LayerBinding>> entry = it.next();
+                ArrayList<LayerBinding> layerBindings = entry.getValue();
+                layerBindings.removeIf(binding -> !binding.isBound());
+                if (layerBindings.isEmpty()) {
+                    it.remove();
+                } else {
+                    sendBoundValues(entry.getKey(), layerBindings);
+                }
+            }
+        } finally {
+            endBatch();
+        }
+        return !bindings.isEmpty();
+    }
+
+    private void sendBoundValues(@Nonnull String identifier, @Nonnull List<LayerBinding> layerBindings) {
+        String normalizedId = normalizedIds.getIfPresent(identifier);
+        if (normalizedId == null) return;
+
+        PrefixedUICommandBuilder layerBuilder = null;
+        for (LayerBinding binding : layerBindings) {
+            String value = binding.poll();
+            if (value == null) continue;
+
+            if (layerBuilder == null) {
+                showPendingLayer(identifier, normalizedId);
+                layerBuilder = new PrefixedUICommandBuilder(selectorCache(normalizedId));
+            }
+            layerBuilder.set(binding.selector(), value);
+        }
+        if (layerBuilder != null) {
+            admitLayerUpdate(identifier, normalizedId, layerBuilder.getCommands());
+        }
+    }
+
+    /**
+     * Schedules a layer to be refreshed every {@code intervalTicks} ticks, replacing (and cancelling) its
+     * previous schedule. A non-positive interval only cancels. The wrapper doesn't keep time itself: the
+     * caller drives the returned schedule and hands it to {@link #refreshLayers} whenever it is due.
+     *
+     * @return the new schedule, or {@code null} if the interval isn't positive or the layer doesn't exist
+     */
+    @Nullable
+    public LayerRefresh setLayerRefreshInterval(@Nonnull String identifier, int intervalTicks) {
+        LayerRefresh previous = refreshes.remove(identifier);
+        if (previous != null) {
+            previous.cancel();
+        }
+        if (intervalTicks <= 0 || !layers.containsKey(identifier)) return null;
+
+        LayerRefresh refresh = new LayerRefresh(identifier, intervalTicks);
+        refreshes.put(identifier, refresh);
+        return refresh;
+    }
+
+    /** @return the layer's refresh interval in ticks, or {@code 0} if it isn't refreshed periodically. */
+    public int getLayerRefreshInterval(@Nonnull String identifier) {
+        LayerRefresh refresh = refreshes.get(identifier);
+        return refresh == null ? 0 : refresh.intervalTicks();
+    }
+
+    /** @return the current refresh schedules, e.g. to drive them after a {@link #restore}. */
+    @Nonnull
+    public List<LayerRefresh> getLayerRefreshes() {
+        return refreshes.isEmpty() ? List.of() : List.copyOf(refreshes.values());
+    }
+
+    /**
+     * Refreshes a layer now: applies its {@link RefreshableHud#refresh} hook as an incremental update, or
+     * rebuilds it if it has none, which sends only what changed.
+     *
+     * @return {@code false} if the layer doesn't exist
+     */
+    public boolean refreshLayer(@Nonnull String identifier) {
+        CustomUIHud hud = layers.get(identifier);
+        if (hud == null) return false;
+
+        if (hud instanceof RefreshableHud refreshable) {
+            updateLayer(identifier, refreshable::refresh);
+        } else {
+            add(identifier, hud);
+        }
+        return true;
+    }
+
+    /**
+     * Refreshes the layers of due schedules in one update. Schedules that were replaced or whose layer is
+     * gone are cancelled instead.
+     */
+    public void refreshLayers(@Nonnull List<LayerRefresh> due) {
+        beginBatch();
+        try {
+            for (LayerRefresh refresh : due) {
+                if (refresh.isCancelled() || refreshes.get(refresh.identifier()) != refresh) {
+                    refresh.cancel();
+                    continue;
+                }
+                try {
+                    refreshLayer(refresh.identifier());
+                } catch (Throwable t) {
+                    // A failing refresh hook keeps the layer as it is; the schedule stays.
+                    HudMetrics.recordRefreshFailure();
+                    if (refresh.shouldLogFailure()) {
+                        LOG.log(Level.WARNING, "Refreshing HUD layer " + refresh.identifier()
+                                + " threw; keeping it as it is (further failures are only counted)", t);
+                    }
+                }
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    private static void invalidate(@Nonnull List<LayerBinding> layerBindings) {
+        for (LayerBinding binding : layerBindings) {
+            binding.invalidate();
+        }
+    }
+
+    /**
+     * Captures the layer set for a later {@link #restore}: identifiers, order, update and refresh policies,
+     * bindings and each layer's last emitted commands. Layers whose content isn't known (e.g. after an {@code updateLayer}
+     * that couldn't be tracked) are captured without commands and rebuilt on restore.
+     */
+    @Nonnull
+    public LayerSetSnapshot captureSnapshot() {
+        ArrayList<LayerSetSnapshot.Layer> captured = new ArrayList<>(layers.size());
+        for (Map.Entry<String, CustomUIHud> entry : layers.entrySet()) {
+            String identifier = entry.getKey();
+            String normalizedId = normalizedIds.getOrCreate(identifier);
+            LayerSnapshot snapshot = snapshots.get(normalizedId);
+            PendingShow pending = pendingShow.get(identifier);
+            if (snapshot == null && pending != null) {
+                snapshot = pending.last();
+            }
+            ArrayList<LayerBinding> layerBindings = bindings.get(identifier);
+
+            captured.add(new LayerSetSnapshot.Layer(
+                    identifier,
+                    normalizedId,
+                    entry.getValue(),
+                    snapshot == null ? null : snapshot.toCommands(),
+                    updateScheduler.priorityOf(normalizedId),
+                    updateScheduler.minIntervalMillisOf(normalizedId),
+                    getLayerZIndex(identifier),
+                    isLayerVisible(identifier),
+                    layerBindings == null ? List.of() : List.copyOf(layerBindings),
+                    getLayerRefreshInterval(identifier)
+            ));
+        }
+        return new LayerSetSnapshot(playerRef, captured);
+    }
+
+    /**
+     * Loads the layers of a snapshot without building them. Layers that are already present are kept
+     * as they are; the others are inserted in snapshot order at their captured z-index.
+     *
+     * <p>Nothing is sent until the next {@link #show()}, which then sends every layer in one full update,
+     * reusing last emitted commands instead of calling {@code build()} wherever they are known. Call
+     * {@code show()} yourself, or attach the wrapper with {@code HudManager#setCustomHud}, which shows it.</p>
+     *
+     * <p>Bindings and refresh schedules only carry over within the player session the snapshot was
+     * captured in. A snapshot from an earlier session (e.g. kept across a reconnect) has its bindings
+     * unbound and its refresh schedules dropped, since their suppliers and HUDs may still hold the old
+     * {@code Player}. The HUD instances themselves are restored either way; they still reference the old
+     * {@link PlayerRef}, which only matters to HUDs that use it beyond {@code build()}.</p>
+     */
+    public void restore(@Nonnull LayerSetSnapshot snapshot) {
+        boolean sameSession = snapshot.playerRef() == playerRef;
+        for (LayerSetSnapshot.Layer layer : snapshot.layers()) {
+            String identifier = layer.identifier();
+            if (layers.containsKey(identifier)) continue;
+
+            String normalizedId = normalizedIds.getOrCreate(identifier);
+            setZIndexValue(identifier, layer.zIndex());
+            insertLayer(identifier, layer.hud());
+            if (!layer.visible()) {
+                hiddenLayers.add(identifier);
+            }
+            if (sameSession && layer.refreshIntervalTicks() > 0) {
+                refreshes.put(identifier, new LayerRefresh(identifier, layer.refreshIntervalTicks()));
+            }
+            for (LayerBinding binding : layer.bindings()) {
+                if (!sameSession) {
+                    binding.unbind();
+                } else if (binding.isBound()) {
+                    binding.invalidate();
+                    bindings.computeIfAbsent(identifier, k -> new ArrayList<>()).add(binding);
+                }
+            }
+            // Commands embed the normalized id; only reuse them if this registry assigned the same one.
+            if (layer.commands() != null && normalizedId.equals(layer.normalizedId())) {
+                snapshots.put(normalizedId, new LayerSnapshot(layer.commands()));
+            }
+            if (layer.minIntervalMillis() > 0 || layer.priority() != 0) {
+                updateScheduler.setPolicy(normalizedId, layer.priority(), layer.minIntervalMillis());
+            }
+        }
+        restorePending = true;
+    }
+
+    /**
+     * @return {@code true} if {@link #restore} was called and the wrapper hasn't been shown since.
+     */
+    public boolean isRestorePending() {
+        return restorePending;
+    }
+
+    /**
+     * Drops every layer and all per-player bookkeeping (ids, snapshots, caches, buffered and throttled
+     * updates) without sending anything. For players that are gone: the wrapper may stay reachable from
+     * the departing player entity for a while, but no longer holds on to the layers.
+     */
+    public void release() {
+        layers.clear();
+        zIndices.clear();
+        hiddenLayers.clear();
+        // Bindings stay bound: a snapshot captured before the release carries them over.
+        bindings.clear();
+        for (LayerRefresh refresh : refreshes.values()) {
+            refresh.cancel();
+        }
+        refreshes.clear();
+        pendingShow.clear();
+        normalizedIds.clear();
+        selectorCaches.clear();
+        snapshots.clear();
+        pendingCommands.clear();
+        updateScheduler.clear();
+        updateBudgets.clear();
+        updateBudgetLimits = Map.of();
+        staleLayers.clear();
+        asyncBuilds.clear();
+        buildExecutor = null;
+        commitExecutor = null;
+        flushScheduler = null;
+        flushScheduled = false;
+        updateTimer = null;
+        drainScheduled = false;
+        staleRebuildScheduled = false;
+        showStreamScheduled = false;
+        restorePending = false;
+    }
+
+    /**
+     * Names the per-player collections that still hold anything, e.g. to check that {@link #release()}
+     * left nothing behind. Used by tests.
+     */
+    @Nonnull
+    List<String> heldState() {
+        ArrayList<String> held = new ArrayList<>();
+        if (!layers.isEmpty()) held.add("layers");
+        if (!zIndices.isEmpty()) held.add("zIndices");
+        if (!hiddenLayers.isEmpty()) held.add("hiddenLayers");
+        if (!bindings.isEmpty()) held.add("bindings");
+        if (!refreshes.isEmpty()) held.add("refreshes");
+        if (!pendingShow.isEmpty()) held.add("pendingShow");
+        if (normalizedIds.size() > 0) held.add("normalizedIds");
+        if (!selectorCaches.isEmpty()) held.add("selectorCaches");
+        if (!snapshots.isEmpty()) held.add("snapshots");
+        if (!pendingCommands.isEmpty()) held.add("pendingCommands");
+        if (!updateScheduler.isEmpty()) held.add("updateScheduler");
+        if (!updateBudgets.isEmpty()) held.add("updateBudgets");
+        if (!staleLayers.isEmpty()) held.add("staleLayers");
+        if (!asyncBuilds.isEmpty()) held.add("asyncBuilds");
+        return held;
+    }
+
+    /**
+     * @return number of layers currently hosted, including a preserved base HUD.
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * Returns the HUD stored under the given identifier, or null if not present.
+     *
+     * <p>Intended primarily for shutdown cleanup, so HudEnsemble can restore the base HUD
+     * and detach this wrapper from the player's HudManager.
+     */
+    @Nullable
+    public CustomUIHud getLayerOrNull(@Nonnull String identifier) {
+        return layers.get(identifier);
+    }
+
+    /**
+     * Sends an incremental update, minus the {@code Set}s that wouldn't change what the layer shows, or
+     * defers it if the layer is throttled.
+     *
+     * <p>The update is folded into the layer's snapshot as soon as it is admitted, so a deferred value
+     * already counts as shown: a later {@code Set} back to the old value still goes out. A rebuild that drops
+     * the deferred update re-sends those selectors (see {@link #commitLayerContent}).</p>
+     */
+    private void admitLayerUpdate(
+            @Nonnull String identifier,
+            @Nonnull String normalizedId,
+            @Nonnull CustomUICommand[] commands
+    ) {
+        LayerSnapshot snapshot = snapshots.get(normalizedId);
+        if (snapshot != null) {
+            CustomUICommand[] changed = snapshot.observeUpdate(commands);
+            if (changed == null) {
+                // Structural update: the snapshot no longer describes what the client shows.
+                snapshots.remove(normalizedId);
+            } else {
+                if (changed.length < commands.length) {
+                    HudMetrics.recordRedundantSets(commands.length - changed.length);
+                }
+                commands = changed;
+            }
+        }
+        if (commands.length == 0) return;
+
+        if (updateTimer != null) {
+            commands = updateScheduler.admit(normalizedId, budgetOf(identifier), commands, System.nanoTime());
+            if (commands == null) {
+                scheduleDrain();
+                return;
+            }
+        }
+
+        send(commands);
+    }
+
+    /**
+     * @return the budget of the owner whose namespace prefixes {@code identifier} ({@code <owner>:...}),
+     *         the longest one if several do, or {@code null}
+     */
+    @Nullable
+    private LayerUpdateScheduler.Budget budgetOf(@Nonnull String identifier) {
+        if (updateBudgets.isEmpty()) return null;
+
+        LayerUpdateScheduler.Budget budget = null;
+        int matched = -1;
+        for (Map.Entry<String, LayerUpdateScheduler.Budget> entry : updateBudgets.entrySet()) {
+            String owner = entry.getKey();
+            int len = owner.length();
+            if (len > matched && identifier.length() > len && identifier.charAt(len) == ':'
+                    && identifier.startsWith(owner)) {
+                budget = entry.getValue();
+                matched = len;
+            }
+        }
+        return budget;
+    }
+
+    private void sendReleased(@Nonnull List<LayerUpdateScheduler.Release> released) {
+        if (released.isEmpty()) return;
+
+        beginBatch();
+        try {
+            for (LayerUpdateScheduler.Release release : released) {
+                send(release.commands());
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void drainDeferredUpdates() {
+        drainScheduled = false;
+        if (updateTimer == null) return;
+
+        sendReleased(updateScheduler.drainDue(System.nanoTime()));
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        DelayedExecutor timer = this.updateTimer;
+        if (timer == null || drainScheduled) return;
+
+        long waitNanos = updateScheduler.nanosUntilNextDue(System.nanoTime());
+        if (waitNanos < 0) return;
+
+        drainScheduled = true;
+        try {
+            timer.schedule(this::drainDeferredUpdates, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+        } catch (RuntimeException e) {
+            // Timer unavailable (e.g. shutting down); release what we have rather than holding it forever.
+            drainScheduled = false;
+            sendReleased(updateScheduler.drainAll());
+        }
+    }
+
+    /**
+     * Builds the layer unless the build guard has it quarantined and the player still sees its last
+     * content. In that case the layer is marked stale, a retry is scheduled on the update timer, and
+     * {@code null} is returned.
+     */
+    @Nullable
+    private CustomUICommand[] tryBuildLayerContent(
+            @Nonnull String identifier,
+            @Nonnull String normalizedId,
+            @Nonnull CustomUIHud hud,
+            boolean hasLastContent
+    ) {
+        if (!tryAcquireBuild(identifier, hasLastContent)) return null;
+
+        return buildLayerContent(identifier, normalizedId, hud);
+    }
+
+    /**
+     * Asks the build guard whether the layer may be built now; if not, marks it stale and schedules a retry.
+     * A layer without last content to fall back on (e.g. for a player who just joined) is always built,
+     * without using up the quarantine's build slot, so it never shows up empty.
+     */
+    private boolean tryAcquireBuild(@Nonnull String identifier, boolean hasLastContent) {
+        if (hasLastContent && !LayerBuildGuard.tryAcquire(identifier, System.nanoTime())) {
+            HudMetrics.recordSkippedBuild();
+            staleLayers.add(identifier);
+            scheduleStaleRebuild();
+            return false;
+        }
+
+        staleLayers.remove(identifier);
+        return true;
+    }
+
+    private boolean isBuiltOffThread(@Nonnull CustomUIHud hud) {
+        return buildExecutor != null && hud instanceof ThreadSafeHud;
+    }
+
+    /**
+     * Builds a {@link ThreadSafeHud} layer on the build executor and commits the result on the world thread.
+     * Each dispatch takes a new ticket; results of superseded, removed or released layers are dropped.
+     */
+    private void buildOffThread(@Nonnull String identifier, @Nonnull String normalizedId, @Nonnull CustomUIHud hud,
+                                boolean hasLastContent) {
+        Executor builder = this.buildExecutor;
+        Executor committer = this.commitExecutor;
+        if (builder == null || committer == null || !tryAcquireBuild(identifier, hasLastContent)) return;
+
+        long ticket = ++asyncBuildTickets;
+        asyncBuilds.put(identifier, ticket);
+
+        // The layer's selector cache is world-thread only; the worker prefixes with its own.
+        SelectorPrefixCache selectors = new SelectorPrefixCache(layerSelector(normalizedId));
+        try {
+            builder.execute(() -> {
+                CustomUICommand[] content = buildLayerContent(identifier, normalizedId, selectors, hud);
+                try {
+                    committer.execute(() -> commitOffThreadBuild(identifier, ticket, content));
+                } catch (RuntimeException e) {
+                    // World gone or shutting down; nobody left to show the result to.
+                }
+            });
+        } catch (RuntimeException e) {
+            // Build pool rejected the task; build inline rather than leaving the layer empty.
+            asyncBuilds.remove(identifier);
+            commitLayerContent(identifier, normalizedId, true, buildLayerContent(identifier, normalizedId, hud));
+        }
+    }
+
+    private void commitOffThreadBuild(@Nonnull String identifier, long ticket, @Nonnull CustomUICommand[] content) {
+        Long latest = asyncBuilds.get(identifier);
+        if (latest == null || latest != ticket) return;
+        asyncBuilds.remove(identifier);
+
+        String normalizedId = normalizedIds.getIfPresent(identifier);
+        if (normalizedId == null) return;
+
+        // The group already exists: it was sent on add() or by show().
+        commitLayerContent(identifier, normalizedId, true, content);
+    }
+
+    private void rebuildStaleLayers() {
+        staleRebuildScheduled = false;
+        if (staleLayers.isEmpty()) return;
+
+        beginBatch();
+        try {
+            for (String identifier : new ArrayList<>(staleLayers)) {
+                CustomUIHud hud = layers.get(identifier);
+                if (hud == null) {
+                    staleLayers.remove(identifier);
+                } else {
+                    add(identifier, hud);
+                }
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    private void scheduleStaleRebuild() {
+        DelayedExecutor timer = this.updateTimer;
+        if (timer == null || staleRebuildScheduled || staleLayers.isEmpty()) return;
+
+        long now = System.nanoTime();
+        long waitNanos = -1;
+        for (String identifier : staleLayers) {
+            long wait = LayerBuildGuard.nanosUntilBuild(identifier, now);
+            if (wait >= 0 && (waitNanos < 0 || wait < waitNanos)) waitNanos = wait;
+        }
+        // Only disabled layers left; they wait for the quarantine to be cleared and the next change.
+        if (waitNanos < 0) return;
+
+        staleRebuildScheduled = true;
+        try {
+            timer.schedule(this::rebuildStaleLayers, TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+        } catch (RuntimeException e) {
+            // Timer unavailable; the next add() or show() retries the build.
+            staleRebuildScheduled = false;
+        }
+    }
+
+    /**
+     * Sends an incremental update immediately, or buffers it while a batch is open or coalescing is enabled.
+     */
+    private void send(@Nonnull CustomUICommand[] commands) {
+        // The pending restore show sends the full current state, including this change.
+        if (commands.length == 0 || restorePending) return;
+
+        if (flushScheduler == null && batchDepth == 0) {
+            emit(false, new BufferedCommandBuilder(CommandStreamCompactor.compact(commands)));
+            return;
+        }
+
+        Collections.addAll(pendingCommands, commands);
+        if (batchDepth == 0) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        Executor scheduler = this.flushScheduler;
+        if (scheduler == null || flushScheduled) return;
+
+        flushScheduled = true;
+        try {
+            scheduler.execute(this::flush);
+        } catch (RuntimeException e) {
+            // Scheduler rejected the task (e.g. world shutting down); don't strand the commands.
+            flush();
+        }
+    }
+
+    private void emit(boolean clear, @Nonnull UICommandBuilder builder) {
+        HudMetrics.recordUpdate(builder.getCommands());
+
+        UpdateSink sink = this.updateSink;
+        if (sink != null) {
+            sink.update(clear, builder);
+        } else {
+            update(clear, builder);
+        }
+    }
+
+    /**
+     * Returns the layer's commands, prefixed into the layer group.
+     *
+     * <p>{@link TemplatedHud}s with a template key are served from the server-wide
+     * {@link LayerTemplateCache}; the returned array may then be shared and must not be modified.</p>
+     */
+    @Nonnull
+    private CustomUICommand[] buildLayerContent(
+            @Nonnull String identifier,
+            @Nonnull String normalizedId,
+            @Nonnull CustomUIHud hud
+    ) {
+        return buildLayerContent(identifier, normalizedId, selectorCache(normalizedId), hud);
+    }
+
+    /**
+     * Returns the layer's commands prefixed with {@code selectors}, via the template cache where applicable.
+     * Touches no instance state, so thread-safe HUDs can be built off the world thread.
+     */
+    @Nonnull
+    private static CustomUICommand[] buildLayerContent(
+            @Nonnull String identifier,
+            @Nonnull String normalizedId,
+            @Nonnull SelectorPrefixCache selectors,
+            @Nonnull CustomUIHud hud
+    ) {
+        if (hud instanceof TemplatedHud templated) {
+            Object templateKey = templated.getTemplateKey();
+            if (templateKey != null) {
+                return LayerTemplateCache.getOrBuild(
+                        hud, templateKey, normalizedId, () -> buildLayerContent(identifier, selectors, hud));
+            }
+        }
+        return buildLayerContent(identifier, selectors, hud);
+    }
+
+    /**
+     * Runs the child's {@code build()} and returns its commands, prefixed into the layer group.
+     * The build time is recorded against {@code identifier}.
+     */
+    @Nonnull
+    private static CustomUICommand[] buildLayerContent(
+            @Nonnull String identifier,
+            @Nonnull SelectorPrefixCache selectors,
+            @Nonnull CustomUIHud hud
+    ) {
+        PrefixedUICommandBuilder layerBuilder = new PrefixedUICommandBuilder(selectors);
+        long start = System.nanoTime();
+        CustomHudBuildBridge.invokeBuild(hud, layerBuilder);
+        long end = System.nanoTime();
+        HudMetrics.recordBuild(identifier, end - start);
+        LayerBuildGuard.recordBuild(identifier, end - start, end);
+        return layerBuilder.getCommands();
+    }
+
+    @Nonnull
+    private SelectorPrefixCache selectorCache(@Nonnull String normalizedId) {
+        SelectorPrefixCache cache = selectorCaches.get(normalizedId);
+        if (cache == null) {
+            cache = new SelectorPrefixCache(layerSelector(normalizedId));
+            selectorCaches.put(normalizedId, cache);
+        }
+        return cache;
+    }
+
+    private void setZIndexValue(@Nonnull String identifier, int zIndex) {
+        if (zIndex == 0) {
+            zIndices.remove(identifier);
+        } else {
+            zIndices.put(identifier, zIndex);
+        }
+    }
+
+    /** @return the position in {@code order} after every layer whose z-index is at most {@code zIndex}. */
+    private int insertionIndex(@Nonnull List<String> order, int zIndex) {
+        int index = order.size();
+        while (index > 0 && getLayerZIndex(order.get(index - 1)) > zIndex) {
+            index--;
+        }
+        return index;
+    }
+
+    /** Adds a new layer at the place its z-index gives it; a plain append unless a higher layer exists. */
+    private void insertLayer(@Nonnull String identifier, @Nonnull CustomUIHud hud) {
+        int zIndex = getLayerZIndex(identifier);
+        if (layers.isEmpty() || getLayerZIndex(layers.lastEntry().getKey()) <= zIndex) {
+            layers.put(identifier, hud);
+            return;
+        }
+
+        ArrayList<String> order = new ArrayList<>(layers.keySet());
+        order.add(insertionIndex(order, zIndex), identifier);
+        layers.put(identifier, hud);
+        reorderLayers(order);
+    }
+
+    /** Re-inserts {@link #layers} in {@code order}, which must hold exactly the current identifiers. */
+    private void reorderLayers(@Nonnull List<String> order) {
+        LinkedHashMap<String, CustomUIHud> current = new LinkedHashMap<>(layers);
+        layers.clear();
+        for (String identifier : order) {
+            layers.put(identifier, current.get(identifier));
+        }
+    }
+
+    /**
+     * Reorders the layers and brings the client's groups into the same order with as little traffic
+     * as possible.
+     *
+     * <p>There is no command that moves an element, so a moved layer's group is removed, inserted again
+     * at its new place and refilled from its snapshot. The layers left in place are a subsequence that is
+     * already in target order, chosen to maximize the commands a move would have to resend.</p>
+     */
+    private void applyLayerOrder(@Nonnull List<String> target) {
+        ArrayList<String> current = new ArrayList<>(layers.keySet());
+        int n = current.size();
+
+        HashMap<String, Integer> targetIndex = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            targetIndex.put(target.get(i), i);
+        }
+
+        // Maximum-weight increasing subsequence of target positions, O(n^2): n is a handful of layers.
+        int[] position = new int[n];
+        long[] weight = new long[n];
+        long[] best = new long[n];
+        int[] previous = new int[n];
+        int bestEnd = -1;
+        for (int i = 0; i < n; i++) {
+            position[i] = targetIndex.get(current.get(i));
+            weight[i] = moveCost(current.get(i));
+            best[i] = weight[i];
+            previous[i] = -1;
+            for (int j = 0; j < i; j++) {
+                if (position[j] < position[i] && best[j] + weight[i] > best[i]) {
+                    best[i] = best[j] + weight[i];
+                    previous[i] = j;
+                }
+            }
+            if (bestEnd < 0 || best[i] > best[bestEnd]) bestEnd = i;
+        }
+
+        HashSet<String> kept = new HashSet<>();
+        for (int i = bestEnd; i >= 0; i = previous[i]) {
+            kept.add(current.get(i));
+        }
+
+        reorderLayers(target);
+        if (kept.size() == n) return;
+
+        ArrayList<CustomUICommand> commands = new ArrayList<>();
+        for (String identifier : current) {
+            if (kept.contains(identifier)) continue;
+            String normalizedId = normalizedIds.getOrCreate(identifier);
+            commands.add(new CustomUICommand(CustomUICommandType.Remove, layerSelector(normalizedId), null, null));
+        }
+
+        // Insert back to front, so every moved group's successor is already where it belongs.
+        for (int t = n - 1; t >= 0; t--) {
+            String identifier = target.get(t);
+            if (kept.contains(identifier)) continue;
+
+            String normalizedId = normalizedIds.getOrCreate(identifier);
+            commands.add(t + 1 < n
+                    ? insertLayerGroupBefore(normalizedId, normalizedIds.getOrCreate(target.get(t + 1)))
+                    : createLayerGroup(normalizedId));
+            if (hiddenLayers.contains(identifier)) {
+                commands.add(layerVisibility(normalizedId, false));
+            }
+            Collections.addAll(commands, movedLayerContent(identifier, normalizedId));
+        }
+        send(commands.toArray(NO_COMMANDS));
+    }
+
+    /** Commands resent if a layer is moved; layers without a snapshot need a build, so avoid moving them. */
+    private long moveCost(@Nonnull String identifier) {
+        LayerSnapshot snapshot = snapshots.get(normalizedIds.getOrCreate(identifier));
+        return snapshot == null ? UNKNOWN_CONTENT_MOVE_COST : 1 + snapshot.size();
+    }
+
+    /**
+     * Content for a layer whose group was just re-inserted: its snapshot if known, otherwise a fresh build.
+     * Off-thread layers start empty and fill in when their build commits.
+     */
+    @Nonnull
+    private CustomUICommand[] movedLayerContent(@Nonnull String identifier, @Nonnull String normalizedId) {
+        PendingShow pending = pendingShow.remove(identifier);
+        if (pending != null) {
+            return showLayerContent(identifier, normalizedId, pending.last(), pending.reuseSnapshot());
+        }
+
+        LayerSnapshot snapshot = snapshots.get(normalizedId);
+        if (snapshot != null) return snapshot.toCommands();
+
+        CustomUIHud hud = layers.get(identifier);
+        if (isBuiltOffThread(hud)) {
+            buildOffThread(identifier, normalizedId, hud, false);
+            return NO_COMMANDS;
+        }
+
+        CustomUICommand[] content = tryBuildLayerContent(identifier, normalizedId, hud, false);
+        if (content == null) return NO_COMMANDS;
+
+        snapshots.put(normalizedId, new LayerSnapshot(content));
+        return content;
+    }
+
+    /**
+     * Creates the group for a new layer: appended under the root if it is the topmost layer, otherwise
+     * inserted before the layer that follows it.
+     */
+    @Nonnull
+    private CustomUICommand createLayerGroupInPlace(@Nonnull String identifier, @Nonnull String normalizedId) {
+        String next = null;
+        if (!identifier.equals(layers.lastEntry().getKey())) {
+            boolean found = false;
+            for (String candidate : layers.keySet()) {
+                if (found) {
+                    next = candidate;
+                    break;
+                }
+                found = candidate.equals(identifier);
+            }
+        }
+        return next == null
+                ? createLayerGroup(normalizedId)
+                : insertLayerGroupBefore(normalizedId, normalizedIds.getOrCreate(next));
+    }
+
+    @Nonnull
+    private static CustomUICommand insertLayerGroupBefore(@Nonnull String normalizedId, @Nonnull String nextNormalizedId) {
+        return new CustomUICommand(
+                CustomUICommandType.InsertBeforeInline,
+                layerSelector(nextNormalizedId),
+                null,
+                "Group #" + normalizedId + " {}"
+        );
+    }
+
+    /** Creates the group for a layer under the root container. */
+    @Nonnull
+    private static CustomUICommand createLayerGroup(@Nonnull String normalizedId) {
+        return new CustomUICommand(
+                CustomUICommandType.AppendInline,
+                HudEnsembleUi.ROOT_SELECTOR,
+                null,
+                "Group #" + normalizedId + " {}"
+        );
+    }
+
+    @Nonnull
+    private static CustomUICommand layerVisibility(@Nonnull String normalizedId, boolean visible) {
+        return new CustomUICommand(
+                CustomUICommandType.Set,
+                layerSelector(normalizedId) + ".Visible",
+                Boolean.toString(visible),
+                null
+        );
+    }
+
+    @Nonnull
+    static String layerSelector(@Nonnull String normalizedId) {
+        return HudEnsembleUi.ROOT_SELECTOR + " #" + normalizedId;
+    }
+
+    /**
+     * Carries an already-prefixed command array into {@link #update(boolean, UICommandBuilder)}.
+     */
+    private static final class BufferedCommandBuilder extends UICommandBuilder {
+        private final CustomUICommand[] commands;
+
+        private BufferedCommandBuilder(@Nonnull CustomUICommand[] commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        @Nonnull
+        public CustomUICommand[] getCommands() {
+            return commands;
+        }
+    }
+
+    /**
+     * Runs a task on the player's world thread after a delay.
+     */
+    @FunctionalInterface
+    public interface DelayedExecutor {
+        void schedule(@Nonnull Runnable task, long delayMillis);
+    }
+
+    /**
+     * Destination for outgoing HUD updates.
+     */
+    @FunctionalInterface
+    interface UpdateSink {
+        void update(boolean clear, @Nonnull UICommandBuilder builder);
     }
 }
@@ -2,90 +2,347 @@ package com.example.hudensemble.hudens;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.zip.CRC32;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Allocates stable UI-safe ids for HUD layer identifiers.
+ *
+ * <p>Ids have the form {@code <alphanumeric part of the identifier><8 hex digits of CRC32(UTF-8)>},
+ * with a numeric suffix only in the (practically nonexistent) case of a collision within one player.</p>
+ *
+ * <p>Storage is a single open-addressing table with linear probing. Each mapping occupies two slots:
+ * the identifier, whose value slot holds its id, and the id itself, whose value slot holds
+ * {@link #ID_PRESENT}. A collision check is therefore one probe of the same table. The CRC is computed
+ * directly over the identifier's chars and the id is assembled in a reused char buffer, so creating an
+ * id allocates nothing but the resulting string.</p>
+ *
+ * <p>Because the id is a pure function of the identifier, ids can be shared server-wide: with shared
+ * interning enabled (the default), every player's registry reuses the same identifier and id
+ * instances instead of keeping its own copies.</p>
  */
 final class NormalizedIdRegistry {
 
-    private final Map<String, String> normalizedIds = new HashMap<>();
-    private final Set<String> usedNormalizedIds = new HashSet<>();
+    /** Upper bound on shared entries, so a plugin generating unbounded ids can't grow the pool forever. */
+    static final int MAX_SHARED_IDS = 65_536;
+
+    private static final ConcurrentHashMap<String, SharedId> SHARED = new ConcurrentHashMap<>();
+    private static volatile boolean sharedInterning = true;
+
+    private static final int[] CRC_TABLE = createCrcTable();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Canonical identifier/id pair from the shared pool. */
+    private record SharedId(String identifier, String normalizedId) {}
+
+    /**
+     * Value of a slot whose key is a taken id rather than an identifier. Compared by identity, so an
+     * identifier that happens to equal some id is still told apart.
+     */
+    private static final String ID_PRESENT = new String("");
+
+    private String[] keys = new String[16];
+    private String[] values = new String[16];
+    /** Number of identifier -> id mappings; the table holds twice as many entries. */
+    private int size;
+
+    /** Scratch space for assembling candidate ids. */
+    private char[] scratch = new char[32];
+
+    /**
+     * Enables or disables the server-wide pool of identifier/id instances. Disabling it only affects
+     * ids created afterwards.
+     */
+    static void setSharedInterning(boolean enabled) {
+        sharedInterning = enabled;
+        if (!enabled) {
+            SHARED.clear();
+        }
+    }
+
+    static boolean isSharedInterning() {
+        return sharedInterning;
+    }
 
     @Nonnull
     String getOrCreate(@Nonnull String identifier) {
-        String existing = normalizedIds.get(identifier);
+        String existing = getIfPresent(identifier);
         if (existing != null) return existing;
 
-        String base = normalizeToAlphaNum(identifier);
-        if (base.isEmpty()) base = "hud";
+        // Fast path: the canonical id is already known server-wide and not taken in this registry.
+        if (sharedInterning) {
+            SharedId shared = SHARED.get(identifier);
+            if (shared != null && !containsId(shared.normalizedId())) {
+                put(shared.identifier(), shared.normalizedId());
+                return shared.normalizedId();
+            }
+        }
 
         // Always include a stable suffix derived from the full identifier.
         // This makes the mapping deterministic (independent of insertion order) and prevents collisions
         // when different identifiers normalize to the same base.
-        String suffix = crc32Hex8(identifier);
+        int len = appendBase(identifier);
+        len = appendHex8(crc32Utf8(identifier), len);
 
         // Keep the final id strictly alphanumeric to be as compatible as possible with UI selector rules.
-        String candidate = base + suffix;
+        int stem = len;
         int i = 1;
-        while (usedNormalizedIds.contains(candidate)) {
-            candidate = base + suffix + i;
+        while (containsId(scratch, len)) {
+            len = appendDecimal(i, stem);
             i++;
         }
 
-        normalizedIds.put(identifier, candidate);
-        usedNormalizedIds.add(candidate);
+        String candidate = new String(scratch, 0, len);
+        String key = identifier;
+        if (sharedInterning && len == stem) {
+            key = intern(identifier, candidate);
+        }
+
+        put(key, candidate);
         return candidate;
     }
 
     @Nullable
     String getIfPresent(@Nonnull String identifier) {
-        return normalizedIds.get(identifier);
+        int i = find(identifier, false);
+        return i < 0 ? null : values[i];
     }
 
     /**
      * Releases a normalized id when the layer is removed.
      */
     void release(@Nonnull String identifier) {
-        String normalized = normalizedIds.remove(identifier);
-        if (normalized != null) usedNormalizedIds.remove(normalized);
+        int i = find(identifier, false);
+        if (i < 0) return;
+
+        String normalizedId = values[i];
+        remove(i);
+        remove(find(normalizedId, true));
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Forgets all ids and shrinks the table back to its initial size.
+     */
+    void clear() {
+        keys = new String[16];
+        values = new String[16];
+        scratch = new char[32];
+        size = 0;
+    }
+
+    private void put(@Nonnull String identifier, @Nonnull String normalizedId) {
+        if ((size + 1) * 4 > keys.length) {
+            resize(keys.length * 2);
+        }
+        insert(keys, values, identifier, normalizedId);
+        insert(keys, values, normalizedId, ID_PRESENT);
+        size++;
+    }
+
+    private void resize(int capacity) {
+        String[] newKeys = new String[capacity];
+        String[] newValues = new String[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                insert(newKeys, newValues, keys[i], values[i]);
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static void insert(String[] keys, String[] values, String key, String value) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /** @return the slot of {@code key} as an id entry ({@code id}) or an identifier entry, or -1 */
+    private int find(@Nonnull String key, boolean id) {
+        String[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            String k = keys[i];
+            if (k == null) return -1;
+            if ((values[i] == ID_PRESENT) == id && k.equals(key)) return i;
+        }
+    }
+
+    /** Backward-shift deletion keeps probe chains intact without tombstones. */
+    private void remove(int i) {
+        String[] keys = this.keys;
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            String key = keys[j];
+            if (key == null) break;
+
+            int home = slot(key, mask);
+            boolean movable = (j > i) ? (home <= i || home > j) : (home <= i && home > j);
+            if (movable) {
+                keys[i] = key;
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        values[i] = null;
+    }
+
+    private static int slot(@Nonnull String key, int mask) {
+        return spread(key.hashCode()) & mask;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
     }
 
-    private static String normalizeToAlphaNum(@Nonnull String s) {
+    private boolean containsId(@Nonnull String id) {
+        return find(id, true) >= 0;
+    }
+
+    /** Like {@link #containsId(String)} for an id given as {@code chars[0, len)}, without building the string. */
+    private boolean containsId(@Nonnull char[] chars, int len) {
+        // Same formula as String.hashCode(), so the probe sequence matches the stored strings'.
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + chars[i];
+        }
+
+        String[] keys = this.keys;
+        int mask = keys.length - 1;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            String key = keys[i];
+            if (key == null) return false;
+            if (values[i] == ID_PRESENT && contentEquals(key, chars, len)) return true;
+        }
+    }
+
+    private static boolean contentEquals(@Nonnull String value, char[] chars, int len) {
+        if (value.length() != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (value.charAt(i) != chars[i]) return false;
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static String intern(@Nonnull String identifier, @Nonnull String normalizedId) {
+        SharedId shared = SHARED.get(identifier);
+        if (shared == null && SHARED.size() < MAX_SHARED_IDS) {
+            SharedId created = new SharedId(identifier, normalizedId);
+            shared = SHARED.putIfAbsent(identifier, created);
+            if (shared == null) shared = created;
+        }
+        return shared != null ? shared.identifier() : identifier;
+    }
+
+    /** Writes the alphanumeric chars of {@code s} (or {@code "hud"} if there are none) into the scratch buffer. */
+    private int appendBase(@Nonnull String s) {
         int n = s.length();
-        StringBuilder sb = new StringBuilder(n);
+        ensureScratch(n + 8 + 11);
+        char[] buf = scratch;
+        int len = 0;
         for (int i = 0; i < n; i++) {
             char c = s.charAt(i);
             if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
-                sb.append(c);
+                buf[len++] = c;
             }
         }
-        return sb.toString();
+        if (len == 0) {
+            buf[0] = 'h';
+            buf[1] = 'u';
+            buf[2] = 'd';
+            len = 3;
+        }
+        return len;
+    }
+
+    /** Left-padded 8-digit lowercase hex. */
+    private int appendHex8(int value, int offset) {
+        char[] buf = scratch;
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            buf[offset++] = HEX[(value >>> shift) & 0xF];
+        }
+        return offset;
+    }
+
+    private int appendDecimal(int value, int offset) {
+        char[] buf = scratch;
+        int digits = 1;
+        for (int v = value / 10; v > 0; v /= 10) digits++;
+
+        int end = offset + digits;
+        for (int p = end - 1; p >= offset; p--) {
+            buf[p] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    private void ensureScratch(int capacity) {
+        if (scratch.length < capacity) {
+            scratch = new char[Math.max(capacity, scratch.length * 2)];
+        }
     }
 
     /**
-     * Stable 8-hex-digit CRC32 suffix for deterministic ID allocation.
+     * CRC32 of the UTF-8 encoding of {@code s}, computed over its chars without materializing the bytes.
+     * Matches {@code CRC32} over {@code s.getBytes(UTF_8)}, including {@code '?'} for unpaired surrogates.
      */
-    private static String crc32Hex8(@Nonnull String s) {
-        CRC32 crc = new CRC32();
-        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
-        crc.update(bytes, 0, bytes.length);
-        long value = crc.getValue();
-        String hex = Long.toHexString(value);
-        // left-pad to 8 chars
-        if (hex.length() >= 8) {
-            return hex.substring(hex.length() - 8);
-        }
-        StringBuilder sb = new StringBuilder(8);
-        for (int i = hex.length(); i < 8; i++) {
-            sb.append('0');
-        }
-        sb.append(hex);
-        return sb.toString();
+    static int crc32Utf8(@Nonnull String s) {
+        int crc = 0xFFFFFFFF;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                crc = crcByte(crc, c);
+            } else if (c < 0x800) {
+                crc = crcByte(crc, 0xC0 | (c >> 6));
+                crc = crcByte(crc, 0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < n ? s.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int cp = Character.toCodePoint(c, low);
+                    crc = crcByte(crc, 0xF0 | (cp >> 18));
+                    crc = crcByte(crc, 0x80 | ((cp >> 12) & 0x3F));
+                    crc = crcByte(crc, 0x80 | ((cp >> 6) & 0x3F));
+                    crc = crcByte(crc, 0x80 | (cp & 0x3F));
+                    i++;
+                } else {
+                    crc = crcByte(crc, '?');
+                }
+            } else {
+                crc = crcByte(crc, 0xE0 | (c >> 12));
+                crc = crcByte(crc, 0x80 | ((c >> 6) & 0x3F));
+                crc = crcByte(crc, 0x80 | (c & 0x3F));
+            }
+        }
+        return ~crc;
+    }
+
+    private static int crcByte(int crc, int b) {
+        return CRC_TABLE[(crc ^ b) & 0xFF] ^ (crc >>> 8);
+    }
+
+    private static int[] createCrcTable() {
+        int[] table = new int[256];
+        for (int n = 0; n < 256; n++) {
+            int c = n;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? 0xEDB88320 ^ (c >>> 1) : c >>> 1;
+            }
+            table[n] = c;
+        }
+        return table;
     }
 }
@@ -1,71 +1,54 @@
 package com.example.hudensemble.hudens;
 
 import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
-import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
 import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * UICommandBuilder wrapper that prefixes selectors so a child HUD renders under a dedicated group.
+ *
+ * <p>Prefixed selectors come from the layer's {@link SelectorPrefixCache}, so repeated updates of the
+ * same selectors reuse the same strings.</p>
+ *
+ * <p>The returned commands are new instances; the child's own commands are left untouched. Like every
+ * command the ensemble emits, they are never modified afterwards, so snapshots, the template cache and
+ * broadcasts can hold on to them and send them again without copying.</p>
  */
 final class PrefixedUICommandBuilder extends UICommandBuilder {
 
-    private final String prefixSelector;
-    private final ArrayList<CustomUICommand> out = new ArrayList<>();
+    private static final CustomUICommand[] NO_COMMANDS = new CustomUICommand[0];
+
+    private final SelectorPrefixCache selectors;
     private final List<CustomUICommand> internalCommands;
 
-    PrefixedUICommandBuilder(@Nonnull String normalizedId) {
-        this.prefixSelector = HudEnsembleUi.ROOT_SELECTOR + " #" + normalizedId;
+    PrefixedUICommandBuilder(@Nonnull SelectorPrefixCache selectors) {
+        this.selectors = selectors;
         this.internalCommands = UiCommandListAccess.tryGet(this);
     }
 
     String getPrefixSelector() {
-        return prefixSelector;
-    }
-
-    void addSynthetic(@Nonnull CustomUICommandType type, @Nonnull String selector, String document) {
-        out.add(new CustomUICommand(type, selector, null, document));
+        return selectors.getPrefixSelector();
     }
 
     /**
-     * Called by CustomUIHud.update(...) internally. We must prefix before returning commands.
+     * Called by CustomUIHud.update(...) internally. Returns prefixed copies of the recorded commands.
      */
     @Override
     @Nonnull
     public CustomUICommand[] getCommands() {
-        collectAndPrefixIntoOut();
-        CustomUICommand[] result = out.toArray(new CustomUICommand[0]);
-        out.clear();
-        return result;
-    }
-
-    void appendTo(@Nonnull UICommandBuilder target) {
-        collectAndPrefixIntoOut();
-
-        List<CustomUICommand> targetList = UiCommandListAccess.tryGet(target);
-        if (targetList == null) return;
-
-        targetList.addAll(out);
-        out.clear();
-    }
-
-    private void collectAndPrefixIntoOut() {
         List<CustomUICommand> commands = this.internalCommands;
-        if (commands == null || commands.isEmpty()) return;
+        if (commands == null || commands.isEmpty()) return NO_COMMANDS;
 
-        for (int i = 0, n = commands.size(); i < n; i++) {
+        int n = commands.size();
+        CustomUICommand[] result = new CustomUICommand[n];
+        for (int i = 0; i < n; i++) {
             CustomUICommand cmd = commands.get(i);
-            if (cmd.selector == null) {
-                cmd.selector = prefixSelector;
-            } else {
-                cmd.selector = prefixSelector + ' ' + cmd.selector;
-            }
-            out.add(cmd);
+            result[i] = new CustomUICommand(cmd.type, selectors.prefix(cmd.selector), cmd.data, cmd.text);
         }
 
         commands.clear();
+        return result;
     }
 }
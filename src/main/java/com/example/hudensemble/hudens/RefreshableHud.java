@@ -0,0 +1,18 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * HUDs that can bring their values up to date without a rebuild.
+ *
+ * <p>When a layer with a refresh policy is due, {@link #refresh} is called on the player's world thread
+ * and its commands are applied exactly like an {@code updateLayer}: selectors are scoped to the layer, and
+ * {@code Set}s that repeat a current value are dropped. Layers whose HUD doesn't implement this are
+ * rebuilt instead, and only the values that changed are sent.</p>
+ */
+public interface RefreshableHud {
+
+    void refresh(@Nonnull UICommandBuilder builder);
+}
@@ -0,0 +1,78 @@
+package com.example.hudensemble.hudens;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-layer cache mapping raw child selectors to their prefixed form.
+ *
+ * <p>HUDs tend to update the same handful of selectors over and over, so after warm-up every
+ * lookup is a hit and prefixing no longer allocates. The cache is bounded; when full it is reset
+ * rather than tracking recency, which keeps hits free of bookkeeping.</p>
+ *
+ * <p>Not thread-safe: each instance belongs to one layer of one player and is used on that
+ * player's world thread. The counters are global and thread-safe.</p>
+ */
+final class SelectorPrefixCache {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder ALLOCATIONS = new LongAdder();
+
+    private final String prefixSelector;
+    private final int capacity;
+    private final HashMap<String, String> prefixed;
+
+    SelectorPrefixCache(@Nonnull String prefixSelector) {
+        this(prefixSelector, DEFAULT_CAPACITY);
+    }
+
+    SelectorPrefixCache(@Nonnull String prefixSelector, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0 (was " + capacity + ")");
+        }
+        this.prefixSelector = prefixSelector;
+        this.capacity = capacity;
+        this.prefixed = new HashMap<>();
+    }
+
+    @Nonnull
+    String getPrefixSelector() {
+        return prefixSelector;
+    }
+
+    /**
+     * @return {@code selector} scoped under this layer's group; {@code null} maps to the group itself
+     */
+    @Nonnull
+    String prefix(@Nullable String selector) {
+        if (selector == null) return prefixSelector;
+
+        String cached = prefixed.get(selector);
+        if (cached != null) {
+            HITS.increment();
+            return cached;
+        }
+
+        ALLOCATIONS.increment();
+        String result = prefixSelector + ' ' + selector;
+        if (prefixed.size() >= capacity) {
+            prefixed.clear();
+        }
+        prefixed.put(selector, result);
+        return result;
+    }
+
+    /** Total cache hits across all layers since startup. */
+    static long hits() {
+        return HITS.sum();
+    }
+
+    /** Total prefixed selector strings allocated (cache misses) across all layers since startup. */
+    static long allocations() {
+        return ALLOCATIONS.sum();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.hudensemble.hudens;
+
+import com.example.hudensemble.api.HudLayerUpdate;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Layer update prepared once by {@link MultipleCustomUIHud#prepareLayerUpdate} for many players.
+ *
+ * <p>Holds the updater's unprefixed commands. Prefixed commands are created once per normalized id and
+ * the same array is then handed to every player; since a normalized id is a pure function of the layer
+ * identifier, that is normally a single array for the whole broadcast. Safe to use from several world
+ * threads at once; the returned arrays must not be modified.</p>
+ */
+public final class SharedLayerUpdate implements HudLayerUpdate {
+
+    /** Prefixed commands for one normalized id. */
+    private record Prefixed(String normalizedId, CustomUICommand[] commands) {}
+
+    private final CustomUICommand[] raw;
+
+    /** Last prefixed form; racing threads may each create one, which is harmless. */
+    private volatile Prefixed prefixed;
+
+    SharedLayerUpdate(@Nonnull CustomUICommand[] raw) {
+        this.raw = raw;
+    }
+
+    @Override
+    public int commandCount() {
+        return raw.length;
+    }
+
+    /**
+     * @return the update's commands scoped to the layer group with the given normalized id
+     */
+    @Nonnull
+    CustomUICommand[] commandsFor(@Nonnull String normalizedId) {
+        Prefixed current = this.prefixed;
+        if (current != null && current.normalizedId().equals(normalizedId)) {
+            return current.commands();
+        }
+
+        SelectorPrefixCache selectors = new SelectorPrefixCache(MultipleCustomUIHud.layerSelector(normalizedId));
+        CustomUICommand[] commands = new CustomUICommand[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            CustomUICommand cmd = raw[i];
+            commands[i] = new CustomUICommand(cmd.type, selectors.prefix(cmd.selector), cmd.data, cmd.text);
+        }
+        this.prefixed = new Prefixed(normalizedId, commands);
+        return commands;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.hudensemble.hudens;
+
+import javax.annotation.Nullable;
+
+/**
+ * Opt-in marker for HUDs whose {@code build()} output depends only on a content key, not on the player.
+ *
+ * <p>HudEnsemble records the built, prefixed commands of such a layer once per
+ * (HUD class, template key, layer) and replays them for every other player, skipping
+ * {@code build()} entirely. Only implement this if two instances of the same class with equal
+ * template keys always build exactly the same commands.</p>
+ */
+public interface TemplatedHud {
+
+    /**
+     * @return a key identifying this HUD's content (compared with {@code equals}/{@code hashCode}),
+     *         or {@code null} to build this instance normally
+     */
+    @Nullable
+    Object getTemplateKey();
+}
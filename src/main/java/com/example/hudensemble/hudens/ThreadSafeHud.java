@@ -0,0 +1,12 @@
+package com.example.hudensemble.hudens;
+
+/**
+ * Marker for HUDs whose {@code build()} may run on any thread.
+ *
+ * <p>When the service has an async build executor, such layers are built (and their selectors prefixed)
+ * on that executor; only the resulting commands are applied on the world thread. Implement this only if
+ * {@code build()} reads nothing but the HUD's own, safely published state: no world, entity or store access.
+ * Until the first build completes a new layer shows empty; a replaced layer keeps its previous content.</p>
+ */
+public interface ThreadSafeHud {
+}
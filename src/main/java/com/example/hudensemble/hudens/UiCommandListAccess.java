@@ -5,48 +5,64 @@ import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Reflection bridge to access {@link UICommandBuilder}'s internal command list.
+ * Bridge to access {@link UICommandBuilder}'s internal command list.
  *
- * <p>HudEnsemble needs this to prefix selectors for child HUDs. This is inherently
- * version-sensitive; if the upstream API changes, HudEnsemble degrades gracefully
- * by skipping multi-HUD composition.</p>
+ * <p>HudEnsemble needs this to prefix selectors for child HUDs. The field is resolved once and
+ * exposed as a {@code static final} getter {@link MethodHandle} so the JIT can inline the access.
+ * This is inherently version-sensitive; if the upstream API changes, HudEnsemble degrades
+ * gracefully by skipping multi-HUD composition.</p>
  */
 final class UiCommandListAccess {
 
     private static final Logger LOG = Logger.getLogger(UiCommandListAccess.class.getName());
 
-    private static final Field COMMANDS_FIELD = resolveCommandsField();
+    /** {@code (UICommandBuilder)Object} getter for {@code UICommandBuilder.commands}. */
+    private static final MethodHandle COMMANDS_GETTER = resolveCommandsGetter();
 
-    private static Field resolveCommandsField() {
+    private static MethodHandle resolveCommandsGetter() {
         try {
             Field f = UICommandBuilder.class.getDeclaredField("commands");
             f.setAccessible(true);
-            return f;
+            return MethodHandles.lookup()
+                    .unreflectGetter(f)
+                    .asType(MethodType.methodType(Object.class, UICommandBuilder.class));
         } catch (NoSuchFieldException e) {
             LOG.log(Level.SEVERE, "Could not find field 'commands' in UICommandBuilder", e);
+            HudMetrics.recordReflectionFailure();
+            return null;
+        } catch (IllegalAccessException | RuntimeException e) {
+            LOG.log(Level.SEVERE, "Unable to access UICommandBuilder.commands", e);
+            HudMetrics.recordReflectionFailure();
             return null;
         }
     }
 
     static boolean isAvailable() {
-        return COMMANDS_FIELD != null;
+        return COMMANDS_GETTER != null;
     }
 
     @Nullable
     @SuppressWarnings("unchecked")
     static List<CustomUICommand> tryGet(@Nonnull UICommandBuilder builder) {
-        if (COMMANDS_FIELD == null) return null;
+        if (COMMANDS_GETTER == null) return null;
+
+        Object commands;
         try {
-            return (List<CustomUICommand>) COMMANDS_FIELD.get(builder);
-        } catch (IllegalAccessException e) {
-            LOG.log(Level.SEVERE, "Failed to access UICommandBuilder.commands", e);
+            commands = (Object) COMMANDS_GETTER.invokeExact(builder);
+        } catch (Throwable t) {
+            LOG.log(Level.SEVERE, "Failed to access UICommandBuilder.commands", t);
+            HudMetrics.recordReflectionFailure();
             return null;
         }
+        return (List<CustomUICommand>) commands;
     }
 }
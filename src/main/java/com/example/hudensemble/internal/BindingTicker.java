@@ -0,0 +1,126 @@
+package com.example.hudensemble.internal;
+
+import com.example.hudensemble.api.HudRefreshPolicy;
+import com.example.hudensemble.hudens.MultipleCustomUIHud;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.world.World;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Evaluates the layer bindings of every bound player once per tick.
+ *
+ * <p>One loop replaces a polling task per plugin: each tick, bound players are grouped by world and each
+ * world receives a single task that evaluates all of its players on the world thread. A world that hasn't
+ * run its previous task yet is skipped, so a lagging world never piles up evaluations. Players drop out
+ * once their wrapper has no bindings left.</p>
+ */
+final class BindingTicker {
+
+    private static final Logger LOG = Logger.getLogger(BindingTicker.class.getName());
+
+    private final ScheduledExecutorService timer;
+    private final ConcurrentWeakKeyMap<Player, Boolean> players = new ConcurrentWeakKeyMap<>();
+    /** Worlds whose evaluation task is queued but hasn't finished. */
+    private final Set<World> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    /** Whether a failure was logged already; later ones are dropped so a broken tick can't flood the log. */
+    private final AtomicBoolean failureLogged = new AtomicBoolean(false);
+
+    BindingTicker(@Nonnull ScheduledExecutorService timer) {
+        this.timer = timer;
+    }
+
+    /** Starts evaluating the player's bindings; the loop itself starts with the first bound player. */
+    void track(@Nonnull Player player) {
+        players.put(player, Boolean.TRUE);
+        if (started.compareAndSet(false, true)) {
+            try {
+                long period = HudRefreshPolicy.TICK_MILLIS;
+                timer.scheduleAtFixedRate(this::tick, period, period, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // HudEnsemble is shutting down.
+            }
+        }
+    }
+
+    void untrack(@Nonnull Player player) {
+        players.remove(player);
+    }
+
+    boolean isTracked(@Nonnull Player player) {
+        return players.get(player) != null;
+    }
+
+    void clear() {
+        players.drain((player, ignored) -> {});
+    }
+
+    private void tick() {
+        try {
+            HashMap<World, ArrayList<Player>> byWorld = new HashMap<>();
+            players.forEach((player, ignored) -> {
+                World world = player.getWorld();
+                // Players between worlds stay tracked and are picked up again once spawned.
+                if (world != null && world.isAlive()) {
+                    byWorld.computeIfAbsent(world, w -> new ArrayList<>()).add(player);
+                }
+            });
+
+            for (Map.Entry<World, ArrayList<Player>> entry : byWorld.entrySet()) {
+                World world = entry.getKey();
+                if (!inFlight.add(world)) continue;
+
+                List<Player> worldPlayers = entry.getValue();
+                try {
+                    world.execute(() -> {
+                        try {
+                            evaluate(worldPlayers);
+                        } finally {
+                            inFlight.remove(world);
+                        }
+                    });
+                } catch (Throwable t) {
+                    inFlight.remove(world);
+                }
+            }
+            // Tasks queued on a world that stopped never run.
+            inFlight.removeIf(world -> !world.isAlive());
+        } catch (Throwable t) {
+            // Best-effort; an exception here would cancel the loop for good.
+            logFailure("Binding tick failed", t);
+        }
+    }
+
+    private void evaluate(@Nonnull List<Player> worldPlayers) {
+        for (Player player : worldPlayers) {
+            try {
+                if (!(player.getHudManager().getCustomHud() instanceof MultipleCustomUIHud multiple)
+                        || !multiple.evaluateBindings()) {
+                    players.remove(player);
+                }
+            } catch (Throwable t) {
+                // One player's failing binding must not stall the rest of the world.
+                logFailure("Evaluating HUD bindings failed", t);
+            }
+        }
+    }
+
+    private void logFailure(@Nonnull String message, @Nonnull Throwable t) {
+        if (failureLogged.compareAndSet(false, true)) {
+            LOG.log(Level.WARNING, message + " (further failures are not logged)", t);
+        }
+    }
+}
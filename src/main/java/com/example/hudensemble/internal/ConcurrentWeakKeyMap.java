@@ -0,0 +1,135 @@
+package com.example.hudensemble.internal;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Concurrent map with weak, identity-compared keys.
+ *
+ * <p>Replaces {@code synchronized} {@link java.util.WeakHashMap}s for per-player tracking: reads are
+ * lock-free and writes only lock the affected {@link ConcurrentHashMap} bin, so world threads touching
+ * different players don't contend. Entries whose key was garbage-collected are purged on the next write.</p>
+ */
+final class ConcurrentWeakKeyMap<K, V> {
+
+    private final ConcurrentHashMap<WeakKey<K>, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> collected = new ReferenceQueue<>();
+
+    private static final class WeakKey<K> extends WeakReference<K> {
+        private final int hash;
+
+        WeakKey(@Nonnull K referent, @Nullable ReferenceQueue<? super K> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WeakKey<?> other)) return false;
+
+            // A cleared key only equals itself, so purging removes exactly the stale entry.
+            Object referent = get();
+            return referent != null && referent == other.get();
+        }
+    }
+
+    @Nullable
+    V get(@Nonnull K key) {
+        return map.get(new WeakKey<>(key, null));
+    }
+
+    /**
+     * Associates {@code value} with {@code key}. Skips the write entirely if the key already maps to
+     * the same value instance, which is the common case on hot paths.
+     */
+    void put(@Nonnull K key, @Nonnull V value) {
+        if (map.get(new WeakKey<>(key, null)) == value) return;
+
+        purgeCollected();
+        map.put(new WeakKey<>(key, collected), value);
+    }
+
+    /**
+     * Atomically recomputes the value for {@code key}; {@code remapping} receives the current value
+     * (or {@code null}) and returns the new one (or {@code null} to remove the entry).
+     */
+    @Nullable
+    V compute(@Nonnull K key, @Nonnull UnaryOperator<V> remapping) {
+        purgeCollected();
+        return map.compute(new WeakKey<>(key, collected), (k, v) -> remapping.apply(v));
+    }
+
+    /**
+     * Like {@link #compute}, but only runs if {@code key} is present.
+     */
+    @Nullable
+    V computeIfPresent(@Nonnull K key, @Nonnull UnaryOperator<V> remapping) {
+        return map.computeIfPresent(new WeakKey<>(key, null), (k, v) -> remapping.apply(v));
+    }
+
+    @Nullable
+    V remove(@Nonnull K key) {
+        return map.remove(new WeakKey<>(key, null));
+    }
+
+    /**
+     * Removes every live entry and hands it to {@code action}. Entries added concurrently may or may not
+     * be included, but each entry is handed out at most once.
+     */
+    void drain(@Nonnull BiConsumer<K, V> action) {
+        drainIf((key, value) -> true, action);
+    }
+
+    /**
+     * Like {@link #drain}, but only removes entries matching {@code filter}.
+     */
+    void drainIf(@Nonnull BiPredicate<K, V> filter, @Nonnull BiConsumer<K, V> action) {
+        for (Map.Entry<WeakKey<K>, V> entry : map.entrySet()) {
+            WeakKey<K> weakKey = entry.getKey();
+            K key = weakKey.get();
+            if (key == null || !filter.test(key, entry.getValue())) continue;
+
+            V value = map.remove(weakKey);
+            if (value != null) {
+                action.accept(key, value);
+            }
+        }
+    }
+
+    /**
+     * Hands every live entry to {@code action} without removing it. Weakly consistent, like iterating
+     * the backing {@link ConcurrentHashMap}.
+     */
+    void forEach(@Nonnull BiConsumer<K, V> action) {
+        for (Map.Entry<WeakKey<K>, V> entry : map.entrySet()) {
+            K key = entry.getKey().get();
+            if (key != null) {
+                action.accept(key, entry.getValue());
+            }
+        }
+    }
+
+    int size() {
+        purgeCollected();
+        return map.size();
+    }
+
+    private void purgeCollected() {
+        for (Object stale; (stale = collected.poll()) != null; ) {
+            map.remove(stale);
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package com.example.hudensemble.internal;
 
+import com.example.hudensemble.hudens.LayerBinding;
+import com.example.hudensemble.hudens.LayerRefresh;
+import com.example.hudensemble.hudens.LayerSetSnapshot;
 import com.example.hudensemble.hudens.MultipleCustomUIHud;
+import com.example.hudensemble.hudens.SharedLayerUpdate;
+import com.example.hudensemble.api.HudBinding;
 import com.example.hudensemble.api.HudEnsembleClient;
+import com.example.hudensemble.api.HudEnsembleMetrics;
+import com.example.hudensemble.api.HudLayerSnapshot;
+import com.example.hudensemble.api.HudLayerUpdate;
+import com.example.hudensemble.api.HudRefreshPolicy;
 import com.example.hudensemble.api.HudEnsembleService;
+import com.example.hudensemble.api.HudEnsembleTransaction;
+import com.example.hudensemble.api.HudUpdatePolicy;
 import com.example.hudensemble.api.HudEnsembleValidation;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
@@ -11,9 +22,14 @@ import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.world.World;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.lang.ref.Cleaner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Default implementation of {@link HudEnsembleService}.
@@ -25,8 +41,46 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
      *
      * <p>This is used only for HudEnsemble plugin shutdown cleanup, to ensure we detach the
      * wrapper (which lives in this plugin's classloader) from any still-connected players.
+     * Written on every layer operation from all world threads, so it must not serialize them.
      */
-    private final java.util.Map<Player, PlayerRef> touchedPlayers = new java.util.WeakHashMap<>();
+    private final ConcurrentWeakKeyMap<Player, PlayerRef> touchedPlayers = new ConcurrentWeakKeyMap<>();
+
+    /** Cleanup state of every open client, so a disconnect can purge the player from all of them. */
+    private final java.util.Set<NamespacedHudEnsembleClient.CleanupState> clientStates =
+            java.util.concurrent.ConcurrentHashMap.newKeySet();
+
+    /** Snapshots captured on disconnect for {@link #restoreLayers(Player, PlayerRef)}; off by default. */
+    private final RetainedSnapshots retainedSnapshots = new RetainedSnapshots();
+
+    private volatile boolean updateCoalescing;
+
+    /** Pool for {@link com.example.hudensemble.hudens.ThreadSafeHud} builds; {@code null} builds inline. */
+    @Nullable
+    private volatile java.util.concurrent.Executor asyncBuildExecutor;
+
+    /** Estimated byte cap for a full HUD show; {@code 0} disables chunking. */
+    private volatile int showPacketBudget;
+
+    /**
+     * Client namespace -> max update commands per second per player, across all of that client's layers.
+     * Replaced as a whole on every change, so wrappers can tell by identity whether theirs is current.
+     */
+    private volatile java.util.Map<String, Integer> updateBudgets = java.util.Map.of();
+
+    /**
+     * Releases rate-limited layer updates. Only waits here; the release itself runs on the player's world thread.
+     */
+    private final ScheduledExecutorService updateTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "HudEnsemble-UpdateTimer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Polls layer bindings once per tick; runs on {@link #updateTimer}. */
+    private final BindingTicker bindingTicker = new BindingTicker(updateTimer);
+
+    /** Drives periodic layer refreshes; runs on {@link #updateTimer}. */
+    private final RefreshWheel refreshWheel = new RefreshWheel(updateTimer);
 
     @Override
     public int getApiVersion() {
@@ -39,13 +93,33 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
             @Nonnull PlayerRef playerRef,
             @Nonnull String layerId,
             @Nonnull CustomUIHud hud
+    ) {
+        putLayer(player, playerRef, layerId, hud, null);
+    }
+
+    @Override
+    public void setLayer(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud hud,
+            int zIndex
+    ) {
+        putLayer(player, playerRef, layerId, hud, zIndex);
+    }
+
+    /** Adds or replaces a layer; a {@code null} z-index keeps the layer's current one (0 for new layers). */
+    private void putLayer(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud hud,
+            @Nullable Integer zIndex
     ) {
         HudEnsembleValidation.requireValidLayerId(layerId);
 
         // Remember that this player was touched by HudEnsemble so we can detach the wrapper on shutdown.
-        synchronized (touchedPlayers) {
-            touchedPlayers.put(player, playerRef);
-        }
+        touchedPlayers.put(player, playerRef);
 
         // If the reflection bridge is unavailable, we can't stack HUDs safely.
         if (!MultipleCustomUIHud.isCompositionSupported()) {
@@ -55,14 +129,16 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
 
         CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
         if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
-            multipleCustomUIHud.add(layerId, hud);
+            configure(player, multipleCustomUIHud);
+            addLayer(multipleCustomUIHud, layerId, hud, zIndex);
             return;
         }
 
         // Wrap the existing HUD (if any) and replace it with a multiplexed HUD.
         MultipleCustomUIHud mchud = new MultipleCustomUIHud(playerRef);
         player.getHudManager().setCustomHud(playerRef, mchud);
-        mchud.add(layerId, hud);
+        configure(player, mchud);
+        addLayer(mchud, layerId, hud, zIndex);
 
         if (currentCustomHud != null) {
             mchud.add(MultipleCustomUIHud.PRESERVED_BASE_HUD_LAYER_ID, currentCustomHud);
@@ -75,6 +151,7 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
 
         CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
         if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
             multipleCustomUIHud.remove(layerId);
         }
     }
@@ -90,15 +167,301 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
 
         CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
         if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
             multipleCustomUIHud.updateLayer(layerId, updater);
         }
     }
 
+    @Nonnull
+    @Override
+    public HudLayerUpdate prepareLayerUpdate(@Nonnull Consumer<UICommandBuilder> updater) {
+        if (updater == null) {
+            throw new IllegalArgumentException("updater must not be null");
+        }
+        return MultipleCustomUIHud.prepareLayerUpdate(updater);
+    }
+
+    @Override
+    public void updateLayer(@Nonnull Player player, @Nonnull String layerId, @Nonnull HudLayerUpdate update) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (!(update instanceof SharedLayerUpdate shared)) {
+            throw new IllegalArgumentException("update was not prepared by this service");
+        }
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
+            multipleCustomUIHud.updateLayer(layerId, shared);
+        }
+    }
+
+    @Override
+    public void batch(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull Consumer<HudEnsembleTransaction> operations
+    ) {
+        // Record first: if the callback throws, nothing has been applied yet.
+        RecordedTransaction tx = new RecordedTransaction();
+        operations.accept(tx);
+        if (tx.isEmpty()) return;
+
+        touchedPlayers.put(player, playerRef);
+
+        if (!MultipleCustomUIHud.isCompositionSupported()) {
+            // Single-HUD fallback: only the last set layer can be shown.
+            CustomUIHud last = tx.lastSetHudOrNull();
+            if (last != null) {
+                player.getHudManager().setCustomHud(playerRef, last);
+            }
+            return;
+        }
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        MultipleCustomUIHud mchud;
+        CustomUIHud preserved = null;
+        if (currentCustomHud instanceof MultipleCustomUIHud existing) {
+            mchud = existing;
+        } else {
+            mchud = new MultipleCustomUIHud(playerRef);
+            player.getHudManager().setCustomHud(playerRef, mchud);
+            preserved = currentCustomHud;
+        }
+
+        configure(player, mchud);
+        mchud.beginBatch();
+        try {
+            tx.applyTo(mchud);
+            if (preserved != null) {
+                mchud.add(MultipleCustomUIHud.PRESERVED_BASE_HUD_LAYER_ID, preserved);
+            }
+        } finally {
+            mchud.endBatch();
+        }
+    }
+
+    @Override
+    public void setUpdateCoalescing(boolean enabled) {
+        this.updateCoalescing = enabled;
+    }
+
+    @Override
+    public boolean isUpdateCoalescing() {
+        return updateCoalescing;
+    }
+
+    @Override
+    public void setAsyncBuildExecutor(@Nullable java.util.concurrent.Executor buildExecutor) {
+        this.asyncBuildExecutor = buildExecutor;
+    }
+
+    @Override
+    public void setShowPacketBudget(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0 (was " + maxBytes + ")");
+        }
+        this.showPacketBudget = maxBytes;
+    }
+
+    /**
+     * Sets the aggregate update budget of a client namespace; non-positive removes it. Applies to each
+     * player on their next layer operation.
+     */
+    private synchronized void setUpdateBudget(@Nonnull String namespace, int maxCommandsPerSecond) {
+        java.util.HashMap<String, Integer> budgets = new java.util.HashMap<>(updateBudgets);
+        if (maxCommandsPerSecond > 0) {
+            budgets.put(namespace, maxCommandsPerSecond);
+        } else {
+            budgets.remove(namespace);
+        }
+        updateBudgets = java.util.Map.copyOf(budgets);
+    }
+
+    @Override
+    public void flush(@Nonnull Player player) {
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            multipleCustomUIHud.flush();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public HudBinding bind(
+            @Nonnull Player player,
+            @Nonnull String layerId,
+            @Nonnull String selector,
+            @Nonnull Supplier<String> value
+    ) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (selector == null || selector.isEmpty()) {
+            throw new IllegalArgumentException("selector must not be empty");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (!(currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud)) return LayerBinding.UNBOUND;
+
+        configure(player, multipleCustomUIHud);
+        LayerBinding binding = multipleCustomUIHud.bind(layerId, selector, value);
+        if (binding.isBound()) {
+            bindingTicker.track(player);
+        }
+        return binding;
+    }
+
+    private static void addLayer(
+            @Nonnull MultipleCustomUIHud hud,
+            @Nonnull String layerId,
+            @Nonnull CustomUIHud layer,
+            @Nullable Integer zIndex
+    ) {
+        if (zIndex == null) {
+            hud.add(layerId, layer);
+        } else {
+            hud.add(layerId, layer, zIndex);
+        }
+    }
+
+    @Override
+    public void setLayerZIndex(@Nonnull Player player, @Nonnull String layerId, int zIndex) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
+            multipleCustomUIHud.setLayerZIndex(layerId, zIndex);
+        }
+    }
+
+    @Override
+    public void setLayerVisible(@Nonnull Player player, @Nonnull String layerId, boolean visible) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
+            multipleCustomUIHud.setLayerVisible(layerId, visible);
+        }
+    }
+
+    @Override
+    public void setLayerRefreshPolicy(
+            @Nonnull Player player,
+            @Nonnull String layerId,
+            @Nonnull HudRefreshPolicy policy
+    ) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
+            LayerRefresh refresh = multipleCustomUIHud.setLayerRefreshInterval(layerId, policy.intervalTicks());
+            if (refresh != null) {
+                refreshWheel.schedule(player, refresh);
+            }
+        }
+    }
+
+    @Override
+    public void refreshLayer(@Nonnull Player player, @Nonnull String layerId) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
+            multipleCustomUIHud.refreshLayer(layerId);
+        }
+    }
+
+    @Override
+    public void setLayerUpdatePolicy(
+            @Nonnull Player player,
+            @Nonnull String layerId,
+            @Nonnull HudUpdatePolicy policy
+    ) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud) {
+            configure(player, multipleCustomUIHud);
+            multipleCustomUIHud.setLayerUpdatePolicy(layerId, policy.priority(), policy.minIntervalMillis());
+        }
+    }
+
+    /**
+     * Prepares a wrapper before it is used: applies the coalescing setting and installs the update timer.
+     */
+    private void configure(@Nonnull Player player, @Nonnull MultipleCustomUIHud hud) {
+        applyCoalescing(player, hud);
+
+        java.util.concurrent.Executor builds = asyncBuildExecutor;
+        if (hud.getBuildExecutor() != builds) {
+            hud.setAsyncBuild(builds, builds == null ? null : task -> executeOnLiveWorld(player, task));
+        }
+        int budget = showPacketBudget;
+        if (hud.getShowPacketBudget() != budget) {
+            hud.setShowPacketBudget(budget);
+        }
+        java.util.Map<String, Integer> budgets = updateBudgets;
+        if (hud.getUpdateBudgets() != budgets) {
+            hud.setUpdateBudgets(budgets);
+        }
+        if (!hud.hasUpdateTimer()) {
+            hud.setUpdateTimer((task, delayMillis) -> updateTimer.schedule(
+                    () -> executeOnLiveWorld(player, task), delayMillis, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Brings the wrapper's coalescing mode in line with the service setting.
+     *
+     * <p>Deferred flushes are queued on the player's current world thread, so all layer changes made
+     * during one tick leave as a single update.
+     */
+    private void applyCoalescing(@Nonnull Player player, @Nonnull MultipleCustomUIHud hud) {
+        boolean enabled = updateCoalescing;
+        if (hud.isCoalescing() == enabled) return;
+
+        hud.setCoalescing(enabled ? task -> scheduleOnWorld(player, task) : null);
+    }
+
+    private static void scheduleOnWorld(@Nonnull Player player, @Nonnull Runnable task) {
+        World world = player.getWorld();
+        if (world == null || !world.isAlive()) {
+            task.run();
+            return;
+        }
+        world.execute(task);
+    }
+
+    private static void executeOnLiveWorld(@Nonnull Player player, @Nonnull Runnable task) {
+        try {
+            World world = player.getWorld();
+            if (world != null && world.isAlive()) {
+                world.execute(task);
+            }
+        } catch (Throwable ignored) {
+            // Player left or world is shutting down; nothing to deliver to.
+        }
+    }
+
     @Nonnull
     @Override
     public HudEnsembleClient createClient(@Nonnull String ownerNamespace) {
         String ns = HudEnsembleValidation.requireValidOwnerNamespace(ownerNamespace);
-        return new NamespacedHudEnsembleClient(this, ns);
+        MultipleCustomUIHud.registerMetricsOwner(ns);
+        NamespacedHudEnsembleClient client = new NamespacedHudEnsembleClient(this, ns);
+        clientStates.add(client.cleanupState);
+        return client;
     }
 
     @Override
@@ -106,6 +469,168 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
         return MultipleCustomUIHud.isCompositionSupported();
     }
 
+    @Nonnull
+    @Override
+    public HudEnsembleMetrics getMetrics() {
+        return MultipleCustomUIHud.getMetrics();
+    }
+
+    @Override
+    public void resetMetrics() {
+        MultipleCustomUIHud.resetMetrics();
+    }
+
+    @Override
+    public void setBuildTimeBudget(long budgetMillis) {
+        MultipleCustomUIHud.setBuildTimeBudget(budgetMillis);
+    }
+
+    @Override
+    public void clearBuildQuarantine() {
+        MultipleCustomUIHud.clearBuildQuarantine();
+    }
+
+    @Nullable
+    @Override
+    public HudLayerSnapshot captureLayers(@Nonnull Player player) {
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud multipleCustomUIHud
+                && multipleCustomUIHud.getLayerCount() > 0) {
+            return multipleCustomUIHud.captureSnapshot();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean restoreLayers(
+            @Nonnull Player player,
+            @Nonnull PlayerRef playerRef,
+            @Nonnull HudLayerSnapshot snapshot
+    ) {
+        if (!(snapshot instanceof LayerSetSnapshot layerSet)) {
+            throw new IllegalArgumentException("snapshot was not captured by HudEnsemble");
+        }
+        if (!MultipleCustomUIHud.isCompositionSupported() || layerSet.layerCount() == 0) return false;
+
+        touchedPlayers.put(player, playerRef);
+        relinkClients(player, layerSet.layerIds());
+
+        CustomUIHud currentCustomHud = player.getHudManager().getCustomHud();
+        if (currentCustomHud instanceof MultipleCustomUIHud existing) {
+            configure(player, existing);
+            existing.restore(layerSet);
+            existing.show();
+            resumeScheduled(player, existing);
+            return true;
+        }
+
+        MultipleCustomUIHud mchud = new MultipleCustomUIHud(playerRef);
+        configure(player, mchud);
+        mchud.restore(layerSet);
+        if (currentCustomHud != null) {
+            // Not sent on its own: it goes out with the restore show below.
+            mchud.add(MultipleCustomUIHud.PRESERVED_BASE_HUD_LAYER_ID, currentCustomHud);
+        }
+        player.getHudManager().setCustomHud(playerRef, mchud);
+        if (mchud.isRestorePending()) {
+            mchud.show();
+        }
+        resumeScheduled(player, mchud);
+        return true;
+    }
+
+    /** Bindings and refresh policies carried over by a restored snapshot run like new ones. */
+    private void resumeScheduled(@Nonnull Player player, @Nonnull MultipleCustomUIHud hud) {
+        if (hud.hasBindings()) {
+            bindingTicker.track(player);
+        }
+        for (LayerRefresh refresh : hud.getLayerRefreshes()) {
+            refreshWheel.schedule(player, refresh);
+        }
+    }
+
+    /**
+     * Clients forget a player on disconnect; re-registers restored layers with the client owning them
+     * (longest matching namespace) so that client's {@code close()} still removes them.
+     */
+    private void relinkClients(@Nonnull Player player, @Nonnull java.util.List<String> layerIds) {
+        for (String id : layerIds) {
+            String owner = null;
+            for (NamespacedHudEnsembleClient.CleanupState state : clientStates) {
+                if (state.owns(id) && (owner == null || state.namespace.length() > owner.length())) {
+                    owner = state.namespace;
+                }
+            }
+            if (owner == null) continue;
+
+            for (NamespacedHudEnsembleClient.CleanupState state : clientStates) {
+                if (state.namespace.equals(owner)) {
+                    state.recordLayer(player, id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean restoreLayers(@Nonnull Player player, @Nonnull PlayerRef playerRef) {
+        HudLayerSnapshot snapshot = retainedSnapshots.take(playerRef.getUuid());
+        return snapshot != null && restoreLayers(player, playerRef, snapshot);
+    }
+
+    @Override
+    public void setReconnectSnapshotRetention(long retentionMillis) {
+        retainedSnapshots.setRetentionMillis(retentionMillis);
+    }
+
+    /**
+     * Eagerly drops everything HudEnsemble keeps for a disconnected player: the wrapper's layers, ids
+     * and buffered updates, and every client's record of the player's layers. Nothing is sent to the player.
+     *
+     * <p>Without this, the state lingers until the player entity is garbage-collected.</p>
+     */
+    public void releasePlayer(@Nonnull PlayerRef playerRef) {
+        boolean retain = retainedSnapshots.isEnabled();
+        java.util.UUID playerId = retain ? playerRef.getUuid() : null;
+
+        java.util.List<Player> released = new java.util.ArrayList<>(1);
+        touchedPlayers.drainIf((player, ref) -> ref.equals(playerRef), (player, ref) -> released.add(player));
+
+        for (Player player : released) {
+            bindingTicker.untrack(player);
+            for (NamespacedHudEnsembleClient.CleanupState state : clientStates) {
+                state.removeAllForPlayer(player);
+            }
+
+            try {
+                if (player.getHudManager().getCustomHud() instanceof MultipleCustomUIHud multiple) {
+                    scheduleOnWorld(player, () -> {
+                        if (playerId != null && multiple.getLayerCount() > 0) {
+                            retainedSnapshots.retain(playerId, multiple.captureSnapshot());
+                        }
+                        multiple.release();
+                    });
+                }
+            } catch (Throwable ignored) {
+                // Best-effort only; the wrapper goes away with the player entity anyway.
+            }
+        }
+    }
+
+    /**
+     * Names where the service itself still references {@code player}: the shutdown tracker, the binding
+     * ticker or a client's layer records. Empty once the player was released; used by tests.
+     */
+    @Nonnull
+    java.util.List<String> heldStateOf(@Nonnull Player player) {
+        java.util.ArrayList<String> held = new java.util.ArrayList<>();
+        if (touchedPlayers.get(player) != null) held.add("touchedPlayers");
+        if (bindingTicker.isTracked(player)) held.add("bindingTicker");
+        for (NamespacedHudEnsembleClient.CleanupState state : clientStates) {
+            if (state.hasLayersOf(player)) held.add("client " + state.namespace);
+        }
+        return held;
+    }
+
     /**
      * Detaches {@link MultipleCustomUIHud} from any tracked players.
      *
@@ -113,11 +638,9 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
      * attached would keep this plugin's classes reachable from the server.
      */
     public void cleanupOnPluginShutdown() {
-        java.util.Map<Player, PlayerRef> snapshot;
-        synchronized (touchedPlayers) {
-            snapshot = new java.util.HashMap<>(touchedPlayers);
-            touchedPlayers.clear();
-        }
+        java.util.Map<Player, PlayerRef> snapshot = new java.util.HashMap<>();
+        touchedPlayers.drain(snapshot::put);
+        bindingTicker.clear();
 
         for (var entry : snapshot.entrySet()) {
             Player player = entry.getKey();
@@ -130,6 +653,9 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
                     continue;
                 }
 
+                multiple.setUpdateTimer(null);
+                multiple.setCoalescing(null);
+                multiple.setAsyncBuild(null, null);
                 CustomUIHud preserved = multiple.getLayerOrNull(MultipleCustomUIHud.PRESERVED_BASE_HUD_LAYER_ID);
                 // The HUD system supports clearing custom HUDs by passing null.
                 player.getHudManager().setCustomHud(playerRef, preserved);
@@ -137,6 +663,8 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
                 // Best-effort cleanup only.
             }
         }
+
+        updateTimer.shutdownNow();
     }
 
     /**
@@ -150,16 +678,18 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
     private static final class NamespacedHudEnsembleClient implements HudEnsembleClient {
         private static final Cleaner CLEANER = Cleaner.create();
 
-        private final HudEnsembleService service;
+        private final HudEnsembleServiceImpl service;
         private final String namespace;
 
         private final CleanupState cleanupState;
         private final Cleaner.Cleanable cleanable;
 
-        private NamespacedHudEnsembleClient(@Nonnull HudEnsembleService service, @Nonnull String ownerNamespace) {
+        private volatile HudUpdatePolicy updatePolicy = HudUpdatePolicy.UNLIMITED;
+
+        private NamespacedHudEnsembleClient(@Nonnull HudEnsembleServiceImpl service, @Nonnull String ownerNamespace) {
             this.service = service;
             this.namespace = HudEnsembleValidation.requireValidOwnerNamespace(ownerNamespace);
-            this.cleanupState = new CleanupState(service);
+            this.cleanupState = new CleanupState(service, namespace);
             this.cleanable = CLEANER.register(this, cleanupState);
         }
 
@@ -176,6 +706,116 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
             String key = namespaced(layerId);
             cleanupState.recordLayer(player, key);
             service.setLayer(player, playerRef, key, hud);
+            applyUpdatePolicy(player, key);
+        }
+
+        @Override
+        public void setLayer(
+                @Nonnull Player player,
+                @Nonnull PlayerRef playerRef,
+                @Nonnull String layerId,
+                @Nonnull CustomUIHud hud,
+                int zIndex
+        ) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+
+            String key = namespaced(layerId);
+            cleanupState.recordLayer(player, key);
+            service.setLayer(player, playerRef, key, hud, zIndex);
+            applyUpdatePolicy(player, key);
+        }
+
+        @Override
+        public void setLayer(
+                @Nonnull Player player,
+                @Nonnull PlayerRef playerRef,
+                @Nonnull String layerId,
+                @Nonnull CustomUIHud hud,
+                @Nonnull HudRefreshPolicy refresh
+        ) {
+            setLayer(player, playerRef, layerId, hud);
+            service.setLayerRefreshPolicy(player, namespaced(layerId), refresh);
+        }
+
+        @Override
+        public void setLayerRefreshPolicy(
+                @Nonnull Player player,
+                @Nonnull String layerId,
+                @Nonnull HudRefreshPolicy policy
+        ) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            service.setLayerRefreshPolicy(player, namespaced(layerId), policy);
+        }
+
+        @Override
+        public void refreshLayer(@Nonnull Player player, @Nonnull String layerId) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            service.refreshLayer(player, namespaced(layerId));
+        }
+
+        @Override
+        public void setLayerZIndex(@Nonnull Player player, @Nonnull String layerId, int zIndex) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            service.setLayerZIndex(player, namespaced(layerId), zIndex);
+        }
+
+        @Override
+        public void setLayerVisible(@Nonnull Player player, @Nonnull String layerId, boolean visible) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            service.setLayerVisible(player, namespaced(layerId), visible);
+        }
+
+        @Override
+        public void setUpdatePolicy(@Nonnull HudUpdatePolicy policy) {
+            ensureOpen();
+            if (policy == null) {
+                throw new IllegalArgumentException("policy must not be null");
+            }
+            this.updatePolicy = policy;
+        }
+
+        @Nonnull
+        @Override
+        public HudUpdatePolicy getUpdatePolicy() {
+            return updatePolicy;
+        }
+
+        @Override
+        public void setUpdateBudget(int maxCommandsPerSecond) {
+            ensureOpen();
+            if (maxCommandsPerSecond < 0) {
+                throw new IllegalArgumentException(
+                        "maxCommandsPerSecond must be >= 0 (was " + maxCommandsPerSecond + ")");
+            }
+            service.setUpdateBudget(namespace, maxCommandsPerSecond);
+        }
+
+        @Override
+        public int getUpdateBudget() {
+            return service.updateBudgets.getOrDefault(namespace, 0);
+        }
+
+        @Override
+        public void setLayerUpdatePolicy(
+                @Nonnull Player player,
+                @Nonnull String layerId,
+                @Nonnull HudUpdatePolicy policy
+        ) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            service.setLayerUpdatePolicy(player, namespaced(layerId), policy);
+        }
+
+        private void applyUpdatePolicy(@Nonnull Player player, @Nonnull String key) {
+            HudUpdatePolicy policy = updatePolicy;
+            if (!policy.equals(HudUpdatePolicy.UNLIMITED)) {
+                service.setLayerUpdatePolicy(player, key, policy);
+            }
         }
 
         @Override
@@ -201,6 +841,40 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
             service.updateLayer(player, key, updater);
         }
 
+        @Override
+        public int updateLayerForAllOnline(@Nonnull String layerId, @Nonnull Consumer<UICommandBuilder> updater) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            return service.updateLayerForAllOnline(namespaced(layerId), updater);
+        }
+
+        @Nonnull
+        @Override
+        public HudBinding bind(
+                @Nonnull Player player,
+                @Nonnull String layerId,
+                @Nonnull String selector,
+                @Nonnull Supplier<String> value
+        ) {
+            ensureOpen();
+            HudEnsembleValidation.requireValidLayerId(layerId);
+            return service.bind(player, namespaced(layerId), selector, value);
+        }
+
+        @Override
+        public void batch(
+                @Nonnull Player player,
+                @Nonnull PlayerRef playerRef,
+                @Nonnull Consumer<HudEnsembleTransaction> operations
+        ) {
+            ensureOpen();
+            java.util.List<String> setKeys = new java.util.ArrayList<>();
+            service.batch(player, playerRef, tx -> operations.accept(new NamespacedTransaction(player, tx, setKeys)));
+            for (String key : setKeys) {
+                applyUpdatePolicy(player, key);
+            }
+        }
+
         @Override
         public void clear(@Nonnull Player player) {
             ensureOpen();
@@ -208,6 +882,12 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
             cleanupState.scheduleRemoval(player, toRemove);
         }
 
+        @Override
+        public void flush(@Nonnull Player player) {
+            ensureOpen();
+            service.flush(player);
+        }
+
         @Override
         public void close() {
             // Idempotent; schedules cleanup on the appropriate world threads.
@@ -218,6 +898,57 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
             return namespace + ":" + layerId;
         }
 
+        /**
+         * Namespaces layer ids and tracks created layers, mirroring the single-layer client methods.
+         */
+        private final class NamespacedTransaction implements HudEnsembleTransaction {
+            private final Player player;
+            private final HudEnsembleTransaction delegate;
+            private final java.util.List<String> setKeys;
+
+            private NamespacedTransaction(
+                    @Nonnull Player player,
+                    @Nonnull HudEnsembleTransaction delegate,
+                    @Nonnull java.util.List<String> setKeys
+            ) {
+                this.player = player;
+                this.delegate = delegate;
+                this.setKeys = setKeys;
+            }
+
+            @Nonnull
+            @Override
+            public HudEnsembleTransaction setLayer(@Nonnull String layerId, @Nonnull CustomUIHud hud) {
+                HudEnsembleValidation.requireValidLayerId(layerId);
+                String key = namespaced(layerId);
+                delegate.setLayer(key, hud);
+                cleanupState.recordLayer(player, key);
+                setKeys.add(key);
+                return this;
+            }
+
+            @Nonnull
+            @Override
+            public HudEnsembleTransaction removeLayer(@Nonnull String layerId) {
+                HudEnsembleValidation.requireValidLayerId(layerId);
+                String key = namespaced(layerId);
+                delegate.removeLayer(key);
+                cleanupState.unrecordLayer(player, key);
+                return this;
+            }
+
+            @Nonnull
+            @Override
+            public HudEnsembleTransaction updateLayer(
+                    @Nonnull String layerId,
+                    @Nonnull Consumer<UICommandBuilder> updater
+            ) {
+                HudEnsembleValidation.requireValidLayerId(layerId);
+                delegate.updateLayer(namespaced(layerId), updater);
+                return this;
+            }
+        }
+
         private void ensureOpen() {
             if (cleanupState.isCleaned()) {
                 throw new IllegalStateException("HudEnsembleClient is closed");
@@ -232,16 +963,21 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
          */
         private static final class CleanupState implements Runnable {
 
-            private final HudEnsembleService service;
+            private final HudEnsembleServiceImpl service;
+            private final String namespace;
             private final AtomicBoolean cleaned = new AtomicBoolean(false);
 
             /**
              * Weak keys avoid retaining disconnected players if a client is kept around longer than intended.
+             * Sets are concurrent so the common "already recorded" check needs no lock; they are only
+             * mutated inside {@code compute}, which serializes writers per player.
              */
-            private final java.util.Map<Player, java.util.Set<String>> layersByPlayer = new java.util.WeakHashMap<>();
+            private final ConcurrentWeakKeyMap<Player, java.util.Set<String>> layersByPlayer =
+                    new ConcurrentWeakKeyMap<>();
 
-            private CleanupState(@Nonnull HudEnsembleService service) {
+            private CleanupState(@Nonnull HudEnsembleServiceImpl service, @Nonnull String namespace) {
                 this.service = service;
+                this.namespace = namespace;
             }
 
             private boolean isCleaned() {
@@ -249,29 +985,37 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
             }
 
             private void recordLayer(@Nonnull Player player, @Nonnull String namespacedLayerId) {
-                synchronized (layersByPlayer) {
-                    layersByPlayer
-                            .computeIfAbsent(player, p -> new java.util.HashSet<>())
-                            .add(namespacedLayerId);
-                }
+                var recorded = layersByPlayer.get(player);
+                if (recorded != null && recorded.contains(namespacedLayerId)) return;
+
+                layersByPlayer.compute(player, set -> {
+                    if (set == null) set = java.util.concurrent.ConcurrentHashMap.newKeySet();
+                    set.add(namespacedLayerId);
+                    return set;
+                });
+            }
+
+            /** @return {@code true} if {@code layerKey} is a layer id in this client's namespace. */
+            private boolean owns(@Nonnull String layerKey) {
+                return !isCleaned()
+                        && layerKey.length() > namespace.length()
+                        && layerKey.charAt(namespace.length()) == ':'
+                        && layerKey.startsWith(namespace);
             }
 
             private void unrecordLayer(@Nonnull Player player, @Nonnull String namespacedLayerId) {
-                synchronized (layersByPlayer) {
-                    var set = layersByPlayer.get(player);
-                    if (set != null) {
-                        set.remove(namespacedLayerId);
-                        if (set.isEmpty()) {
-                            layersByPlayer.remove(player);
-                        }
-                    }
-                }
+                layersByPlayer.computeIfPresent(player, set -> {
+                    set.remove(namespacedLayerId);
+                    return set.isEmpty() ? null : set;
+                });
+            }
+
+            private boolean hasLayersOf(@Nonnull Player player) {
+                return layersByPlayer.get(player) != null;
             }
 
             private java.util.Set<String> removeAllForPlayer(@Nonnull Player player) {
-                synchronized (layersByPlayer) {
-                    return layersByPlayer.remove(player);
-                }
+                return layersByPlayer.remove(player);
             }
 
             @Override
@@ -279,16 +1023,10 @@ public final class HudEnsembleServiceImpl implements HudEnsembleService {
                 if (!cleaned.compareAndSet(false, true)) {
                     return;
                 }
+                service.clientStates.remove(this);
+                service.setUpdateBudget(namespace, 0);
 
-                java.util.Map<Player, java.util.Set<String>> snapshot;
-                synchronized (layersByPlayer) {
-                    snapshot = new java.util.HashMap<>(layersByPlayer);
-                    layersByPlayer.clear();
-                }
-
-                for (var entry : snapshot.entrySet()) {
-                    scheduleRemoval(entry.getKey(), entry.getValue());
-                }
+                layersByPlayer.drain(this::scheduleRemoval);
             }
 
             private void scheduleRemoval(Player player, java.util.Set<String> layerIds) {
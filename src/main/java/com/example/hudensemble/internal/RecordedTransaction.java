@@ -0,0 +1,83 @@
+package com.example.hudensemble.internal;
+
+import com.example.hudensemble.api.HudEnsembleTransaction;
+import com.example.hudensemble.api.HudEnsembleValidation;
+import com.example.hudensemble.hudens.MultipleCustomUIHud;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link HudEnsembleTransaction} that validates and records operations so they can be applied
+ * in one go after the caller's batch callback has returned.
+ */
+final class RecordedTransaction implements HudEnsembleTransaction {
+
+    private enum Kind { SET, REMOVE, UPDATE }
+
+    private record Op(Kind kind, String layerId, CustomUIHud hud, Consumer<UICommandBuilder> updater) {}
+
+    private final List<Op> ops = new ArrayList<>();
+
+    @Nonnull
+    @Override
+    public HudEnsembleTransaction setLayer(@Nonnull String layerId, @Nonnull CustomUIHud hud) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (hud == null) {
+            throw new IllegalArgumentException("hud must not be null");
+        }
+        ops.add(new Op(Kind.SET, layerId, hud, null));
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public HudEnsembleTransaction removeLayer(@Nonnull String layerId) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        ops.add(new Op(Kind.REMOVE, layerId, null, null));
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public HudEnsembleTransaction updateLayer(@Nonnull String layerId, @Nonnull Consumer<UICommandBuilder> updater) {
+        HudEnsembleValidation.requireValidLayerId(layerId);
+        if (updater == null) {
+            throw new IllegalArgumentException("updater must not be null");
+        }
+        ops.add(new Op(Kind.UPDATE, layerId, null, updater));
+        return this;
+    }
+
+    boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    /**
+     * Applies all recorded operations to {@code hud}. The caller is responsible for batching.
+     */
+    void applyTo(@Nonnull MultipleCustomUIHud hud) {
+        for (Op op : ops) {
+            switch (op.kind) {
+                case SET -> hud.add(op.layerId, op.hud);
+                case REMOVE -> hud.remove(op.layerId);
+                case UPDATE -> hud.updateLayer(op.layerId, op.updater);
+            }
+        }
+    }
+
+    /**
+     * @return the HUD of the last recorded {@code setLayer}, or {@code null}; used in single-HUD fallback mode
+     */
+    CustomUIHud lastSetHudOrNull() {
+        for (int i = ops.size() - 1; i >= 0; i--) {
+            Op op = ops.get(i);
+            if (op.kind == Kind.SET) return op.hud;
+        }
+        return null;
+    }
+}
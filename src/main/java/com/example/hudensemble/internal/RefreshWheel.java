@@ -0,0 +1,192 @@
+package com.example.hudensemble.internal;
+
+import com.example.hudensemble.api.HudRefreshPolicy;
+import com.example.hudensemble.hudens.LayerRefresh;
+import com.example.hudensemble.hudens.MultipleCustomUIHud;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.world.World;
+
+import javax.annotation.Nonnull;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel driving every periodic layer refresh.
+ *
+ * <p>Schedules hash into {@link #WHEEL_SIZE} slots by due tick; longer intervals wait out extra rounds in
+ * their slot. Each tick only the current slot is visited, so the cost per tick depends on what is due,
+ * not on how many refreshes exist. A new schedule starts at a random phase within its interval, which
+ * spreads players refreshing at the same rate evenly over the ticks of that interval.</p>
+ *
+ * <p>Due refreshes are grouped by world and then by player: each world gets one task per tick, and each
+ * player one update. Refreshes due in a world that hasn't run its previous task yet are retried on the next
+ * tick. Schedules are added from any thread; the wheel itself is only touched on the timer thread.</p>
+ */
+final class RefreshWheel {
+
+    private static final Logger LOG = Logger.getLogger(RefreshWheel.class.getName());
+
+    /** Number of slots; a power of two. Intervals longer than this many ticks take extra rounds. */
+    static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static final class Entry {
+        final WeakReference<Player> player;
+        final LayerRefresh refresh;
+        /** Full wheel turns left before the entry is due. */
+        long rounds;
+
+        Entry(@Nonnull Player player, @Nonnull LayerRefresh refresh) {
+            this.player = new WeakReference<>(player);
+            this.refresh = refresh;
+        }
+    }
+
+    private final ScheduledExecutorService timer;
+    private final ConcurrentLinkedQueue<Entry> added = new ConcurrentLinkedQueue<>();
+    /** Worlds whose refresh task is queued but hasn't finished. */
+    private final Set<World> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    /** Whether a failure was logged already; later ones are dropped so a broken tick can't flood the log. */
+    private final AtomicBoolean failureLogged = new AtomicBoolean(false);
+
+    private final ArrayList<ArrayList<Entry>> slots = new ArrayList<>(WHEEL_SIZE);
+    /** Stands in for the slot being visited, so entries can be re-added to it meanwhile. */
+    private ArrayList<Entry> spare = new ArrayList<>();
+    private long tick;
+
+    RefreshWheel(@Nonnull ScheduledExecutorService timer) {
+        this.timer = timer;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /** Starts driving {@code refresh} until it is cancelled or the player is gone. */
+    void schedule(@Nonnull Player player, @Nonnull LayerRefresh refresh) {
+        added.add(new Entry(player, refresh));
+        if (started.compareAndSet(false, true)) {
+            try {
+                long period = HudRefreshPolicy.TICK_MILLIS;
+                timer.scheduleAtFixedRate(this::tick, period, period, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // HudEnsemble is shutting down.
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            for (Entry entry; (entry = added.poll()) != null; ) {
+                place(entry, 1 + ThreadLocalRandom.current().nextInt(entry.refresh.intervalTicks()));
+            }
+
+            tick++;
+            int index = (int) (tick & MASK);
+            ArrayList<Entry> bucket = slots.set(index, spare);
+            spare = bucket;
+
+            HashMap<World, ArrayList<Entry>> due = new HashMap<>();
+            for (Entry entry : bucket) {
+                Player player = entry.player.get();
+                if (player == null || entry.refresh.isCancelled()) continue;
+
+                if (entry.rounds > 0) {
+                    entry.rounds--;
+                    slots.get(index).add(entry);
+                    continue;
+                }
+
+                World world = player.getWorld();
+                if (world != null && world.isAlive()) {
+                    due.computeIfAbsent(world, w -> new ArrayList<>()).add(entry);
+                } else {
+                    // Players between worlds just miss this round.
+                    place(entry, entry.refresh.intervalTicks());
+                }
+            }
+            bucket.clear();
+
+            for (Map.Entry<World, ArrayList<Entry>> entry : due.entrySet()) {
+                dispatch(entry.getKey(), entry.getValue());
+            }
+            inFlight.removeIf(world -> !world.isAlive());
+        } catch (Throwable t) {
+            // Best-effort; an exception here would cancel the wheel for good.
+            logFailure("Refresh tick failed", t);
+        }
+    }
+
+    private void place(@Nonnull Entry entry, int delayTicks) {
+        entry.rounds = (delayTicks - 1) / WHEEL_SIZE;
+        slots.get((int) ((tick + delayTicks) & MASK)).add(entry);
+    }
+
+    private void dispatch(@Nonnull World world, @Nonnull List<Entry> entries) {
+        if (!inFlight.add(world)) {
+            // The world is behind; retry next tick rather than an interval later.
+            for (Entry entry : entries) {
+                place(entry, 1);
+            }
+            return;
+        }
+
+        LinkedHashMap<Player, List<LayerRefresh>> byPlayer = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            place(entry, entry.refresh.intervalTicks());
+            Player player = entry.player.get();
+            if (player != null) {
+                byPlayer.computeIfAbsent(player, p -> new ArrayList<>(1)).add(entry.refresh);
+            }
+        }
+
+        try {
+            world.execute(() -> {
+                try {
+                    for (Map.Entry<Player, List<LayerRefresh>> entry : byPlayer.entrySet()) {
+                        refresh(entry.getKey(), entry.getValue());
+                    }
+                } finally {
+                    inFlight.remove(world);
+                }
+            });
+        } catch (Throwable t) {
+            inFlight.remove(world);
+        }
+    }
+
+    private void refresh(@Nonnull Player player, @Nonnull List<LayerRefresh> refreshes) {
+        try {
+            if (player.getHudManager().getCustomHud() instanceof MultipleCustomUIHud multiple) {
+                multiple.refreshLayers(refreshes);
+            } else {
+                for (LayerRefresh refresh : refreshes) {
+                    refresh.cancel();
+                }
+            }
+        } catch (Throwable t) {
+            // One player's failing refresh must not stall the rest of the world.
+            logFailure("Refreshing HUD layers failed", t);
+        }
+    }
+
+    private void logFailure(@Nonnull String message, @Nonnull Throwable t) {
+        if (failureLogged.compareAndSet(false, true)) {
+            LOG.log(Level.WARNING, message + " (further failures are not logged)", t);
+        }
+    }
+}
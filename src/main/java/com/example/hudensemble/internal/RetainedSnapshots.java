@@ -0,0 +1,56 @@
+package com.example.hudensemble.internal;
+
+import com.example.hudensemble.api.HudLayerSnapshot;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Layer snapshots of disconnected players, kept for a limited time so a reconnect can restore them.
+ *
+ * <p>Snapshots hold the players' HUD instances, so retention is off by default and bounded in both
+ * time and count. Expired entries are purged on every write.</p>
+ */
+final class RetainedSnapshots {
+
+    static final int MAX_RETAINED = 4096;
+
+    private record Entry(HudLayerSnapshot snapshot, long expiresAtNanos) {}
+
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long retentionNanos;
+
+    /** A non-positive retention disables retaining and drops everything retained so far. */
+    void setRetentionMillis(long retentionMillis) {
+        retentionNanos = retentionMillis <= 0 ? 0 : TimeUnit.MILLISECONDS.toNanos(retentionMillis);
+        if (retentionNanos == 0) {
+            entries.clear();
+        }
+    }
+
+    boolean isEnabled() {
+        return retentionNanos > 0;
+    }
+
+    void retain(@Nonnull UUID playerId, @Nonnull HudLayerSnapshot snapshot) {
+        long retention = retentionNanos;
+        if (retention == 0) return;
+
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.expiresAtNanos() >= 0);
+        if (entries.size() >= MAX_RETAINED) return;
+
+        entries.put(playerId, new Entry(snapshot, now + retention));
+    }
+
+    /** Removes and returns the player's snapshot, or {@code null} if there is none or it expired. */
+    @Nullable
+    HudLayerSnapshot take(@Nonnull UUID playerId) {
+        Entry entry = entries.remove(playerId);
+        if (entry == null || System.nanoTime() - entry.expiresAtNanos() >= 0) return null;
+        return entry.snapshot();
+    }
+}
@@ -1,19 +1,31 @@
 package com.example.hudensemble.listeners;
 
+import com.example.hudensemble.internal.HudEnsembleServiceImpl;
 import com.hypixel.hytale.event.EventRegistry;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
 import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 
+import javax.annotation.Nonnull;
 import java.util.logging.Level;
 
 /**
  * Listener for player connection events.
+ *
+ * <p>On disconnect, releases the player's HUD state right away instead of waiting for the player
+ * entity to be garbage-collected. World changes need nothing: layers live on the player's HUD manager
+ * and travel with it.
  */
 public class PlayerListener {
 
     private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
+    private final HudEnsembleServiceImpl service;
+
+    public PlayerListener(@Nonnull HudEnsembleServiceImpl service) {
+        this.service = service;
+    }
+
     public void register(EventRegistry eventBus) {
         try {
             eventBus.register(PlayerConnectEvent.class, this::onPlayerConnect);
@@ -41,5 +53,12 @@ public class PlayerListener {
         String playerName = event.getPlayerRef() != null ? event.getPlayerRef().getUsername() : "Unknown";
 
         LOGGER.at(Level.INFO).log("[HudEnsemble] Player %s disconnected", playerName);
+
+        if (event.getPlayerRef() == null) return;
+        try {
+            service.releasePlayer(event.getPlayerRef());
+        } catch (Exception e) {
+            LOGGER.at(Level.WARNING).withCause(e).log("[HudEnsemble] Failed to release HUD state of %s", playerName);
+        }
     }
 }
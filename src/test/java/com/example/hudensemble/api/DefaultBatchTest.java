@@ -0,0 +1,72 @@
+package com.example.hudensemble.api;
+
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/** The default {@code batch} methods replay the recorded operations through the interface's own methods. */
+class DefaultBatchTest {
+
+    private final Player player = mock(Player.class);
+    private final PlayerRef playerRef = mock(PlayerRef.class);
+    private final CustomUIHud hud = mock(CustomUIHud.class);
+    private final Consumer<UICommandBuilder> updater = ui -> ui.set("#Label.Text", "x");
+
+    @Test
+    void clientAppliesOperationsInOrder() {
+        HudEnsembleClient client = mock(HudEnsembleClient.class, CALLS_REAL_METHODS);
+
+        client.batch(player, playerRef, tx -> tx
+                .removeLayer("lobby")
+                .setLayer("scoreboard", hud)
+                .updateLayer("scoreboard", updater));
+
+        InOrder order = inOrder(client);
+        order.verify(client).removeLayer(player, "lobby");
+        order.verify(client).setLayer(player, playerRef, "scoreboard", hud);
+        order.verify(client).updateLayer(player, "scoreboard", updater);
+    }
+
+    @Test
+    void serviceAppliesOperationsInOrder() {
+        HudEnsembleService service = mock(HudEnsembleService.class, CALLS_REAL_METHODS);
+
+        service.batch(player, playerRef, tx -> tx
+                .setLayer("scoreboard", hud)
+                .removeLayer("lobby"));
+
+        InOrder order = inOrder(service);
+        order.verify(service).setLayer(player, playerRef, "scoreboard", hud);
+        order.verify(service).removeLayer(player, "lobby");
+    }
+
+    @Test
+    void nothingIsAppliedWhenRecordingThrows() {
+        HudEnsembleClient client = mock(HudEnsembleClient.class, CALLS_REAL_METHODS);
+
+        assertThrows(IllegalStateException.class, () -> client.batch(player, playerRef, tx -> {
+            tx.setLayer("scoreboard", hud);
+            throw new IllegalStateException("boom");
+        }));
+        assertThrows(IllegalArgumentException.class, () -> client.batch(player, playerRef, tx -> tx
+                .removeLayer("lobby")
+                .setLayer("", hud)));
+
+        verify(client, never()).setLayer(any(), any(), anyString(), any());
+        verify(client, never()).removeLayer(any(), anyString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.hudensemble.api;
+
+import com.hypixel.hytale.component.Ref;
+import com.hypixel.hytale.component.Store;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
+import com.hypixel.hytale.server.core.universe.world.storage.EntityStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+class WorldFanoutTest {
+
+    private final World world = mock(World.class);
+    private final List<PlayerRef> players = new ArrayList<>();
+    private final List<PlayerRef> applied = new ArrayList<>();
+    private MockedStatic<Universe> universe;
+
+    @BeforeEach
+    void setUp() {
+        when(world.isAlive()).thenReturn(true);
+        when(world.isInThread()).thenReturn(true);
+
+        Universe instance = mock(Universe.class);
+        when(instance.getPlayers()).thenReturn(players);
+        universe = mockStatic(Universe.class);
+        universe.when(Universe::get).thenReturn(instance);
+    }
+
+    @AfterEach
+    void tearDown() {
+        universe.close();
+    }
+
+    @Test
+    void appliesPreparedValuesOnTheWorld() {
+        addPlayers(3);
+
+        int scheduled = WorldFanout.forEachPlayerPrepared(ref -> "hud", Runnable::run, this::record);
+
+        assertEquals(3, scheduled);
+        assertEquals(players, applied);
+    }
+
+    @Test
+    void failedAndNullPreparationsAreSkipped() {
+        addPlayers(3);
+
+        WorldFanout.forEachPlayerPrepared(ref -> {
+            if (ref == players.get(0)) throw new IllegalStateException("boom");
+            return ref == players.get(1) ? null : "hud";
+        }, Runnable::run, this::record);
+
+        assertEquals(List.of(players.get(2)), applied);
+    }
+
+    @Test
+    void rejectionCancelsThePreparationsAlreadySubmitted() {
+        addPlayers(3);
+        List<Runnable> submitted = new ArrayList<>();
+        Executor rejectsThird = task -> {
+            if (submitted.size() == 2) throw new RejectedExecutionException();
+            submitted.add(task);
+        };
+        AtomicInteger prepared = new AtomicInteger();
+
+        int scheduled = WorldFanout.forEachPlayerPrepared(ref -> {
+            prepared.incrementAndGet();
+            return "hud";
+        }, rejectsThird, this::record);
+        submitted.forEach(Runnable::run);
+
+        assertEquals(0, scheduled);
+        assertEquals(0, prepared.get());
+        assertEquals(List.of(), applied);
+    }
+
+    private void record(@Nonnull Player player, @Nonnull PlayerRef playerRef, @Nonnull String value) {
+        applied.add(playerRef);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addPlayers(int count) {
+        for (int i = 0; i < count; i++) {
+            Ref<EntityStore> ref = mock(Ref.class);
+            Store<EntityStore> store = mock(Store.class);
+            EntityStore entityStore = mock(EntityStore.class);
+            when(ref.isValid()).thenReturn(true);
+            when(ref.getStore()).thenReturn(store);
+            when(store.getExternalData()).thenReturn(entityStore);
+            when(entityStore.getWorld()).thenReturn(world);
+            when(store.getComponent(any(), any())).thenReturn(mock(Player.class));
+
+            PlayerRef playerRef = mock(PlayerRef.class);
+            when(playerRef.getReference()).thenReturn(ref);
+            players.add(playerRef);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Rebuilding a bound layer never shows the template value between the rebuild and the next poll. */
+class BoundRebuildTest {
+
+    private static final String LAYER = "test:stats";
+    private static final String HEALTH = "#Health.Text";
+    private static final String MANA = "#Mana.Text";
+
+    private final ClientView client = new ClientView();
+    private final StatsHud stats = new StatsHud();
+
+    @Test
+    void refreshKeepsBoundValueOfATemplateProperty() {
+        bindHealth();
+
+        stats.label = "changed";
+        client.hud.refreshLayer(LAYER);
+
+        assertEquals("\"20\"", client.value(HEALTH));
+        assertEquals("\"changed\"", client.value("#Label.Text"));
+        assertNothingSentOnNextPoll();
+    }
+
+    @Test
+    void fullRebuildKeepsBoundValueOfATemplateProperty() {
+        bindHealth();
+
+        stats.extraElement = true;
+        client.hud.refreshLayer(LAYER);
+
+        assertEquals("\"20\"", client.value(HEALTH));
+        assertNothingSentOnNextPoll();
+    }
+
+    @Test
+    void rebuildKeepsBoundValueOfAPropertyTheBuildNeverSets() {
+        client.hud.add(LAYER, stats);
+        client.hud.bind(LAYER, MANA, () -> "7");
+        client.hud.evaluateBindings();
+
+        client.hud.refreshLayer(LAYER);
+
+        assertEquals("\"7\"", client.value(MANA));
+        assertNothingSentOnNextPoll();
+    }
+
+    @Test
+    void refreshOfALayerBoundOutsideItsBuildIsADiff() {
+        client.hud.add(LAYER, stats);
+        client.hud.bind(LAYER, MANA, () -> "7");
+        client.hud.evaluateBindings();
+        int updates = client.sent.size();
+
+        stats.label = "changed";
+        client.hud.refreshLayer(LAYER);
+
+        assertEquals(1, client.commandsSince(updates));
+        assertEquals("\"changed\"", client.value("#Label.Text"));
+        assertEquals("\"7\"", client.value(MANA));
+    }
+
+    @Test
+    void unboundBindingIsNotReapplied() {
+        LayerBinding binding = bindHealth();
+        binding.unbind();
+
+        stats.label = "changed";
+        client.hud.refreshLayer(LAYER);
+
+        assertEquals("\"0\"", client.value(HEALTH));
+    }
+
+    private LayerBinding bindHealth() {
+        client.hud.add(LAYER, stats);
+        LayerBinding binding = client.hud.bind(LAYER, HEALTH, () -> "20");
+        client.hud.evaluateBindings();
+        assertEquals("\"20\"", client.value(HEALTH));
+        return binding;
+    }
+
+    private void assertNothingSentOnNextPoll() {
+        int updates = client.sent.size();
+        client.hud.evaluateBindings();
+        assertEquals(0, client.commandsSince(updates));
+    }
+
+    private static final class StatsHud extends CustomUIHud {
+        String label = "Stats";
+        boolean extraElement;
+
+        StatsHud() {
+            super(null);
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Stats.ui");
+            if (extraElement) {
+                builder.append("Hud/Extra.ui");
+            }
+            builder.set("#Label.Text", label);
+            builder.set(HEALTH, "0");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** A show over the packet budget sends every group at once and streams the layer content in afterwards. */
+class ChunkedShowTest {
+
+    private static final int LAYERS = 4;
+    /** Less than one layer's content, so every packet carries exactly one layer. */
+    private static final int BUDGET = 100;
+
+    private final ClientView client = new ClientView();
+    private final List<Runnable> timerTasks = new ArrayList<>();
+
+    @BeforeEach
+    void addLayers() {
+        client.hud.setUpdateTimer((task, delayMillis) -> timerTasks.add(task));
+        for (int i = 0; i < LAYERS; i++) {
+            client.hud.add(layer(i), new RowHud(i));
+        }
+        client.hud.setShowPacketBudget(BUDGET);
+    }
+
+    @Test
+    void showSendsAllGroupsButOnlyTheFirstLayersContent() {
+        client.hud.show();
+
+        CustomUICommand[] packet = client.sent.get(client.sent.size() - 1);
+        assertEquals(LAYERS, count(packet, CustomUICommandType.AppendInline));
+        assertNotNull(client.value(row(0)));
+        for (int i = 1; i < LAYERS; i++) {
+            assertNull(client.value(row(i)));
+        }
+        assertTrue(client.hud.hasPendingShow());
+    }
+
+    @Test
+    void heldBackLayersArriveOneBudgetPerTick() {
+        client.hud.show();
+
+        for (int i = 1; i < LAYERS; i++) {
+            int updates = client.sent.size();
+            runNextTimerTask();
+            assertEquals(updates + 1, client.sent.size());
+            assertNotNull(client.value(row(i)));
+        }
+        assertFalse(client.hud.hasPendingShow());
+        assertTrue(timerTasks.isEmpty());
+    }
+
+    @Test
+    void higherPriorityLayersGoFirst() {
+        client.hud.setLayerUpdatePolicy(layer(3), 5, 0);
+
+        client.hud.show();
+
+        assertNotNull(client.value(row(3)));
+        assertNull(client.value(row(0)));
+    }
+
+    @Test
+    void updatingAHeldBackLayerSendsItsContentFirst() {
+        client.hud.show();
+
+        client.hud.updateLayer(layer(2), ui -> ui.set("#Extra.Text", "x"));
+
+        assertNotNull(client.value(row(2)));
+        assertEquals("\"x\"", client.value("#Extra.Text"));
+        assertNull(client.value(row(1)));
+    }
+
+    @Test
+    void removingTheBudgetSendsTheRestAtOnce() {
+        client.hud.show();
+
+        client.hud.setShowPacketBudget(0);
+
+        for (int i = 0; i < LAYERS; i++) {
+            assertNotNull(client.value(row(i)));
+        }
+        assertFalse(client.hud.hasPendingShow());
+    }
+
+    @Test
+    void withoutABudgetEverythingGoesInTheShow() {
+        client.hud.setShowPacketBudget(0);
+
+        client.hud.show();
+
+        for (int i = 0; i < LAYERS; i++) {
+            assertNotNull(client.value(row(i)));
+        }
+        assertFalse(client.hud.hasPendingShow());
+    }
+
+    private void runNextTimerTask() {
+        timerTasks.remove(0).run();
+    }
+
+    private static int count(@Nonnull CustomUICommand[] commands, @Nonnull CustomUICommandType type) {
+        int n = 0;
+        for (CustomUICommand cmd : commands) {
+            if (cmd.type == type) n++;
+        }
+        return n;
+    }
+
+    @Nonnull
+    private static String layer(int i) {
+        return "test:row" + i;
+    }
+
+    @Nonnull
+    private static String row(int i) {
+        return "#Row" + i + ".Text";
+    }
+
+    private static final class RowHud extends CustomUIHud {
+        private final int index;
+
+        RowHud(int index) {
+            super(null);
+            this.index = index;
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Row.ui");
+            builder.set(row(index), "row " + index + " with a label long enough to fill the packet budget");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A wrapper plus the property values its client would end up showing, from the {@code Set}s it was sent.
+ * {@code Clear} and {@code Remove} drop the values below their element; nothing else is modeled.
+ */
+final class ClientView {
+
+    final List<CustomUICommand[]> sent = new ArrayList<>();
+    final Map<String, String> values = new HashMap<>();
+    final MultipleCustomUIHud hud = new MultipleCustomUIHud(null, (clear, builder) -> receive(clear, builder.getCommands()));
+
+    private void receive(boolean clear, @Nonnull CustomUICommand[] commands) {
+        if (clear) values.clear();
+        sent.add(commands);
+        for (CustomUICommand cmd : commands) {
+            switch (cmd.type) {
+                case Set -> values.put(cmd.selector, cmd.data);
+                case Clear -> values.keySet().removeIf(key -> key.startsWith(cmd.selector + " "));
+                case Remove -> values.keySet().removeIf(key -> key.startsWith(cmd.selector + " ")
+                        || key.startsWith(cmd.selector + "."));
+                default -> {
+                }
+            }
+        }
+    }
+
+    /** @return the value the client shows for the only layer property ending in {@code selector}, if any */
+    @Nullable
+    String value(@Nonnull String selector) {
+        String value = null;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getKey().endsWith(" " + selector)) {
+                if (value != null) throw new IllegalStateException(selector + " is set in several layers");
+                value = entry.getValue();
+            }
+        }
+        return value;
+    }
+
+    /** @return the number of commands sent since {@code fromUpdate} */
+    int commandsSince(int fromUpdate) {
+        int n = 0;
+        for (int i = fromUpdate; i < sent.size(); i++) {
+            n += sent.get(i).length;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,414 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a compacted update builds the same UI tree as the original, on a small model of the client:
+ * elements with ids and properties, selectors matched as descendant paths.
+ */
+class CommandStreamCompactorTest {
+
+    private static final String ROOT = HudEnsembleUi.ROOT_SELECTOR;
+    private static final String[] LAYERS = {"a", "b", "c"};
+    private static final String[] INNER = {"", "#T", "#U", "#T #U", "#U #T"};
+
+    @Test
+    void randomStreamsBuildTheSameTree() {
+        Random random = new Random(42);
+        int commands = 0;
+        int dropped = 0;
+        for (int i = 0; i < 50_000; i++) {
+            CustomUICommand[] stream = randomStream(random, 1 + random.nextInt(12));
+            CustomUICommand[] compacted = CommandStreamCompactor.compact(stream);
+
+            assertSameTree(stream, compacted);
+            commands += stream.length;
+            dropped += stream.length - compacted.length;
+        }
+        // Guards against a generator that never gives the compactor anything to do.
+        assertTrue(dropped > commands / 20, "only " + dropped + " of " + commands + " commands dropped");
+    }
+
+    @Test
+    void clearDropsEarlierContentButKeepsWhatFollows() {
+        CustomUICommand[] stream = {
+                append(layer("a"), "U"),
+                set(layer("a") + " #U.P0", "1"),
+                set(layer("a") + " #T.P0", "1"),
+                clear(layer("a")),
+                append(layer("a"), "T"),
+                set(layer("a") + " #T.P0", "2"),
+        };
+
+        CustomUICommand[] compacted = assertSameTree(stream, CommandStreamCompactor.compact(stream));
+        assertEquals(List.of(stream[3], stream[4], stream[5]), List.of(compacted));
+    }
+
+    @Test
+    void removeDropsTheElementsPropertiesAndContent() {
+        CustomUICommand[] stream = {
+                set(layer("a") + " #T.P0", "1"),
+                append(layer("a") + " #T", "U"),
+                set(layer("a") + " #T #U.P1", "1"),
+                remove(layer("a") + " #T"),
+        };
+
+        CustomUICommand[] compacted = assertSameTree(stream, CommandStreamCompactor.compact(stream));
+        assertEquals(List.of(stream[3]), List.of(compacted));
+    }
+
+    @Test
+    void groupCreatedAndRemovedWithinTheUpdateIsNeverSent() {
+        CustomUICommand[] stream = {
+                createGroup("c"),
+                append(layer("c"), "T"),
+                set(layer("c") + " #T.P0", "1"),
+                remove(layer("c")),
+                set(layer("a") + " #T.P0", "1"),
+        };
+
+        CustomUICommand[] compacted = assertSameTree(stream, CommandStreamCompactor.compact(stream));
+        assertEquals(List.of(stream[4]), List.of(compacted));
+    }
+
+    @Test
+    void removedGroupRecreatedKeepsItsNewContent() {
+        CustomUICommand[] stream = {
+                set(layer("a") + " #T.P0", "1"),
+                remove(layer("a")),
+                createGroup("a"),
+                append(layer("a"), "T"),
+                set(layer("a") + " #T.P0", "2"),
+                remove(layer("a")),
+                createGroup("a"),
+                append(layer("a"), "U"),
+        };
+
+        CustomUICommand[] compacted = assertSameTree(stream, CommandStreamCompactor.compact(stream));
+        assertEquals(List.of(stream[1], stream[6], stream[7]), List.of(compacted));
+    }
+
+    @Test
+    void insertBeforePinsAGroupCreatedInTheSameUpdate() {
+        CustomUICommand[] stream = {
+                createGroup("c"),
+                new CustomUICommand(CustomUICommandType.InsertBeforeInline, layer("c"), null, "Group #d {}"),
+                remove(layer("c")),
+        };
+
+        // "d" needs "c" to exist when it is inserted, so the creation and removal of "c" must stay.
+        assertSame(stream, assertSameTree(stream, CommandStreamCompactor.compact(stream)));
+    }
+
+    @Test
+    void setsSplitByAStructuralChangeToTheirLayerAreKept() {
+        CustomUICommand[] stream = {
+                set(layer("a") + " #T.P0", "1"),
+                append(layer("a"), "T"),
+                set(layer("a") + " #T.P0", "2"),
+                set(layer("b") + " #T.P0", "1"),
+                set(layer("b") + " #T.P0", "2"),
+        };
+
+        CustomUICommand[] compacted = assertSameTree(stream, CommandStreamCompactor.compact(stream));
+        assertEquals(List.of(stream[0], stream[1], stream[2], stream[4]), List.of(compacted));
+    }
+
+    @Test
+    void directSendsAreCompactedToo() {
+        ClientView client = new ClientView();
+        client.hud.add("test:timer", new TimerHud());
+        int updates = client.sent.size();
+
+        client.hud.updateLayer("test:timer", ui -> {
+            ui.set("#Timer.Text", "9");
+            ui.set("#Timer.Text", "8");
+        });
+
+        assertEquals(1, client.commandsSince(updates));
+        assertEquals("\"8\"", client.value("#Timer.Text"));
+    }
+
+    @Nonnull
+    private static CustomUICommand[] assertSameTree(@Nonnull CustomUICommand[] stream,
+                                                    @Nonnull CustomUICommand[] compacted) {
+        UiTree expected = UiTree.initial();
+        UiTree actual = UiTree.initial();
+        for (CustomUICommand cmd : stream) {
+            expected.apply(cmd);
+        }
+        for (CustomUICommand cmd : compacted) {
+            actual.apply(cmd);
+        }
+        assertEquals(expected.dump(), actual.dump(),
+                () -> "stream:\n" + describe(stream) + "compacted:\n" + describe(compacted));
+        return compacted;
+    }
+
+    /**
+     * Generates a stream the ensemble could send: every command targets an element that exists at that
+     * point, and ids stay unique within their layer (layer groups: under the root).
+     */
+    @Nonnull
+    private static CustomUICommand[] randomStream(@Nonnull Random random, int length) {
+        CustomUICommand[] stream = new CustomUICommand[length];
+        UiTree tree = UiTree.initial();
+        for (int i = 0; i < length; i++) {
+            while (true) {
+                CustomUICommand cmd = randomCommand(random);
+                if (tree.resolve(cmd.type == CustomUICommandType.Set ? elementOf(cmd.selector) : cmd.selector) == null) {
+                    continue;
+                }
+                UiTree next = tree.copy();
+                next.apply(cmd);
+                if (next.hasUniqueIds()) {
+                    stream[i] = cmd;
+                    tree = next;
+                    break;
+                }
+            }
+        }
+        return stream;
+    }
+
+    @Nonnull
+    private static CustomUICommand randomCommand(@Nonnull Random random) {
+        String layer = layer(LAYERS[random.nextInt(LAYERS.length)]);
+        String inner = INNER[random.nextInt(INNER.length)];
+        String element = inner.isEmpty() ? layer : layer + " " + inner;
+        String group = LAYERS[random.nextInt(LAYERS.length)];
+        return switch (random.nextInt(8)) {
+            case 0, 1, 2 -> set(element + ".P" + random.nextInt(2), String.valueOf(random.nextInt(3)));
+            case 3 -> append(element, random.nextBoolean() ? "T" : "U,T");
+            case 4 -> remove(element);
+            case 5 -> clear(element);
+            case 6 -> random.nextBoolean()
+                    ? createGroup(group)
+                    : new CustomUICommand(CustomUICommandType.InsertBeforeInline, layer, null, "Group #" + group + " {}");
+            default -> new CustomUICommand(CustomUICommandType.InsertBeforeInline, element, null, "U");
+        };
+    }
+
+    private static String layer(@Nonnull String id) {
+        return ROOT + " #" + id;
+    }
+
+    private static String elementOf(@Nonnull String propertySelector) {
+        return propertySelector.substring(0, propertySelector.lastIndexOf('.'));
+    }
+
+    private static CustomUICommand set(@Nonnull String selector, @Nonnull String value) {
+        return new CustomUICommand(CustomUICommandType.Set, selector, value, null);
+    }
+
+    private static CustomUICommand append(@Nonnull String selector, @Nonnull String ids) {
+        return new CustomUICommand(CustomUICommandType.Append, selector, null, ids);
+    }
+
+    private static CustomUICommand remove(@Nonnull String selector) {
+        return new CustomUICommand(CustomUICommandType.Remove, selector, null, null);
+    }
+
+    private static CustomUICommand clear(@Nonnull String selector) {
+        return new CustomUICommand(CustomUICommandType.Clear, selector, null, null);
+    }
+
+    private static CustomUICommand createGroup(@Nonnull String id) {
+        return new CustomUICommand(CustomUICommandType.AppendInline, ROOT, null, "Group #" + id + " {}");
+    }
+
+    private static String describe(@Nonnull CustomUICommand[] commands) {
+        StringBuilder out = new StringBuilder();
+        for (CustomUICommand cmd : commands) {
+            out.append("  ").append(cmd.type).append(' ').append(cmd.selector)
+                    .append(' ').append(cmd.data).append(' ').append(cmd.text).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static final class TimerHud extends CustomUIHud {
+        TimerHud() {
+            super(null);
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Timer.ui");
+        }
+    }
+
+    /**
+     * Model of the client's UI tree. Appended documents are modeled as comma-separated element ids, or an
+     * inline {@code Group #<id> {}}; a selector matches the first element along its descendant path.
+     */
+    private static final class UiTree {
+
+        private final Node top;
+
+        private UiTree(@Nonnull Node top) {
+            this.top = top;
+        }
+
+        /** The root group holding layers "a" and "b", each with a "T" element. */
+        static UiTree initial() {
+            Node top = new Node("");
+            Node root = top.add(ROOT.substring(1), top.kids.size());
+            for (String id : new String[]{"a", "b"}) {
+                root.add(id, root.kids.size()).add("T", 0);
+            }
+            return new UiTree(top);
+        }
+
+        UiTree copy() {
+            return new UiTree(top.copy(null));
+        }
+
+        void apply(@Nonnull CustomUICommand cmd) {
+            switch (cmd.type) {
+                case Set -> {
+                    int dot = cmd.selector.lastIndexOf('.');
+                    Node node = resolve(cmd.selector.substring(0, dot));
+                    if (node != null) node.props.put(cmd.selector.substring(dot + 1), cmd.data);
+                }
+                case Append, AppendInline -> {
+                    Node node = resolve(cmd.selector);
+                    if (node == null) return;
+                    for (String id : idsOf(cmd.text)) {
+                        node.add(id, node.kids.size());
+                    }
+                }
+                case InsertBefore, InsertBeforeInline -> {
+                    Node node = resolve(cmd.selector);
+                    if (node == null || node.parent == null) return;
+                    int index = node.parent.kids.indexOf(node);
+                    for (String id : idsOf(cmd.text)) {
+                        node.parent.add(id, index++);
+                    }
+                }
+                case Remove -> {
+                    Node node = resolve(cmd.selector);
+                    if (node != null && node.parent != null) node.parent.kids.remove(node);
+                }
+                case Clear -> {
+                    Node node = resolve(cmd.selector);
+                    if (node != null) node.kids.clear();
+                }
+                default -> throw new IllegalArgumentException("unexpected command " + cmd.type);
+            }
+        }
+
+        @Nullable
+        Node resolve(@Nonnull String selector) {
+            String[] path = selector.split(" ");
+            for (int i = 0; i < path.length; i++) {
+                path[i] = path[i].substring(1);
+            }
+            return top.find(path, 0);
+        }
+
+        /** Element ids are unique within their layer; layer groups under the root. */
+        boolean hasUniqueIds() {
+            HashSet<String> seen = new HashSet<>();
+            for (Node root : top.kids) {
+                for (Node layer : root.kids) {
+                    if (!seen.add(layer.id) || !layer.hasUniqueDescendants(new HashSet<>())) return false;
+                }
+            }
+            return true;
+        }
+
+        String dump() {
+            return top.dump();
+        }
+
+        private static List<String> idsOf(@Nonnull String text) {
+            if (text.startsWith("Group #")) return List.of(text.substring("Group #".length(), text.length() - 3));
+            return Arrays.asList(text.split(","));
+        }
+    }
+
+    private static final class Node {
+        final String id;
+        @Nullable Node parent;
+        final List<Node> kids = new ArrayList<>();
+        final TreeMap<String, String> props = new TreeMap<>();
+
+        Node(@Nonnull String id) {
+            this.id = id;
+        }
+
+        Node add(@Nonnull String childId, int index) {
+            Node child = new Node(childId);
+            child.parent = this;
+            kids.add(index, child);
+            return child;
+        }
+
+        /** Matches {@code path[i..]} among the descendants of this node, depth first. */
+        @Nullable
+        Node find(@Nonnull String[] path, int i) {
+            if (i == path.length) return this;
+            for (Node kid : kids) {
+                Node match = kid.findFrom(path, i);
+                if (match != null) return match;
+            }
+            return null;
+        }
+
+        @Nullable
+        private Node findFrom(@Nonnull String[] path, int i) {
+            if (id.equals(path[i])) {
+                Node match = find(path, i + 1);
+                if (match != null) return match;
+            }
+            for (Node kid : kids) {
+                Node match = kid.findFrom(path, i);
+                if (match != null) return match;
+            }
+            return null;
+        }
+
+        boolean hasUniqueDescendants(@Nonnull Set<String> seen) {
+            for (Node kid : kids) {
+                if (!seen.add(kid.id) || !kid.hasUniqueDescendants(seen)) return false;
+            }
+            return true;
+        }
+
+        Node copy(@Nullable Node newParent) {
+            Node copy = new Node(id);
+            copy.parent = newParent;
+            copy.props.putAll(props);
+            for (Node kid : kids) {
+                copy.kids.add(kid.copy(copy));
+            }
+            return copy;
+        }
+
+        String dump() {
+            StringBuilder out = new StringBuilder(id).append(props);
+            for (Node kid : kids) {
+                out.append('(').append(kid.dump()).append(')');
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.hudensemble.hudens;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayerBuildGuardTest {
+
+    private static final String LAYER = "test:slow";
+    private static final long MS = 1_000_000L;
+    private static final long SECOND = 1_000 * MS;
+    private static final long SLOW = 20 * MS;
+    private static final long FAST = MS;
+
+    @BeforeEach
+    void setUp() {
+        LayerBuildGuard.clear();
+        LayerBuildGuard.configure(5, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LayerBuildGuard.configure(LayerBuildGuard.DEFAULT_BUDGET_MILLIS, LayerBuildGuard.DEFAULT_STRIKES);
+        LayerBuildGuard.clear();
+    }
+
+    @Test
+    void fewerOverrunsThanStrikesAreTolerated() {
+        LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+        LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+
+        assertTrue(LayerBuildGuard.tryAcquire(LAYER, 0));
+        assertEquals(Set.of(), LayerBuildGuard.quarantined());
+    }
+
+    @Test
+    void fastBuildResetsTheStrikes() {
+        LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+        LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+        LayerBuildGuard.recordBuild(LAYER, FAST, 0);
+        LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+
+        assertEquals(Set.of(), LayerBuildGuard.quarantined());
+    }
+
+    @Test
+    void quarantineAllowsOneBuildPerInterval() {
+        quarantine();
+
+        assertEquals(Set.of(LAYER), LayerBuildGuard.quarantined());
+        assertEquals(SECOND, LayerBuildGuard.nanosUntilBuild(LAYER, 0));
+        assertFalse(LayerBuildGuard.tryAcquire(LAYER, SECOND / 2));
+
+        assertTrue(LayerBuildGuard.tryAcquire(LAYER, SECOND));
+        // The slot is taken: another player's wrapper keeps the last content.
+        assertFalse(LayerBuildGuard.tryAcquire(LAYER, SECOND));
+    }
+
+    @Test
+    void eachFurtherSlowBuildDoublesTheInterval() {
+        quarantine();
+
+        LayerBuildGuard.recordBuild(LAYER, SLOW, SECOND);
+        assertEquals(2 * SECOND, LayerBuildGuard.nanosUntilBuild(LAYER, SECOND));
+
+        LayerBuildGuard.recordBuild(LAYER, SLOW, 3 * SECOND);
+        assertEquals(4 * SECOND, LayerBuildGuard.nanosUntilBuild(LAYER, 3 * SECOND));
+    }
+
+    @Test
+    void buildWithinBudgetLiftsTheQuarantine() {
+        quarantine();
+
+        LayerBuildGuard.recordBuild(LAYER, FAST, SECOND);
+
+        assertEquals(Set.of(), LayerBuildGuard.quarantined());
+        assertTrue(LayerBuildGuard.tryAcquire(LAYER, SECOND));
+        assertTrue(LayerBuildGuard.tryAcquire(LAYER, SECOND));
+    }
+
+    @Test
+    void layerStillSlowAtTheLongestIntervalIsDisabledUntilCleared() {
+        quarantine();
+        for (int i = 0; i < 6; i++) {
+            LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+        }
+
+        assertEquals(-1, LayerBuildGuard.nanosUntilBuild(LAYER, 0));
+        assertFalse(LayerBuildGuard.tryAcquire(LAYER, 1_000 * SECOND));
+        assertEquals(Set.of(LAYER), LayerBuildGuard.quarantined());
+
+        LayerBuildGuard.clear();
+        assertTrue(LayerBuildGuard.tryAcquire(LAYER, 0));
+    }
+
+    @Test
+    void zeroBudgetTurnsTheGuardOff() {
+        quarantine();
+
+        LayerBuildGuard.configure(0, 3);
+        for (int i = 0; i < 5; i++) {
+            LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+        }
+
+        assertEquals(Set.of(), LayerBuildGuard.quarantined());
+        assertTrue(LayerBuildGuard.tryAcquire(LAYER, 0));
+    }
+
+    private static void quarantine() {
+        for (int i = 0; i < 3; i++) {
+            LayerBuildGuard.recordBuild(LAYER, SLOW, 0);
+        }
+    }
+}
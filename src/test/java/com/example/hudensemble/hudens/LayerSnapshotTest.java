@@ -0,0 +1,157 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LayerSnapshotTest {
+
+    private static final String LAYER = "#HudEnsemble #L1 ";
+    private static final CustomUICommand APPEND =
+            new CustomUICommand(CustomUICommandType.Append, LAYER.trim(), null, "Hud/Stats.ui");
+
+    @Test
+    void identicalRebuildSendsNothing() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+
+        assertArrayEquals(new CustomUICommand[0], snapshot.diff(new LayerSnapshot(build("1", "2")), Set.of()));
+    }
+
+    @Test
+    void rebuildSendsOnlyChangedValues() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        CustomUICommand[] next = build("1", "3");
+
+        assertEquals(List.of(next[2]), List.of(snapshot.diff(new LayerSnapshot(next), Set.of())));
+    }
+
+    @Test
+    void differentStructureNeedsARebuild() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        CustomUICommand[] other = {
+                new CustomUICommand(CustomUICommandType.Append, LAYER.trim(), null, "Hud/Other.ui"),
+                set("#A.Text", "1"),
+                set("#B.Text", "2"),
+        };
+
+        assertNull(snapshot.diff(new LayerSnapshot(other), Set.of()));
+        assertNull(snapshot.diff(new LayerSnapshot(new CustomUICommand[]{APPEND, set("#A.Text", "1")}), Set.of()));
+    }
+
+    @Test
+    void onlyTheLastSetOfASelectorCounts() {
+        CustomUICommand[] first = {APPEND, set("#A.Text", "0"), set("#A.Text", "1")};
+        CustomUICommand[] next = {APPEND, set("#A.Text", "5"), set("#A.Text", "1")};
+
+        assertEquals(0, new LayerSnapshot(first).diff(new LayerSnapshot(next), Set.of()).length);
+    }
+
+    @Test
+    void observeUpdateDropsValuesTheClientAlreadyShows() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        CustomUICommand[] update = {set("#A.Text", "1"), set("#B.Text", "9")};
+        CustomUICommand[] fresh = {set("#B.Text", "8")};
+
+        assertEquals(List.of(update[1]), List.of(snapshot.observeUpdate(update)));
+        assertSame(fresh, snapshot.observeUpdate(fresh));
+        assertEquals(0, snapshot.observeUpdate(new CustomUICommand[]{set("#B.Text", "8")}).length);
+    }
+
+    @Test
+    void structuralUpdateCannotBeTracked() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+
+        assertNull(snapshot.observeUpdate(new CustomUICommand[]{
+                set("#A.Text", "3"),
+                new CustomUICommand(CustomUICommandType.Clear, LAYER + "#List", null, null),
+        }));
+    }
+
+    @Test
+    void rebuildResetsUpdatedTemplateValues() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        snapshot.observeUpdate(new CustomUICommand[]{set("#A.Text", "7")});
+        CustomUICommand[] next = build("1", "2");
+
+        assertEquals(List.of(next[1]), List.of(snapshot.diff(new LayerSnapshot(next), Set.of())));
+    }
+
+    @Test
+    void propertyOutsideTheBuildNeedsARebuildUnlessItIsSetAgain() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        snapshot.observeUpdate(new CustomUICommand[]{set("#Mana.Text", "7")});
+
+        assertNull(snapshot.diff(new LayerSnapshot(build("1", "2")), Set.of()));
+
+        LayerSnapshot same = new LayerSnapshot(build("1", "2"));
+        same.observeUpdate(new CustomUICommand[]{set("#Mana.Text", "7")});
+        assertEquals(0, snapshot.diff(same, Set.of()).length);
+
+        LayerSnapshot changed = new LayerSnapshot(build("1", "2"));
+        CustomUICommand mana = set("#Mana.Text", "8");
+        changed.observeUpdate(new CustomUICommand[]{mana});
+        assertEquals(List.of(mana), List.of(snapshot.diff(changed, Set.of())));
+    }
+
+    @Test
+    void newPropertyOutsideTheBuildIsSent() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        LayerSnapshot next = new LayerSnapshot(build("1", "2"));
+        CustomUICommand mana = set("#Mana.Text", "7");
+        next.observeUpdate(new CustomUICommand[]{mana});
+
+        assertEquals(List.of(mana), List.of(snapshot.diff(next, Set.of())));
+    }
+
+    @Test
+    void unsentSelectorsAreSentEvenIfUnchanged() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        snapshot.observeUpdate(new CustomUICommand[]{set("#A.Text", "5")});
+        CustomUICommand[] next = build("5", "2");
+
+        assertEquals(0, snapshot.diff(new LayerSnapshot(next), Set.of()).length);
+        assertEquals(List.of(next[1]), List.of(snapshot.diff(new LayerSnapshot(next), Set.of(LAYER + "#A.Text"))));
+    }
+
+    @Test
+    void tooManyPropertiesOutsideTheBuildCannotBeTracked() {
+        LayerSnapshot snapshot = new LayerSnapshot(build("1", "2"));
+        for (int i = 0; i < LayerSnapshot.MAX_UPDATED_SETS; i++) {
+            snapshot.observeUpdate(new CustomUICommand[]{set("#P" + i + ".Text", "x")});
+        }
+
+        assertNull(snapshot.observeUpdate(new CustomUICommand[]{set("#Overflow.Text", "x")}));
+    }
+
+    @Test
+    void toCommandsReplaysUpdatesAfterTheBuild() {
+        CustomUICommand[] build = build("1", "2");
+        LayerSnapshot snapshot = new LayerSnapshot(build);
+        CustomUICommand a = set("#A.Text", "5");
+        CustomUICommand mana = set("#Mana.Text", "7");
+        snapshot.observeUpdate(new CustomUICommand[]{a, mana});
+
+        assertArrayEquals(new CustomUICommand[]{APPEND, a, build[2], mana}, snapshot.toCommands());
+        assertEquals(4, snapshot.size());
+        assertEquals("\"1\"", build[1].data);
+    }
+
+    @Nonnull
+    private static CustomUICommand[] build(@Nonnull String a, @Nonnull String b) {
+        return new CustomUICommand[]{APPEND, set("#A.Text", a), set("#B.Text", b)};
+    }
+
+    @Nonnull
+    private static CustomUICommand set(@Nonnull String selector, @Nonnull String value) {
+        return new CustomUICommand(CustomUICommandType.Set, LAYER + selector, "\"" + value + "\"", null);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayerUpdateSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final CustomUICommand APPEND =
+            new CustomUICommand(CustomUICommandType.Append, "#HudEnsemble #a", null, "Hud/Row.ui");
+
+    private final LayerUpdateScheduler scheduler = new LayerUpdateScheduler();
+
+    @Test
+    void budgetRefillsAtItsRate() {
+        LayerUpdateScheduler.Budget budget = new LayerUpdateScheduler.Budget(10, 0);
+        assertTrue(budget.isAvailable(0));
+
+        budget.spend(10);
+        assertFalse(budget.isAvailable(0));
+        assertFalse(budget.isAvailable(99 * MS));
+        assertTrue(budget.isAvailable(101 * MS));
+    }
+
+    @Test
+    void budgetMayBeOverdrawnByASingleUpdate() {
+        LayerUpdateScheduler.Budget budget = new LayerUpdateScheduler.Budget(10, 0);
+
+        budget.spend(25);
+
+        // 16 tokens to earn back at 10 per second.
+        assertEquals(1_600 * MS, budget.nanosUntilAvailable(0), MS);
+        assertFalse(budget.isAvailable(1_590 * MS));
+        assertTrue(budget.isAvailable(1_601 * MS));
+    }
+
+    @Test
+    void deferredSetsToTheSameSelectorKeepOnlyTheLatest() {
+        scheduler.setPolicy("a", 0, 100);
+        CustomUICommand[] first = {set("#X", "1")};
+        assertSame(first, scheduler.admit("a", null, first, 0));
+
+        assertNull(scheduler.admit("a", null, new CustomUICommand[]{set("#X", "2")}, 10 * MS));
+        CustomUICommand latest = set("#X", "3");
+        assertNull(scheduler.admit("a", null, new CustomUICommand[]{latest, APPEND}, 20 * MS));
+
+        assertEquals(List.of(), scheduler.drainDue(50 * MS));
+        assertEquals(50 * MS, scheduler.nanosUntilNextDue(50 * MS));
+
+        List<LayerUpdateScheduler.Release> released = scheduler.drainDue(100 * MS);
+        assertEquals(1, released.size());
+        assertArrayEquals(new CustomUICommand[]{latest, APPEND}, released.get(0).commands());
+        assertEquals(-1, scheduler.nanosUntilNextDue(100 * MS));
+    }
+
+    @Test
+    void drainReleasesHighestPriorityFirst() {
+        deferOne("low", 1);
+        deferOne("high", 5);
+        deferOne("mid", 3);
+
+        List<LayerUpdateScheduler.Release> released = scheduler.drainDue(100 * MS);
+
+        assertEquals(List.of("high", "mid", "low"),
+                released.stream().map(LayerUpdateScheduler.Release::normalizedId).toList());
+    }
+
+    @Test
+    void layersOverTheDrainBudgetWaitOneTick() {
+        int budget = LayerUpdateScheduler.DRAIN_COMMAND_BUDGET;
+        defer("first", 2, budget - 10);
+        defer("second", 1, 20);
+
+        List<LayerUpdateScheduler.Release> released = scheduler.drainDue(100 * MS);
+
+        assertEquals(1, released.size());
+        assertEquals("first", released.get(0).normalizedId());
+        assertEquals(LayerUpdateScheduler.CARRY_OVER_NANOS, scheduler.nanosUntilNextDue(100 * MS));
+
+        released = scheduler.drainDue(100 * MS + LayerUpdateScheduler.CARRY_OVER_NANOS);
+        assertEquals("second", released.get(0).normalizedId());
+        assertEquals(20, released.get(0).commands().length);
+    }
+
+    @Test
+    void singleUpdateLargerThanTheDrainBudgetIsStillReleased() {
+        defer("huge", 0, LayerUpdateScheduler.DRAIN_COMMAND_BUDGET + 100);
+
+        List<LayerUpdateScheduler.Release> released = scheduler.drainDue(100 * MS);
+
+        assertEquals(LayerUpdateScheduler.DRAIN_COMMAND_BUDGET + 100, released.get(0).commands().length);
+    }
+
+    @Test
+    void ownerBudgetDefersALayerWithoutPolicy() {
+        LayerUpdateScheduler.Budget budget = new LayerUpdateScheduler.Budget(10, 0);
+        CustomUICommand[] ten = sets(10);
+        assertSame(ten, scheduler.admit("a", budget, ten, 0));
+
+        assertNull(scheduler.admit("a", budget, new CustomUICommand[]{set("#X", "1")}, 0));
+        assertEquals(List.of(), scheduler.drainDue(50 * MS));
+        assertTrue(scheduler.nanosUntilNextDue(50 * MS) > 0);
+
+        assertEquals(1, scheduler.drainDue(200 * MS).size());
+        // Only the budget held the layer, so nothing is kept for it.
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    void removingTheIntervalKeepsThePriority() {
+        scheduler.setPolicy("a", 3, 100);
+        scheduler.setPolicy("a", 3, 0);
+
+        assertEquals(3, scheduler.priorityOf("a"));
+        assertEquals(0, scheduler.minIntervalMillisOf("a"));
+
+        scheduler.setPolicy("a", 0, 0);
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    void discardReturnsTheSelectorsOfDroppedSets() {
+        scheduler.setPolicy("a", 0, 100);
+        scheduler.admit("a", null, new CustomUICommand[]{set("#X", "1")}, 0);
+        scheduler.admit("a", null, new CustomUICommand[]{set("#X", "2"), set("#Y", "1"), APPEND}, 10 * MS);
+
+        assertEquals(Set.of("#X", "#Y"), scheduler.discard("a"));
+        assertEquals(List.of(), scheduler.drainDue(100 * MS));
+        assertEquals(Set.of(), scheduler.discard("a"));
+    }
+
+    private void deferOne(@Nonnull String layer, int priority) {
+        defer(layer, priority, 1);
+    }
+
+    /** Sends one update for {@code layer} at time 0, then defers {@code count} commands behind it. */
+    private void defer(@Nonnull String layer, int priority, int count) {
+        scheduler.setPolicy(layer, priority, 100);
+        scheduler.admit(layer, null, new CustomUICommand[]{set("#X", "0")}, 0);
+        assertNull(scheduler.admit(layer, null, sets(count), 10 * MS));
+    }
+
+    @Nonnull
+    private static CustomUICommand[] sets(int count) {
+        CustomUICommand[] commands = new CustomUICommand[count];
+        for (int i = 0; i < count; i++) {
+            commands[i] = set("#P" + i, "1");
+        }
+        return commands;
+    }
+
+    @Nonnull
+    private static CustomUICommand set(@Nonnull String selector, @Nonnull String value) {
+        return new CustomUICommand(CustomUICommandType.Set, selector, "\"" + value + "\"", null);
+    }
+}
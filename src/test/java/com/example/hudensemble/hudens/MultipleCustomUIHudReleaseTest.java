@@ -0,0 +1,63 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultipleCustomUIHudReleaseTest {
+
+    @Test
+    void releaseEmptiesEveryPerPlayerCollection() {
+        ArrayList<Runnable> timerTasks = new ArrayList<>();
+        ArrayList<Runnable> flushTasks = new ArrayList<>();
+        MultipleCustomUIHud hud = new MultipleCustomUIHud(null, (clear, builder) -> {});
+        hud.setUpdateTimer((task, delayMillis) -> timerTasks.add(task));
+        hud.setUpdateBudgets(Map.of("test", 100));
+
+        hud.add("test:stats", new TestHud(), 5);
+        hud.add("test:hidden", new TestHud());
+        hud.setLayerVisible("test:hidden", false);
+        hud.setLayerUpdatePolicy("test:stats", 1, 1000);
+        hud.bind("test:stats", "#Health.Text", () -> "20");
+        hud.setLayerRefreshInterval("test:stats", 5);
+        hud.updateLayer("test:stats", ui -> ui.set("#Health.Text", "19"));
+        // Throttled: the second update within the interval is deferred.
+        hud.updateLayer("test:stats", ui -> ui.set("#Health.Text", "18"));
+        hud.setCoalescing(flushTasks::add);
+        hud.updateLayer("test:hidden", ui -> ui.set("#Label.Text", "x"));
+
+        List<String> held = hud.heldState();
+        assertTrue(held.containsAll(List.of("layers", "zIndices", "hiddenLayers", "bindings", "refreshes",
+                "normalizedIds", "selectorCaches", "snapshots", "pendingCommands", "updateScheduler",
+                "updateBudgets")), "held before release: " + held);
+
+        List<LayerRefresh> refreshes = hud.getLayerRefreshes();
+        hud.release();
+
+        assertEquals(List.of(), hud.heldState());
+        assertEquals(0, hud.getLayerCount());
+        assertTrue(refreshes.get(0).isCancelled());
+        assertFalse(hud.hasUpdateTimer());
+        assertFalse(hud.isCoalescing());
+    }
+
+    private static final class TestHud extends CustomUIHud {
+        TestHud() {
+            super(null);
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Stats.ui");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.hudensemble.hudens;
+
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class NormalizedIdRegistryTest {
+
+    private final NormalizedIdRegistry registry = new NormalizedIdRegistry();
+
+    @Test
+    void idIsTheAlphanumericPartPlusTheCrc() {
+        String id = registry.getOrCreate("demo:clock-1");
+
+        assertEquals("democlock1" + hex8(crc32("demo:clock-1")), id);
+        assertSame(id, registry.getOrCreate("demo:clock-1"));
+        assertEquals("hud" + hex8(crc32("::")), registry.getOrCreate("::"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void crcMatchesTheUtf8Bytes() {
+        for (String s : List.of("", "a", "é", "€", "demo:😀", "bad\uD800", "\uDC00x")) {
+            assertEquals(crc32(s), NormalizedIdRegistry.crc32Utf8(s), s);
+        }
+    }
+
+    @Test
+    void collidingIdentifiersGetANumericSuffix() {
+        String[] pair = crcCollision();
+        String first = registry.getOrCreate(pair[0]);
+        String second = registry.getOrCreate(pair[1]);
+
+        assertEquals(first + "1", second);
+
+        registry.release(pair[0]);
+        assertNull(registry.getIfPresent(pair[0]));
+        assertEquals(second, registry.getIfPresent(pair[1]));
+        // The canonical id is free again.
+        assertEquals(first, registry.getOrCreate(pair[0]));
+    }
+
+    @Test
+    void releaseKeepsTheRemainingMappingsReachable() {
+        Map<String, String> ids = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            String identifier = "test:layer" + i;
+            ids.put(identifier, registry.getOrCreate(identifier));
+        }
+
+        List<String> released = new ArrayList<>();
+        for (int i = 0; i < 300; i += 3) {
+            String identifier = "test:layer" + ((i * 7) % 300);
+            registry.release(identifier);
+            released.add(identifier);
+        }
+
+        for (Map.Entry<String, String> entry : ids.entrySet()) {
+            String expected = released.contains(entry.getKey()) ? null : entry.getValue();
+            assertEquals(expected, registry.getIfPresent(entry.getKey()), entry.getKey());
+        }
+        assertEquals(300 - released.size(), registry.size());
+
+        for (String identifier : released) {
+            assertEquals(ids.get(identifier), registry.getOrCreate(identifier));
+        }
+        assertEquals(300, registry.size());
+    }
+
+    @Test
+    void identifierEqualToAnIdIsKeptApartFromIt() {
+        String id = registry.getOrCreate("demo:clock");
+        String own = registry.getOrCreate(id);
+
+        assertNotEquals(id, own);
+        assertEquals(own, registry.getIfPresent(id));
+
+        registry.release(id);
+        assertNull(registry.getIfPresent(id));
+        assertEquals(id, registry.getIfPresent("demo:clock"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void clearForgetsEverything() {
+        registry.getOrCreate("demo:clock");
+        registry.clear();
+
+        assertEquals(0, registry.size());
+        assertNull(registry.getIfPresent("demo:clock"));
+    }
+
+    /** Two identifiers without alphanumeric chars (so both have the base "hud") and the same CRC. */
+    @Nonnull
+    private static String[] crcCollision() {
+        char[] alphabet = {':', '_', '-', '.', '/', '+', '=', '~'};
+        Map<Integer, String> seen = new HashMap<>();
+        char[] chars = new char[8];
+        for (int n = 0; ; n++) {
+            for (int i = 0, v = n; i < chars.length; i++, v >>>= 3) {
+                chars[i] = alphabet[v & 7];
+            }
+            String candidate = new String(chars);
+            String previous = seen.putIfAbsent(crc32(candidate), candidate);
+            if (previous != null) return new String[]{previous, candidate};
+        }
+    }
+
+    private static int crc32(@Nonnull String s) {
+        CRC32 crc = new CRC32();
+        crc.update(s.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    @Nonnull
+    private static String hex8(int value) {
+        return String.format("%08x", value);
+    }
+}
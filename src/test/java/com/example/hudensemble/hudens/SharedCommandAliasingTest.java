@@ -0,0 +1,199 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommand;
+import com.hypixel.hytale.protocol.packets.interface_.CustomUICommandType;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Command arrays and instances are shared between players (broadcasts, the template cache); no player's
+ * later updates may show up in what another player was sent or has snapshotted.
+ */
+class SharedCommandAliasingTest {
+
+    private static final String TIMER = "#Timer.Text";
+
+    @AfterEach
+    void clearTemplateCache() {
+        LayerTemplateCache.clear();
+    }
+
+    @Test
+    void prefixedBuilderReturnsFreshCommandsEachTime() {
+        PrefixedUICommandBuilder builder = new PrefixedUICommandBuilder(new SelectorPrefixCache("#HudEnsemble #L1"));
+        builder.set(TIMER, "1");
+        CustomUICommand[] first = builder.getCommands();
+        CustomUICommand[] before = first.clone();
+
+        builder.set(TIMER, "2");
+        CustomUICommand[] second = builder.getCommands();
+
+        assertArrayEquals(before, first);
+        assertEquals("\"1\"", first[0].data);
+        assertEquals("#HudEnsemble #L1 " + TIMER, first[0].selector);
+        assertEquals(1, second.length);
+        assertNotSame(first[0], second[0]);
+    }
+
+    @Test
+    void broadcastArrayIsSharedButNeverModified() {
+        Player a = new Player();
+        Player b = new Player();
+        a.hud.add("ns:timer", new TimerHud());
+        b.hud.add("ns:timer", new TimerHud());
+
+        SharedLayerUpdate update = MultipleCustomUIHud.prepareLayerUpdate(ui -> ui.set(TIMER, "10"));
+        a.hud.updateLayer("ns:timer", update);
+        b.hud.updateLayer("ns:timer", update);
+        CustomUICommand[] shared = a.lastSent();
+        assertSame(shared, b.lastSent());
+        CustomUICommand[] before = shared.clone();
+
+        // Player A moves on: newer values, then a rebuild diffed against its snapshot.
+        a.hud.updateLayer("ns:timer", ui -> ui.set(TIMER, "9"));
+        a.hud.add("ns:timer", new TimerHud());
+
+        assertArrayEquals(before, shared);
+        assertEquals("\"10\"", shared[0].data);
+        assertEquals("\"10\"", setValue(b.snapshotCommands(), TIMER));
+        assertEquals("\"0\"", setValue(a.snapshotCommands(), TIMER));
+    }
+
+    @Test
+    void cachedPrefixedFormMatchesItsNormalizedId() {
+        SharedLayerUpdate update = MultipleCustomUIHud.prepareLayerUpdate(ui -> ui.set(TIMER, "10"));
+
+        CustomUICommand[] first = update.commandsFor("L1");
+        CustomUICommand[] other = update.commandsFor("L2");
+        CustomUICommand[] again = update.commandsFor("L1");
+
+        assertEquals(MultipleCustomUIHud.layerSelector("L1") + " " + TIMER, first[0].selector);
+        assertEquals(MultipleCustomUIHud.layerSelector("L2") + " " + TIMER, other[0].selector);
+        assertEquals(MultipleCustomUIHud.layerSelector("L1") + " " + TIMER, again[0].selector);
+        assertEquals(MultipleCustomUIHud.layerSelector("L1") + " " + TIMER, first[0].selector);
+    }
+
+    @Test
+    void concurrentCallersNeverGetAnotherIdsCommands() throws Exception {
+        SharedLayerUpdate update = MultipleCustomUIHud.prepareLayerUpdate(ui -> {
+            ui.set(TIMER, "10");
+            ui.set("#Label.Text", "x");
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String normalizedId = "L" + t;
+                String prefix = MultipleCustomUIHud.layerSelector(normalizedId) + " ";
+                Callable<Void> task = () -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        for (CustomUICommand cmd : update.commandsFor(normalizedId)) {
+                            if (!cmd.selector.startsWith(prefix)) {
+                                fail(cmd.selector + " handed out for " + normalizedId);
+                            }
+                        }
+                    }
+                    return null;
+                };
+                futures.add(pool.submit(task));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void templateCacheEntryIsNotModifiedByUpdates() {
+        Player a = new Player();
+        Player b = new Player();
+        a.hud.add("ns:banner", new BannerHud());
+        b.hud.add("ns:banner", new BannerHud());
+        LayerSetSnapshot.Layer layer = a.hud.captureSnapshot().layers().get(0);
+        CustomUICommand[] cached = LayerTemplateCache.getOrBuild(
+                layer.hud(), BannerHud.KEY, layer.normalizedId(), () -> fail("template was not cached"));
+        CustomUICommand[] before = cached.clone();
+
+        a.hud.updateLayer("ns:banner", ui -> ui.set(TIMER, "changed"));
+        a.hud.add("ns:banner", new BannerHud());
+
+        assertArrayEquals(before, cached);
+        assertEquals("\"banner\"", setValue(cached, TIMER));
+        assertEquals("\"banner\"", setValue(b.snapshotCommands(), TIMER));
+    }
+
+    private static String setValue(@Nonnull CustomUICommand[] commands, @Nonnull String selectorSuffix) {
+        String value = null;
+        for (CustomUICommand cmd : commands) {
+            if (cmd.type == CustomUICommandType.Set && cmd.selector.endsWith(" " + selectorSuffix)) {
+                value = cmd.data;
+            }
+        }
+        assertTrue(value != null, "no Set of " + selectorSuffix);
+        return value;
+    }
+
+    /** One wrapper and the updates it sent. */
+    private static final class Player {
+        final List<CustomUICommand[]> sent = new ArrayList<>();
+        final MultipleCustomUIHud hud = new MultipleCustomUIHud(null, (clear, builder) -> sent.add(builder.getCommands()));
+
+        CustomUICommand[] lastSent() {
+            return sent.get(sent.size() - 1);
+        }
+
+        CustomUICommand[] snapshotCommands() {
+            return hud.captureSnapshot().layers().get(0).commands();
+        }
+    }
+
+    private static final class TimerHud extends CustomUIHud {
+        TimerHud() {
+            super(null);
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Timer.ui");
+            builder.set(TIMER, "0");
+        }
+    }
+
+    private static final class BannerHud extends CustomUIHud implements TemplatedHud {
+        static final Object KEY = "banner";
+
+        BannerHud() {
+            super(null);
+        }
+
+        @Override
+        public Object getTemplateKey() {
+            return KEY;
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Banner.ui");
+            builder.set(TIMER, "banner");
+        }
+    }
+}
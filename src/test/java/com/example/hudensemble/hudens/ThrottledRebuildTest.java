@@ -0,0 +1,80 @@
+package com.example.hudensemble.hudens;
+
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** A rebuild drops throttled updates; the client must still end up with the rebuilt values. */
+class ThrottledRebuildTest {
+
+    private static final String SCORE = "#Score.Text";
+    private static final String LAYER = "test:score";
+
+    private final ClientView client = new ClientView();
+    private final List<Runnable> timerTasks = new ArrayList<>();
+    private final ScoreHud scoreHud = new ScoreHud("0");
+
+    @BeforeEach
+    void throttleLayer() {
+        client.hud.add(LAYER, scoreHud);
+        client.hud.setUpdateTimer((task, delayMillis) -> timerTasks.add(task));
+        client.hud.setLayerUpdatePolicy(LAYER, 0, 60_000);
+        client.hud.updateLayer(LAYER, ui -> ui.set(SCORE, "3"));
+        // Within the interval: deferred.
+        client.hud.updateLayer(LAYER, ui -> ui.set(SCORE, "5"));
+        assertEquals("\"3\"", client.value(SCORE));
+    }
+
+    @Test
+    void rebuildToTheDeferredValueStillSendsIt() {
+        client.hud.add(LAYER, new ScoreHud("5"));
+        runTimerTasks();
+
+        assertEquals("\"5\"", client.value(SCORE));
+    }
+
+    @Test
+    void rebuildToTheLastSentValueSendsNothingStale() {
+        client.hud.add(LAYER, new ScoreHud("3"));
+        runTimerTasks();
+
+        assertEquals("\"3\"", client.value(SCORE));
+    }
+
+    @Test
+    void refreshToTheDeferredValueStillSendsIt() {
+        scoreHud.score = "5";
+        client.hud.refreshLayer(LAYER);
+        runTimerTasks();
+
+        assertEquals("\"5\"", client.value(SCORE));
+    }
+
+    private void runTimerTasks() {
+        while (!timerTasks.isEmpty()) {
+            timerTasks.remove(0).run();
+        }
+    }
+
+    private static final class ScoreHud extends CustomUIHud {
+        String score;
+
+        ScoreHud(@Nonnull String score) {
+            super(null);
+            this.score = score;
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Score.ui");
+            builder.set(SCORE, score);
+        }
+    }
+}
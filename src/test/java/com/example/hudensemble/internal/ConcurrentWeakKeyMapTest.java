@@ -0,0 +1,120 @@
+package com.example.hudensemble.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConcurrentWeakKeyMapTest {
+
+    private final ConcurrentWeakKeyMap<Object, String> map = new ConcurrentWeakKeyMap<>();
+
+    @Test
+    void keysAreComparedByIdentity() {
+        String key = new String("player");
+        String equalKey = new String("player");
+
+        map.put(key, "a");
+
+        assertEquals("a", map.get(key));
+        assertNull(map.get(equalKey));
+        map.put(equalKey, "b");
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void computeAddsUpdatesAndRemoves() {
+        Object key = new Object();
+
+        assertEquals("1", map.compute(key, v -> v == null ? "1" : v + "1"));
+        assertEquals("11", map.compute(key, v -> v == null ? "1" : v + "1"));
+        assertEquals("11!", map.computeIfPresent(key, v -> v + "!"));
+        assertNull(map.compute(key, v -> null));
+
+        assertNull(map.computeIfPresent(key, v -> "unexpected"));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void removeReturnsTheValue() {
+        Object key = new Object();
+        map.put(key, "a");
+
+        assertEquals("a", map.remove(key));
+        assertNull(map.remove(key));
+    }
+
+    @Test
+    void drainIfRemovesOnlyMatchingEntries() {
+        Object keep = new Object();
+        Object drop = new Object();
+        map.put(keep, "keep");
+        map.put(drop, "drop");
+        List<String> drained = new ArrayList<>();
+
+        map.drainIf((key, value) -> value.equals("drop"), (key, value) -> drained.add(value));
+
+        assertEquals(List.of("drop"), drained);
+        assertEquals("keep", map.get(keep));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void concurrentDrainsHandOutEachEntryOnce() throws InterruptedException {
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Object key = new Object();
+            keys.add(key);
+            map.put(key, "v" + i);
+        }
+        Map<Object, Boolean> seen = new ConcurrentHashMap<>();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.startVirtualThread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                map.drain((key, value) -> {
+                    if (seen.put(key, Boolean.TRUE) != null) duplicates.incrementAndGet();
+                });
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(keys.size(), seen.size());
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void collectedKeysArePurged() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            map.put(new Object(), "v" + i);
+        }
+
+        for (int attempt = 0; attempt < 50 && map.size() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, map.size());
+        List<Object> live = new ArrayList<>();
+        map.forEach((key, value) -> live.add(key));
+        assertEquals(List.of(), live);
+    }
+}
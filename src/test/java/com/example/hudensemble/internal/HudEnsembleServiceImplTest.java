@@ -0,0 +1,185 @@
+package com.example.hudensemble.internal;
+
+import com.example.hudensemble.api.HudEnsembleClient;
+import com.example.hudensemble.api.HudRefreshPolicy;
+import com.example.hudensemble.api.HudUpdatePolicy;
+import com.example.hudensemble.hudens.MultipleCustomUIHud;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.HudManager;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HudEnsembleServiceImplTest {
+
+    private final HudEnsembleServiceImpl service = new HudEnsembleServiceImpl();
+
+    /** Tasks handed to the mocked worlds; run on the test thread by {@link #runWorldTasks()}. */
+    private final ConcurrentLinkedQueue<Runnable> worldTasks = new ConcurrentLinkedQueue<>();
+
+    @AfterEach
+    void shutDown() {
+        service.cleanupOnPluginShutdown();
+    }
+
+    @Test
+    void releasePlayerLeavesNoStateBehind() {
+        TestPlayer p = newPlayer();
+        HudEnsembleClient client = service.createClient("test");
+        client.setUpdatePolicy(HudUpdatePolicy.perSecond(1, 10));
+        client.setUpdateBudget(100);
+        client.setLayer(p.player, p.ref, "stats", new TestHud(p.ref));
+        client.bind(p.player, "stats", "#Health.Text", () -> "20");
+        client.setLayerRefreshPolicy(p.player, "stats", HudRefreshPolicy.everyTicks(5));
+        runWorldTasks();
+
+        MultipleCustomUIHud wrapper = assertInstanceOf(MultipleCustomUIHud.class, p.hud);
+        assertEquals(List.of("touchedPlayers", "bindingTicker", "client test"), service.heldStateOf(p.player));
+        assertTrue(wrapper.hasBindings());
+
+        service.releasePlayer(p.ref);
+        runWorldTasks();
+
+        assertEquals(List.of(), service.heldStateOf(p.player));
+        assertEquals(0, wrapper.getLayerCount());
+        assertFalse(wrapper.hasBindings());
+        assertEquals(List.of(), wrapper.getLayerRefreshes());
+        assertTrue(wrapper.getUpdateBudgets().isEmpty());
+    }
+
+    @Test
+    void releasePlayerRetainingASnapshotStillDropsLiveState() {
+        service.setReconnectSnapshotRetention(TimeUnit.MINUTES.toMillis(1));
+        TestPlayer p = newPlayer();
+        HudEnsembleClient client = service.createClient("test");
+        client.setLayer(p.player, p.ref, "stats", new TestHud(p.ref));
+        client.bind(p.player, "stats", "#Health.Text", () -> "20");
+        runWorldTasks();
+        MultipleCustomUIHud wrapper = assertInstanceOf(MultipleCustomUIHud.class, p.hud);
+
+        service.releasePlayer(p.ref);
+        runWorldTasks();
+
+        assertEquals(List.of(), service.heldStateOf(p.player));
+        assertEquals(0, wrapper.getLayerCount());
+        assertFalse(wrapper.hasBindings());
+    }
+
+    @Test
+    void releasePlayerKeepsOtherPlayers() {
+        TestPlayer leaving = newPlayer();
+        TestPlayer staying = newPlayer();
+        HudEnsembleClient client = service.createClient("test");
+        client.setLayer(leaving.player, leaving.ref, "stats", new TestHud(leaving.ref));
+        client.setLayer(staying.player, staying.ref, "stats", new TestHud(staying.ref));
+        runWorldTasks();
+
+        service.releasePlayer(leaving.ref);
+        runWorldTasks();
+
+        assertEquals(List.of(), service.heldStateOf(leaving.player));
+        assertEquals(List.of("touchedPlayers", "client test"), service.heldStateOf(staying.player));
+        assertEquals(1, ((MultipleCustomUIHud) staying.hud).getLayerCount());
+    }
+
+    @Test
+    void batchIsAppliedOnlyOnceTheCallbackReturns() {
+        TestPlayer p = newPlayer();
+        service.setLayer(p.player, p.ref, "stats", new TestHud(p.ref));
+        MultipleCustomUIHud wrapper = assertInstanceOf(MultipleCustomUIHud.class, p.hud);
+
+        assertThrows(IllegalStateException.class, () -> service.batch(p.player, p.ref, tx -> {
+            tx.removeLayer("stats").setLayer("a", new TestHud(p.ref)).setLayer("b", new TestHud(p.ref));
+            throw new IllegalStateException("callback failed");
+        }));
+        assertEquals(1, wrapper.getLayerCount());
+
+        service.batch(p.player, p.ref, tx -> tx
+                .removeLayer("stats")
+                .setLayer("a", new TestHud(p.ref))
+                .setLayer("b", new TestHud(p.ref)));
+        assertEquals(2, wrapper.getLayerCount());
+    }
+
+    @Test
+    void failedBatchLeavesANewPlayerUntouched() {
+        TestPlayer p = newPlayer();
+
+        assertThrows(IllegalArgumentException.class, () -> service.batch(p.player, p.ref, tx -> tx
+                .setLayer("stats", new TestHud(p.ref))
+                .setLayer("  ", new TestHud(p.ref))));
+
+        assertNull(p.hud);
+        assertEquals(List.of(), service.heldStateOf(p.player));
+    }
+
+    private void runWorldTasks() {
+        for (Runnable task; (task = worldTasks.poll()) != null; ) {
+            task.run();
+        }
+    }
+
+    @Nonnull
+    private TestPlayer newPlayer() {
+        TestPlayer p = new TestPlayer();
+        p.ref = mock(PlayerRef.class, RETURNS_DEEP_STUBS);
+        when(p.ref.getUuid()).thenReturn(UUID.randomUUID());
+
+        HudManager hudManager = mock(HudManager.class);
+        when(hudManager.getCustomHud()).thenAnswer(invocation -> p.hud);
+        doAnswer(invocation -> {
+            p.hud = invocation.getArgument(1);
+            return null;
+        }).when(hudManager).setCustomHud(any(), any());
+
+        World world = mock(World.class);
+        when(world.isAlive()).thenReturn(true);
+        doAnswer(invocation -> {
+            worldTasks.add(invocation.getArgument(0));
+            return null;
+        }).when(world).execute(any());
+
+        p.player = mock(Player.class);
+        when(p.player.getHudManager()).thenReturn(hudManager);
+        when(p.player.getWorld()).thenReturn(world);
+        return p;
+    }
+
+    private static final class TestPlayer {
+        Player player;
+        PlayerRef ref;
+        volatile CustomUIHud hud;
+    }
+
+    private static final class TestHud extends CustomUIHud {
+        TestHud(@Nonnull PlayerRef playerRef) {
+            super(playerRef);
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Stats.ui");
+        }
+    }
+}
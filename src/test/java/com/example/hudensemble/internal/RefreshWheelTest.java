@@ -0,0 +1,164 @@
+package com.example.hudensemble.internal;
+
+import com.example.hudensemble.hudens.LayerRefresh;
+import com.example.hudensemble.hudens.MultipleCustomUIHud;
+import com.example.hudensemble.hudens.RefreshableHud;
+import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.CustomUIHud;
+import com.hypixel.hytale.server.core.entity.entities.player.hud.HudManager;
+import com.hypixel.hytale.server.core.ui.builder.UICommandBuilder;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RefreshWheelTest {
+
+    private final ArrayDeque<Runnable> worldTasks = new ArrayDeque<>();
+    private final World world = mock(World.class);
+    private RefreshWheel wheel;
+    private Runnable tick;
+
+    @BeforeEach
+    void setUp() {
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        doAnswer(invocation -> {
+            tick = invocation.getArgument(0);
+            return null;
+        }).when(timer).scheduleAtFixedRate(any(), anyLong(), anyLong(), any(TimeUnit.class));
+        wheel = new RefreshWheel(timer);
+
+        when(world.isAlive()).thenReturn(true);
+        doAnswer(invocation -> worldTasks.add(invocation.getArgument(0))).when(world).execute(any());
+    }
+
+    @Test
+    void refreshesOncePerInterval() {
+        CountingHud hud = schedule(newPlayer(), 4);
+
+        tickAndRun(40);
+
+        assertEquals(10, hud.refreshes);
+    }
+
+    @Test
+    void intervalLongerThanTheWheelWaitsExtraRounds() {
+        int interval = RefreshWheel.WHEEL_SIZE + 88;
+        CountingHud hud = schedule(newPlayer(), interval);
+
+        tickAndRun(2 * interval);
+
+        assertEquals(2, hud.refreshes);
+    }
+
+    @Test
+    void cancelledScheduleStops() {
+        Player player = newPlayer();
+        CountingHud hud = schedule(player, 4);
+        tickAndRun(8);
+        int before = hud.refreshes;
+
+        wrapper(player).setLayerRefreshInterval("test:clock", 0);
+        tickAndRun(40);
+
+        assertEquals(2, before);
+        assertEquals(before, hud.refreshes);
+    }
+
+    @Test
+    void refreshDueWhileTheWorldIsBehindIsRetriedNextTick() {
+        CountingHud hud = schedule(newPlayer(), 8);
+
+        // The world runs nothing for 20 ticks: the first refresh is queued, the later ones wait for it.
+        for (int i = 0; i < 20; i++) {
+            tick.run();
+        }
+        runWorldTasks();
+        assertEquals(1, hud.refreshes);
+
+        tickAndRun(1);
+        assertEquals(2, hud.refreshes);
+    }
+
+    @Test
+    void playerWithoutTheWrapperHasItsScheduleCancelled() {
+        Player player = newPlayer();
+        schedule(player, 2);
+        LayerRefresh refresh = wrapper(player).getLayerRefreshes().get(0);
+        HudManager other = mock(HudManager.class);
+        when(player.getHudManager()).thenReturn(other);
+
+        tickAndRun(4);
+
+        assertTrue(refresh.isCancelled());
+    }
+
+    private CountingHud schedule(@Nonnull Player player, int intervalTicks) {
+        CountingHud hud = new CountingHud();
+        MultipleCustomUIHud wrapper = wrapper(player);
+        wrapper.add("test:clock", hud);
+        wheel.schedule(player, wrapper.setLayerRefreshInterval("test:clock", intervalTicks));
+        return hud;
+    }
+
+    private void tickAndRun(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            tick.run();
+            runWorldTasks();
+        }
+    }
+
+    private void runWorldTasks() {
+        for (Runnable task; (task = worldTasks.poll()) != null; ) {
+            task.run();
+        }
+    }
+
+    private static MultipleCustomUIHud wrapper(@Nonnull Player player) {
+        return (MultipleCustomUIHud) player.getHudManager().getCustomHud();
+    }
+
+    @Nonnull
+    private Player newPlayer() {
+        MultipleCustomUIHud wrapper = new MultipleCustomUIHud(mock(PlayerRef.class, RETURNS_DEEP_STUBS));
+        HudManager hudManager = mock(HudManager.class);
+        when(hudManager.getCustomHud()).thenReturn(wrapper);
+
+        Player player = mock(Player.class);
+        when(player.getHudManager()).thenReturn(hudManager);
+        when(player.getWorld()).thenReturn(world);
+        return player;
+    }
+
+    private static final class CountingHud extends CustomUIHud implements RefreshableHud {
+        int refreshes;
+
+        CountingHud() {
+            super(null);
+        }
+
+        @Override
+        protected void build(@Nonnull UICommandBuilder builder) {
+            builder.append("Hud/Clock.ui");
+        }
+
+        @Override
+        public void refresh(@Nonnull UICommandBuilder builder) {
+            refreshes++;
+        }
+    }
+}